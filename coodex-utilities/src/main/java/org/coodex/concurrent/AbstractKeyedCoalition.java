@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按key合并调用的基础实现。
+ * <p>
+ * 每个key的状态是ConcurrentHashMap中的一个不可变对象，以put/replace/remove(key, old)更新；
+ * 到期时刻按时间轮的tick取整分组，同一组的key共用一个{@link TimingWheel.Timeout}，到期时在时间轮的dispatcher中依次处理。
+ * 状态推迟时只替换map中的对象，分组到期时再按新的到期时刻重新分组，处理完毕的key从map中移除。
+ *
+ * @param <K> key类型
+ * @param <T> 参数类型
+ * @param <S> 每个key的状态
+ */
+public abstract class AbstractKeyedCoalition<K, T, S> implements KeyedCoalition<K, T> {
+
+    private final static Logger log = LoggerFactory.getLogger(AbstractKeyedCoalition.class);
+
+    protected final KeyedCoalition.Callback<K, T> callback;
+    protected final long intervalNanos;
+    protected final TimingWheel timingWheel;
+    protected final ConcurrentHashMap<K, S> states = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Queue<K>> slots = new ConcurrentHashMap<>();
+    private final long resolutionNanos;
+    private final long baseNanos = System.nanoTime();
+
+    /**
+     * @param callback    回调
+     * @param interval    间隔，毫秒
+     * @param timingWheel 时间轮，决定到期精度和回调执行的线程
+     */
+    public AbstractKeyedCoalition(KeyedCoalition.Callback<K, T> callback, long interval, TimingWheel timingWheel) {
+        if (callback == null) throw new NullPointerException("callback is null.");
+        if (timingWheel == null) throw new NullPointerException("timingWheel is null.");
+        this.callback = callback;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, interval));
+        this.timingWheel = timingWheel;
+        this.resolutionNanos = Math.max(1L, timingWheel.getTickDuration(TimeUnit.NANOSECONDS));
+    }
+
+    public AbstractKeyedCoalition(KeyedCoalition.Callback<K, T> callback, long interval) {
+        this(callback, interval, TimingWheel.getDefault());
+    }
+
+    @Override
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * 在deadline之后处理key
+     *
+     * @param key      key
+     * @param deadline System.nanoTime时刻
+     */
+    protected void schedule(K key, long deadline) {
+        long offset = Math.max(0L, deadline - baseNanos);
+        long slot = (offset + resolutionNanos - 1) / resolutionNanos;
+        for (; ; ) {
+            Queue<K> keys = slots.get(slot);
+            if (keys == null) {
+                Queue<K> created = new ConcurrentLinkedQueue<>();
+                created.offer(key);
+                if (slots.putIfAbsent(slot, created) == null) {
+                    timingWheel.schedule(() -> drain(slot),
+                            baseNanos + slot * resolutionNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    return;
+                }
+            } else {
+                keys.offer(key);
+                // 分组仍未被取走则必然会被处理；否则可能已错过，重新分组，重复处理由due保证幂等
+                if (slots.get(slot) == keys) return;
+            }
+        }
+    }
+
+    private void drain(long slot) {
+        Queue<K> keys = slots.remove(slot);
+        if (keys == null) return;
+        long now = System.nanoTime();
+        for (K key; (key = keys.poll()) != null; ) {
+            try {
+                due(key, now);
+            } catch (Throwable th) {
+                log.warn("keyed coalition process failed: {}", key, th);
+            }
+        }
+    }
+
+    /**
+     * 分组到期时处理key，同一key可能被重复处理，实现需幂等：未到期的重新{@link #schedule(Object, long)}
+     *
+     * @param key key
+     * @param now 当前System.nanoTime
+     */
+    protected abstract void due(K key, long now);
+
+    protected void deliver(K key, T value) {
+        try {
+            callback.call(key, value);
+        } catch (Throwable th) {
+            log.warn("keyed coalition callback failed: {}", key, th);
+        }
+    }
+}
@@ -30,11 +30,20 @@ class ExecutorServiceImpl implements ExecutorService {
             new LazyServiceLoader<ExecutableWrapper>(new ExecutableWrapperImpl()) {
             };
     protected final ExecutableWrapper wrapper;
+    protected final PoolMetrics metrics;
     private final ExecutorService executorService;
 
-    ExecutorServiceImpl(ExecutorService executorService) {
+    ExecutorServiceImpl(String name, ExecutorService executorService) {
         this.executorService = executorService;
-        wrapper = executableWrapperLoader.get();
+        this.metrics = PoolMetrics.register(name, executorService);
+        wrapper = metrics == null ?
+                executableWrapperLoader.get() :
+                new MetricsExecutableWrapper(executableWrapperLoader.get(), metrics);
+    }
+
+    RejectedExecutionException rejected(RejectedExecutionException e) {
+        if (metrics != null) metrics.rejected();
+        return e;
     }
 
     <V> Collection<? extends Callable<V>> wrap(Collection<? extends Callable<V>> coll) {
@@ -48,11 +57,13 @@ class ExecutorServiceImpl implements ExecutorService {
 
     @Override
     public void shutdown() {
+        PoolMetrics.unregister(metrics);
         executorService.shutdown();
     }
 
     @Override
     public List<Runnable> shutdownNow() {
+        PoolMetrics.unregister(metrics);
         return executorService.shutdownNow();
     }
 
@@ -73,17 +84,29 @@ class ExecutorServiceImpl implements ExecutorService {
 
     @Override
     public <T> Future<T> submit(Callable<T> task) {
-        return executorService.submit(wrapper.wrap(task));
+        try {
+            return executorService.submit(wrapper.wrap(task));
+        } catch (RejectedExecutionException e) {
+            throw rejected(e);
+        }
     }
 
     @Override
     public <T> Future<T> submit(Runnable task, T result) {
-        return executorService.submit(wrapper.wrap(task), result);
+        try {
+            return executorService.submit(wrapper.wrap(task), result);
+        } catch (RejectedExecutionException e) {
+            throw rejected(e);
+        }
     }
 
     @Override
     public Future<?> submit(Runnable task) {
-        return executorService.submit(wrapper.wrap(task));
+        try {
+            return executorService.submit(wrapper.wrap(task));
+        } catch (RejectedExecutionException e) {
+            throw rejected(e);
+        }
     }
 
     @Override
@@ -108,6 +131,15 @@ class ExecutorServiceImpl implements ExecutorService {
 
     @Override
     public void execute(Runnable command) {
-        executorService.execute(wrapper.wrap(command));
+        try {
+            executorService.execute(wrapper.wrap(command));
+        } catch (RejectedExecutionException e) {
+            throw rejected(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return executorService.toString();
     }
 }
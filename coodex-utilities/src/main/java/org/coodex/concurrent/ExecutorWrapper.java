@@ -16,51 +16,61 @@
 
 package org.coodex.concurrent;
 
-import org.coodex.util.Common;
-
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Proxy;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
-import static org.coodex.util.ReflectHelper.getAllInterfaces;
-
 /**
  * Created by davidoff shen on 2016-09-05.
+ * <p>
+ * 直接以委托类包装线程池，不再使用动态代理
  */
 final class ExecutorWrapper {
 
-    private static final Set<ExecutorService> executors = new HashSet<>();
+    private static final Set<ExecutorService> executors = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private static final List<Runnable> shutdownHooks = new CopyOnWriteArrayList<>();
 
-    static <T extends ExecutorService> T wrap(T executorService) {
-        // TODO 动态代理，当Executor shutdown或shutdownNow的时候脱离管理
-        if (executorService instanceof ScheduledExecutorService) {
-            executorService = Common.cast(Proxy.newProxyInstance(
-                    ScheduledExecutorService.class.getClassLoader(),
-                    getAllInterfaces(executorService.getClass()),
-                    getInvocationHandlerByType(ScheduledExecutorService.class,
-                            executorService,
-                            new ScheduledExecutorServiceImpl((ScheduledExecutorService) executorService))
-            ));
-        } else {
-            executorService = Common.cast(Proxy.newProxyInstance(
-                    ExecutorService.class.getClassLoader(),
-                    getAllInterfaces(executorService.getClass()),
-                    getInvocationHandlerByType(ExecutorService.class,
-                            executorService,
-                            new ExecutorServiceImpl(executorService))
-            ));
-        }
-        executors.add(executorService);
+    /**
+     * @param name 线程池名，用于度量，可为null
+     */
+    static ExecutorService wrap(String name, ExecutorService executorService) {
+        return register(new ExecutorServiceImpl(name, executorService));
+    }
 
+    static ScheduledExecutorService wrap(String name, ScheduledExecutorService executorService) {
+        return register(new ScheduledExecutorServiceImpl(name, executorService));
+    }
+
+    private static <T extends ExecutorService> T register(T executorService) {
+        executors.add(executorService);
         return executorService;
     }
 
+    static void addShutdownHook(Runnable hook) {
+        if (hook != null)
+            shutdownHooks.add(hook);
+    }
+
+    static void removeShutdownHook(Runnable hook) {
+        shutdownHooks.remove(hook);
+    }
+
+    private static void runShutdownHooks() {
+        for (Runnable hook : shutdownHooks) {
+            try {
+                hook.run();
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+
     static void shutdown() {
+        runShutdownHooks();
         for (ExecutorService service : executors) {
             if (service != null && !service.isShutdown() && !service.isTerminated())
                 service.shutdown();
@@ -68,6 +78,7 @@ final class ExecutorWrapper {
     }
 
     static List<Runnable> shutdownNow() {
+        runShutdownHooks();
         List<Runnable> list = new ArrayList<>();
         for (ExecutorService service : executors) {
             if (service != null && !service.isTerminated())
@@ -75,16 +86,4 @@ final class ExecutorWrapper {
         }
         return list;
     }
-
-    private static InvocationHandler getInvocationHandlerByType(final Class<? extends ExecutorService> executorClass, final Object origin, final Object impl) {
-        return (proxy, method, args) -> {
-            Object object = method.getDeclaringClass().isAssignableFrom(executorClass) ?
-                    impl : origin;
-
-            if (args == null || args.length == 0)
-                return method.invoke(object);
-            else
-                return method.invoke(object, args);
-        };
-    }
 }
@@ -36,6 +36,12 @@ public class ExecutorsHelper {
                 new PriorityRunnable(Thread.NORM_PRIORITY, runnable);
     }
 
+    private static String nameOf(ThreadFactory threadFactory) {
+        return threadFactory instanceof DefaultNamedThreadFactory ?
+                ((DefaultNamedThreadFactory) threadFactory).namePrefix :
+                null;
+    }
+
     public static ExecutorService newPriorityThreadPool(final int coreSize, int maxSize, int maxWait, String namePrefix) {
         return newPriorityThreadPool(coreSize, maxSize, maxWait, 60L, namePrefix);
     }
@@ -45,23 +51,14 @@ public class ExecutorsHelper {
         return newThreadPool(keepAliveTime, namePrefix, poolSize, new CoodexPriorityBlockingQueue(maxWait));
     }
 
-    private static ExecutorService newThreadPool(long keepAliveTime, String namePrefix, PoolSize poolSize, CoodexBlockingQueue priorityBlockingQueue) {
-        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(
+    private static ExecutorService newThreadPool(long keepAliveTime, String namePrefix, PoolSize poolSize, CoodexBlockingQueue blockingQueue) {
+        return ExecutorWrapper.wrap(namePrefix, new CoodexThreadPoolExecutor(
                 poolSize.getFinalCoreSize(),
                 poolSize.getFinalMaxSize(),
-                keepAliveTime, TimeUnit.SECONDS,
-                priorityBlockingQueue,
+                keepAliveTime,
+                blockingQueue,
                 new DefaultNamedThreadFactory(namePrefix)
-        ) {
-            @Override
-            public void execute(Runnable command) {
-                synchronized (this) {
-                    super.execute(command);
-                }
-            }
-        };
-        priorityBlockingQueue.setThreadPoolExecutor(threadPool);
-        return ExecutorWrapper.wrap(threadPool);
+        ));
     }
 
     public static ExecutorService newLinkedThreadPool(final int coreSize, int maxSize, int maxWait, String namePrefix) {
@@ -78,7 +75,7 @@ public class ExecutorsHelper {
     }
 
     public static ExecutorService newFixedThreadPool(int nThreads, ThreadFactory threadFactory) {
-        return ExecutorWrapper.wrap(Executors.newFixedThreadPool(nThreads, threadFactory));
+        return ExecutorWrapper.wrap(nameOf(threadFactory), Executors.newFixedThreadPool(nThreads, threadFactory));
     }
 
     public static ExecutorService newSingleThreadExecutor(String namePrefix) {
@@ -86,7 +83,7 @@ public class ExecutorsHelper {
     }
 
     public static ExecutorService newSingleThreadExecutor(ThreadFactory threadFactory) {
-        return ExecutorWrapper.wrap(Executors.newSingleThreadExecutor(threadFactory));
+        return ExecutorWrapper.wrap(nameOf(threadFactory), Executors.newSingleThreadExecutor(threadFactory));
     }
 
     public static ExecutorService newCachedThreadPool(String namePrefix) {
@@ -94,7 +91,46 @@ public class ExecutorsHelper {
     }
 
     public static ExecutorService newCachedThreadPool(ThreadFactory threadFactory) {
-        return ExecutorWrapper.wrap(Executors.newCachedThreadPool(threadFactory));
+        return ExecutorWrapper.wrap(nameOf(threadFactory), Executors.newCachedThreadPool(threadFactory));
+    }
+
+    /**
+     * 工作窃取线程池，FIFO调度，适合大量短小的计算任务
+     *
+     * @param parallelism 并行度
+     * @param namePrefix  线程名前缀
+     * @return 执行器
+     */
+    public static ExecutorService newForkJoinPool(int parallelism, String namePrefix) {
+        final String prefix = namePrefix == null ? "coodex-forkJoin" : namePrefix;
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        return ExecutorWrapper.wrap(prefix, new ForkJoinPool(
+                Math.max(1, parallelism),
+                pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName(prefix + "-" + threadNumber.getAndIncrement());
+                    return thread;
+                },
+                null,
+                true));
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器，适合阻塞IO类任务；运行时不支持虚拟线程(JDK 21以下)时使用缓存线程池。
+     * 与其他线程池一样经过{@link ExecutableWrapper}包装并随{@link #shutdownAll()}关闭
+     *
+     * @param namePrefix 线程名前缀
+     * @return 执行器
+     */
+    public static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        return ExecutorWrapper.wrap(namePrefix, VirtualThreads.newExecutor(namePrefix));
+    }
+
+    /**
+     * @return 当前运行时是否使用虚拟线程
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreads.isSupported();
     }
 
     public static ScheduledExecutorService newSingleThreadScheduledExecutor(String namePrefix) {
@@ -102,7 +138,7 @@ public class ExecutorsHelper {
     }
 
     public static ScheduledExecutorService newSingleThreadScheduledExecutor(ThreadFactory threadFactory) {
-        return ExecutorWrapper.wrap(Executors.newSingleThreadScheduledExecutor(threadFactory));
+        return ExecutorWrapper.wrap(nameOf(threadFactory), Executors.newSingleThreadScheduledExecutor(threadFactory));
     }
 
     public static ScheduledExecutorService newScheduledThreadPool(int corePoolSize, String namePrefix) {
@@ -111,7 +147,26 @@ public class ExecutorsHelper {
 
     public static ScheduledExecutorService newScheduledThreadPool(
             int corePoolSize, ThreadFactory threadFactory) {
-        return ExecutorWrapper.wrap(Executors.newScheduledThreadPool(corePoolSize, threadFactory));
+        return ExecutorWrapper.wrap(nameOf(threadFactory), Executors.newScheduledThreadPool(corePoolSize, threadFactory));
+    }
+
+    /**
+     * 注册一个随{@link #shutdownAll()}、{@link #shutdownAllNOW()}一同关闭的资源，
+     * 例如持有自身IO线程的缓存客户端
+     *
+     * @param hook 关闭资源的动作
+     */
+    public static void registerShutdownHook(Runnable hook) {
+        ExecutorWrapper.addShutdownHook(hook);
+    }
+
+    /**
+     * 移除{@link #registerShutdownHook(Runnable)}注册的动作，资源提前关闭时使用
+     *
+     * @param hook 注册时的同一实例
+     */
+    public static void unregisterShutdownHook(Runnable hook) {
+        ExecutorWrapper.removeShutdownHook(hook);
     }
 
     public static void shutdownAll() {
@@ -123,7 +178,59 @@ public class ExecutorsHelper {
     }
 
     interface CoodexBlockingQueue extends BlockingQueue<Runnable> {
-        void setThreadPoolExecutor(ThreadPoolExecutor threadPoolExecutor);
+        void setThreadPoolExecutor(CoodexThreadPoolExecutor threadPoolExecutor);
+
+        /**
+         * 线程数已达上限时，不再检查线程数直接入队
+         *
+         * @param runnable 任务
+         * @return 队列未满时入队成功
+         */
+        boolean force(Runnable runnable);
+    }
+
+    /**
+     * 先扩充线程到上限再排队的线程池，提交路径无锁：
+     * <ul>
+     * <li>队列在线程数未达上限时拒绝入队，促使ThreadPoolExecutor新建线程</li>
+     * <li>并发提交导致新建线程失败时，由拒绝策略将任务强制入队，队列满或已关闭才真正拒绝</li>
+     * </ul>
+     * 线程数使用自行维护的计数，避免{@link ThreadPoolExecutor#getPoolSize()}的mainLock
+     */
+    static class CoodexThreadPoolExecutor extends ThreadPoolExecutor {
+        private final AtomicInteger liveThreads;
+
+        CoodexThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime,
+                                 CoodexBlockingQueue blockingQueue, ThreadFactory threadFactory) {
+            this(corePoolSize, maximumPoolSize, keepAliveTime, blockingQueue, threadFactory, new AtomicInteger(0));
+        }
+
+        private CoodexThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime,
+                                         CoodexBlockingQueue blockingQueue, ThreadFactory threadFactory,
+                                         AtomicInteger liveThreads) {
+            super(corePoolSize, maximumPoolSize, keepAliveTime, TimeUnit.SECONDS, blockingQueue,
+                    r -> threadFactory.newThread(() -> {
+                        liveThreads.incrementAndGet();
+                        try {
+                            r.run();
+                        } finally {
+                            liveThreads.decrementAndGet();
+                        }
+                    }),
+                    (r, executor) -> ((CoodexThreadPoolExecutor) executor).forceQueue(r));
+            this.liveThreads = liveThreads;
+            blockingQueue.setThreadPoolExecutor(this);
+        }
+
+        boolean isSaturated() {
+            return liveThreads.get() >= getMaximumPoolSize();
+        }
+
+        private void forceQueue(Runnable runnable) {
+            if (isShutdown() || !((CoodexBlockingQueue) getQueue()).force(runnable)) {
+                throw new RejectedExecutionException("Task " + runnable + " rejected from " + this);
+            }
+        }
     }
 
     /**
@@ -159,30 +266,32 @@ public class ExecutorsHelper {
             implements CoodexBlockingQueue {
 
         private final int maximumSize;
-        private ThreadPoolExecutor threadPoolExecutor;
+        private CoodexThreadPoolExecutor threadPoolExecutor;
 
         public CoodexLinkedBlockingQueue(int maximumSize) {
             this.maximumSize = maximumSize;
         }
 
         @Override
-        public void setThreadPoolExecutor(ThreadPoolExecutor threadPoolExecutor) {
+        public void setThreadPoolExecutor(CoodexThreadPoolExecutor threadPoolExecutor) {
             this.threadPoolExecutor = threadPoolExecutor;
         }
 
         @Override
         public boolean offer(Runnable runnable) {
-//            if (threadPoolExecutor == null) return super.offer(runnable);
-            return threadPoolExecutor.getPoolSize() >= threadPoolExecutor.getMaximumPoolSize() &&
-                    size() < maximumSize &&
-                    super.offer(runnable);
+            return threadPoolExecutor.isSaturated() && force(runnable);
+        }
+
+        @Override
+        public boolean force(Runnable runnable) {
+            return size() < maximumSize && super.offer(runnable);
         }
     }
 
     static class CoodexPriorityBlockingQueue extends PriorityBlockingQueue<Runnable>
             implements CoodexBlockingQueue {
         private final int maximumSize;
-        private ThreadPoolExecutor threadPoolExecutor;
+        private CoodexThreadPoolExecutor threadPoolExecutor;
 
 
         CoodexPriorityBlockingQueue(int maximumSize) {
@@ -190,18 +299,19 @@ public class ExecutorsHelper {
         }
 
         @Override
-        public void setThreadPoolExecutor(ThreadPoolExecutor threadPoolExecutor) {
+        public void setThreadPoolExecutor(CoodexThreadPoolExecutor threadPoolExecutor) {
             this.threadPoolExecutor = threadPoolExecutor;
         }
 
 
         @Override
         public boolean offer(Runnable runnable) {
-            runnable = getPriorityRunnable(runnable);
-            return threadPoolExecutor.getPoolSize() >= threadPoolExecutor.getMaximumPoolSize() &&
-                    size() < maximumSize &&
-                    super.offer(runnable);
+            return threadPoolExecutor.isSaturated() && force(runnable);
+        }
 
+        @Override
+        public boolean force(Runnable runnable) {
+            return size() < maximumSize && super.offer(getPriorityRunnable(runnable));
         }
     }
 
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 带超时的Map，用于请求/响应关联等短生命周期的数据
+ * <p>
+ * put/remove基于{@link ConcurrentHashMap}的CAS操作，不加锁；超时由共享的{@link TimingWheel}判定，
+ * 同一tick到期的回调成批执行，不为每个实例创建线程。每个条目只额外占用一个Entry和一个时间轮节点。
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public class ExpiringMap<K, V> {
+
+    public static final long DEFAULT_TIMEOUT = 10000L;
+
+    private final ConcurrentHashMap<K, Entry<K, V>> map = new ConcurrentHashMap<>();
+    private final long timeout;
+    private final TimingWheel timingWheel;
+    private final BiConsumer<K, V> timeoutListener;
+
+    public ExpiringMap() {
+        this(DEFAULT_TIMEOUT);
+    }
+
+    public ExpiringMap(long timeout) {
+        this(timeout, null);
+    }
+
+    /**
+     * @param timeout         默认超时时间，单位毫秒
+     * @param timeoutListener 所有条目超时后的回调，在put时指定的回调之后执行
+     */
+    public ExpiringMap(long timeout, BiConsumer<K, V> timeoutListener) {
+        this(timeout, timeoutListener, TimingWheel.getDefault());
+    }
+
+    public ExpiringMap(long timeout, BiConsumer<K, V> timeoutListener, TimingWheel timingWheel) {
+        this.timeout = timeout > 0 ? timeout : DEFAULT_TIMEOUT;
+        this.timeoutListener = timeoutListener;
+        this.timingWheel = Objects.requireNonNull(timingWheel, "timingWheel is null.");
+    }
+
+    public void put(K key, V value) {
+        put(key, value, timeout, null);
+    }
+
+    public void put(K key, V value, Runnable callback) {
+        put(key, value, timeout, callback);
+    }
+
+    /**
+     * 放入条目，已存在时替换并取消原条目的超时
+     *
+     * @param key      key
+     * @param value    value
+     * @param timeout  超时时间，单位毫秒，小于等于0时使用默认值
+     * @param callback 超时回调，条目被取走时不执行
+     */
+    public void put(K key, V value, long timeout, Runnable callback) {
+        Entry<K, V> entry = new Entry<>(this, key, value, callback);
+        Entry<K, V> previous = map.put(key, entry);
+        if (previous != null) previous.cancel();
+        entry.timeout = timingWheel.schedule(entry, timeout > 0 ? timeout : this.timeout, TimeUnit.MILLISECONDS);
+        // 调度前已被取走
+        if (map.get(key) != entry) entry.cancel();
+    }
+
+    /**
+     * 仅在key不存在时放入
+     *
+     * @return 已存在的值，放入成功时返回null
+     */
+    public V putIfAbsent(K key, V value, long timeout, Runnable callback) {
+        Entry<K, V> entry = new Entry<>(this, key, value, callback);
+        Entry<K, V> existing = map.putIfAbsent(key, entry);
+        if (existing != null) return existing.value;
+        entry.timeout = timingWheel.schedule(entry, timeout > 0 ? timeout : this.timeout, TimeUnit.MILLISECONDS);
+        if (map.get(key) != entry) entry.cancel();
+        return null;
+    }
+
+    public V get(K key) {
+        Entry<K, V> entry = map.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    public V getAndRemove(K key) {
+        Entry<K, V> entry = map.remove(key);
+        if (entry == null) return null;
+        entry.cancel();
+        return entry.value;
+    }
+
+    public boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public void clear() {
+        for (K key : map.keySet()) {
+            getAndRemove(key);
+        }
+    }
+
+    private static class Entry<K, V> implements Runnable {
+        private final ExpiringMap<K, V> owner;
+        private final K key;
+        private final V value;
+        private final Runnable callback;
+        private volatile TimingWheel.Timeout timeout;
+
+        Entry(ExpiringMap<K, V> owner, K key, V value, Runnable callback) {
+            this.owner = owner;
+            this.key = key;
+            this.value = value;
+            this.callback = callback;
+        }
+
+        void cancel() {
+            TimingWheel.Timeout t = timeout;
+            if (t != null) t.cancel();
+        }
+
+        /**
+         * 超时，由时间轮的dispatcher成批调用
+         */
+        @Override
+        public void run() {
+            if (!owner.map.remove(key, this)) return;
+            if (callback != null) callback.run();
+            if (owner.timeoutListener != null) owner.timeoutListener.accept(key, value);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+import org.coodex.util.Common;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * 将线程池度量注册为MBean：org.coodex.concurrent:type=ExecutorPool,name=线程池名。
+ * <p>
+ * 系统属性executors.metrics.jmx为false时不注册
+ */
+public class JmxPoolMetricsBinder implements PoolMetricsBinder {
+
+    private final static Logger log = LoggerFactory.getLogger(JmxPoolMetricsBinder.class);
+
+    private final boolean enabled = Common.toBool(System.getProperty("executors.metrics.jmx"), true);
+
+    private static ObjectName objectName(PoolMetrics metrics) throws Exception {
+        return new ObjectName("org.coodex.concurrent:type=ExecutorPool,name=" + ObjectName.quote(metrics.getName()));
+    }
+
+    @Override
+    public void bind(PoolMetrics metrics) {
+        if (!enabled) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName(metrics);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (Throwable th) {
+            log.warn("register executor metrics MBean failed: {}", metrics.getName(), th);
+        }
+    }
+
+    @Override
+    public void unbind(PoolMetrics metrics) {
+        if (!enabled) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName(metrics);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Throwable th) {
+            log.warn("unregister executor metrics MBean failed: {}", metrics.getName(), th);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+/**
+ * 按key合并调用，每个key相当于一个独立的{@link Coalition}
+ *
+ * @param <K> key类型
+ * @param <T> 参数类型
+ */
+public interface KeyedCoalition<K, T> {
+
+    void call(K key, T value);
+
+    /**
+     * @return 当前仍在等待或处于窗口期的key数量
+     */
+    int size();
+
+    interface Callback<K, T> {
+        void call(K key, T value);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+/**
+ * 按key防抖：同一key在间隔内没有新的调用时，以最后一次的参数回调一次。
+ * <p>
+ * 不同于为每个key建一个{@link Debouncer}，每个key只占用map中的一个条目，所有key共用一个时间轮，
+ * 回调后key即被移除
+ *
+ * @param <K> key类型
+ * @param <T> 参数类型
+ */
+public class KeyedDebouncer<K, T> extends AbstractKeyedCoalition<K, T, KeyedDebouncer.Pending<T>> {
+
+    public KeyedDebouncer(Callback<K, T> callback, long interval, TimingWheel timingWheel) {
+        super(callback, interval, timingWheel);
+    }
+
+    public KeyedDebouncer(Callback<K, T> callback, long interval) {
+        super(callback, interval);
+    }
+
+    @Override
+    public void call(K key, T value) {
+        Pending<T> pending = new Pending<>(value, System.nanoTime() + intervalNanos);
+        // 已有条目时必然已在等待分组到期，只需替换
+        if (states.put(key, pending) == null) {
+            schedule(key, pending.deadline);
+        }
+    }
+
+    @Override
+    protected void due(K key, long now) {
+        for (; ; ) {
+            Pending<T> pending = states.get(key);
+            if (pending == null) return;
+            if (pending.deadline - now > 0) {
+                schedule(key, pending.deadline);
+                return;
+            }
+            if (states.remove(key, pending)) {
+                deliver(key, pending.value);
+                return;
+            }
+        }
+    }
+
+    static final class Pending<T> {
+        private final T value;
+        private final long deadline;
+
+        private Pending(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+}
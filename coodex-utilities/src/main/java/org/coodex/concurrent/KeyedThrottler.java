@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按key节流：同一key每个间隔内最多回调一次。
+ * <p>
+ * 窗口外的首次调用立即回调并开启窗口，窗口内的调用合并为窗口结束时以最后一次参数进行的一次回调，
+ * 该回调同时开启下一个窗口；窗口内没有调用时key被移除
+ *
+ * @param <K> key类型
+ * @param <T> 参数类型
+ */
+public class KeyedThrottler<K, T> extends AbstractKeyedCoalition<K, T, KeyedThrottler.Window<T>> {
+
+    private final boolean asyncAlways;
+
+    /**
+     * @param asyncAlways 为true时窗口外的首次回调也在时间轮的dispatcher中执行，否则在调用线程中执行
+     */
+    public KeyedThrottler(Callback<K, T> callback, long interval, boolean asyncAlways, TimingWheel timingWheel) {
+        super(callback, interval, timingWheel);
+        this.asyncAlways = asyncAlways;
+    }
+
+    public KeyedThrottler(Callback<K, T> callback, long interval, boolean asyncAlways) {
+        super(callback, interval);
+        this.asyncAlways = asyncAlways;
+    }
+
+    public KeyedThrottler(Callback<K, T> callback, long interval) {
+        this(callback, interval, false);
+    }
+
+    @Override
+    public void call(K key, T value) {
+        for (; ; ) {
+            Window<T> window = states.get(key);
+            if (window == null) {
+                Window<T> opened = new Window<>(null, false, System.nanoTime() + intervalNanos);
+                if (states.putIfAbsent(key, opened) == null) {
+                    schedule(key, opened.end);
+                    if (asyncAlways) {
+                        timingWheel.schedule(() -> deliver(key, value), 0, TimeUnit.NANOSECONDS);
+                    } else {
+                        deliver(key, value);
+                    }
+                    return;
+                }
+            } else if (states.replace(key, window, new Window<>(value, true, window.end))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    protected void due(K key, long now) {
+        for (; ; ) {
+            Window<T> window = states.get(key);
+            if (window == null) return;
+            if (window.end - now > 0) {
+                schedule(key, window.end);
+                return;
+            }
+            if (window.pending) {
+                Window<T> next = new Window<>(null, false, now + intervalNanos);
+                if (states.replace(key, window, next)) {
+                    schedule(key, next.end);
+                    deliver(key, window.value);
+                    return;
+                }
+            } else if (states.remove(key, window)) {
+                return;
+            }
+        }
+    }
+
+    static final class Window<T> {
+        private final T value;
+        private final boolean pending;
+        private final long end;
+
+        private Window(T value, boolean pending, long end) {
+            this.value = value;
+            this.pending = pending;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的耗时分布，按2的幂分桶记录纳秒值。
+ * <p>
+ * 百分位数取所在桶的上界，误差在一倍以内，适合观察量级变化
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    /**
+     * 最大值只在变大时CAS，通常只有一次volatile读
+     */
+    private final AtomicLong max = new AtomicLong(0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    private static int indexOf(long nanos) {
+        return BUCKETS - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * @param nanos 耗时，纳秒；小于0按0记录
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets[Math.min(indexOf(nanos), BUCKETS - 1)].increment();
+        total.add(nanos);
+        for (long current = max.get(); nanos > current; current = max.get()) {
+            if (max.compareAndSet(current, nanos)) break;
+        }
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return 总耗时，纳秒
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * @return 最大耗时，纳秒
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return 平均耗时，纳秒
+     */
+    public double getMean() {
+        long c = getCount();
+        return c == 0 ? 0d : (double) getTotal() / c;
+    }
+
+    /**
+     * @param quantile 0到1之间
+     * @return 百分位耗时的近似值，纳秒
+     */
+    public long getPercentile(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            sum += counts[i];
+        }
+        if (sum == 0) return 0;
+        long rank = (long) Math.ceil(Math.max(0d, Math.min(1d, quantile)) * sum);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                long upper = i == 0 ? 0 : (i >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upper, getMax());
+            }
+        }
+        return getMax();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+import org.coodex.concurrent.components.PriorityRunnable;
+import org.coodex.util.Clock;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在ExecutableWrapper之外记录提交、开始、结束时刻(仅抽中的任务)，优先级任务包装后保持优先级
+ */
+class MetricsExecutableWrapper implements ExecutableWrapper {
+
+    private final ExecutableWrapper wrapper;
+    private final PoolMetrics metrics;
+
+    MetricsExecutableWrapper(ExecutableWrapper wrapper, PoolMetrics metrics) {
+        this.wrapper = wrapper;
+        this.metrics = metrics;
+    }
+
+    private Runnable timed(Runnable runnable, long enqueued) {
+        Runnable timed = metrics.timed(runnable, enqueued);
+        return runnable instanceof PriorityRunnable ?
+                new PriorityRunnable(((PriorityRunnable) runnable).getPriority(), timed) :
+                timed;
+    }
+
+    private long enqueued() {
+        return metrics.sample() ? System.nanoTime() : PoolMetrics.NOT_TIMED;
+    }
+
+    private long expected(long delay, TimeUnit unit) {
+        return metrics.sample() ?
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, Clock.toMillis(delay, unit))) :
+                PoolMetrics.NOT_TIMED;
+    }
+
+    @Override
+    public Runnable wrap(Runnable runnable) {
+        return timed(wrapper.wrap(runnable), enqueued());
+    }
+
+    @Override
+    public <V> Callable<V> wrap(Callable<V> callable) {
+        return metrics.timed(wrapper.wrap(callable), enqueued());
+    }
+
+    /**
+     * 延迟任务的排队耗时为实际开始时刻与预期开始时刻之差
+     */
+    @Override
+    public Runnable wrap(Runnable command, long delay, TimeUnit unit) {
+        return timed(wrapper.wrap(command, delay, unit), expected(delay, unit));
+    }
+
+    @Override
+    public <V> Callable<V> wrap(Callable<V> callable, long delay, TimeUnit unit) {
+        return metrics.timed(wrapper.wrap(callable, delay, unit), expected(delay, unit));
+    }
+
+    /**
+     * 周期任务只记录执行耗时
+     */
+    @Override
+    public Runnable wrap(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return timed(wrapper.wrap(command, initialDelay, period, unit), PoolMetrics.NOT_QUEUED);
+    }
+
+    @Override
+    public <V> Callable<V> wrap(Callable<V> callable, long initialDelay, long period, TimeUnit unit) {
+        return metrics.timed(wrapper.wrap(callable, initialDelay, period, unit), PoolMetrics.NOT_QUEUED);
+    }
+}
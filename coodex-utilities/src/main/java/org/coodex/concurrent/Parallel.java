@@ -16,21 +16,48 @@
 
 package org.coodex.concurrent;
 
+import org.coodex.id.IDGenerator;
 import org.coodex.util.Clock;
+import org.coodex.util.Common;
+import org.coodex.util.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-
-import static org.coodex.id.IDGenerator.newId;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * 提供一个多任务并行处理功能
  */
 public class Parallel {
 
+    private static final Singleton<ExecutorService> VIRTUAL_EXECUTOR = Singleton.with(
+            () -> ExecutorsHelper.newVirtualThreadExecutor("parallel-virtual")
+    );
+
+    private final static Logger log = LoggerFactory.getLogger(Parallel.class);
+
+    private static final AtomicIntegerFieldUpdater<Task> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Task.class, "state");
+
+    private static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private static final Singleton<ExecutorService> FORK_JOIN_EXECUTOR = Singleton.with(
+            () -> ExecutorsHelper.newForkJoinPool(
+                    Common.toInt(System.getProperty("parallel.forkJoin.parallelism"), DEFAULT_PARALLELISM),
+                    "parallel-forkJoin")
+    );
+
     private final ExecutorService executorService;
     private final RunnerWrapper wrapper;
 
@@ -47,6 +74,34 @@ public class Parallel {
         this.wrapper = wrapper;
     }
 
+    /**
+     * 使用虚拟线程执行的并行处理，不支持虚拟线程的运行时使用缓存线程池
+     *
+     * @return Parallel
+     * @see ExecutorsHelper#newVirtualThreadExecutor(String)
+     */
+    public static Parallel virtual() {
+        return virtual(null);
+    }
+
+    public static Parallel virtual(RunnerWrapper wrapper) {
+        return new Parallel(VIRTUAL_EXECUTOR.get(), wrapper);
+    }
+
+    /**
+     * 使用共享工作窃取线程池的并行处理，线程池并行度默认为CPU数，可通过系统属性parallel.forkJoin.parallelism调整。
+     * 适合配合{@link #mapAsync(Collection, TaskFunction, int)}等异步方法处理大量短小任务
+     *
+     * @return Parallel
+     */
+    public static Parallel forkJoin() {
+        return forkJoin(null);
+    }
+
+    public static Parallel forkJoin(RunnerWrapper wrapper) {
+        return new Parallel(FORK_JOIN_EXECUTOR.get(), wrapper);
+    }
+
     public Batch run(@SuppressWarnings("SpellCheckingInspection") Runnable... runnables) {
 
         Batch batch = new Batch();
@@ -119,6 +174,291 @@ public class Parallel {
         return batch;
     }
 
+    /**
+     * @param <V> 结果类型
+     * @return 异步批次选项构建器
+     */
+    public static <V> AsyncOptionsBuilder<V> options() {
+        return new AsyncOptionsBuilder<>();
+    }
+
+    /**
+     * 异步并行执行，并行度默认为CPU数
+     *
+     * @see #runAsync(Collection, int)
+     */
+    public CompletableFuture<Batch> runAsync(Collection<? extends Runnable> runnables) {
+        return runAsync(runnables, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * 异步并行执行，不阻塞调用线程
+     *
+     * @param runnables   任务
+     * @param parallelism 同时执行的任务数上限
+     * @return 所有任务结束后完成
+     */
+    public CompletableFuture<Batch> runAsync(Collection<? extends Runnable> runnables, int parallelism) {
+        return new AsyncExecution<Runnable, Void, Task, Batch>(new Batch(), Parallel.<Runnable>toList(runnables), r -> {
+            r.run();
+            return null;
+        }, Parallel.<Void>options().parallelism(parallelism).build(), null, Task::new).start();
+    }
+
+    public <V> CompletableFuture<CallableBatch<V>> callAsync(Collection<? extends Callable<V>> callables) {
+        return callAsync(callables, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * 异步并行调用
+     *
+     * @param callables   任务
+     * @param parallelism 同时执行的任务数上限
+     * @param <V>         结果类型
+     * @return 所有任务结束后完成，结果按提交顺序排列
+     */
+    public <V> CompletableFuture<CallableBatch<V>> callAsync(Collection<? extends Callable<V>> callables, int parallelism) {
+        return callAsync(callables, Parallel.<V>options().parallelism(parallelism).build());
+    }
+
+    /**
+     * 异步并行调用，可设定截止时间、取前N个结果及按完成顺序回调
+     *
+     * @see #mapAsync(Collection, TaskFunction, AsyncOptions)
+     */
+    public <V> CompletableFuture<CallableBatch<V>> callAsync(Collection<? extends Callable<V>> callables, AsyncOptions<V> options) {
+        return mapAsync(callables, c -> c.call(), options);
+    }
+
+    public <T, V> CompletableFuture<CallableBatch<V>> mapAsync(Stream<T> inputs, TaskFunction<? super T, ? extends V> function, int parallelism) {
+        return mapAsync(inputs.collect(Collectors.toList()), function, parallelism);
+    }
+
+    public <T, V> CompletableFuture<CallableBatch<V>> mapAsync(Collection<T> inputs, TaskFunction<? super T, ? extends V> function, int parallelism) {
+        return mapAsync(inputs, function, Parallel.<V>options().parallelism(parallelism).build());
+    }
+
+    /**
+     * 对每个输入异步并行执行function。
+     * <p>
+     * 不为每个任务建线程或Future：最多parallelism个执行单元依次领取输入，适合扇出成千上万个小任务；
+     * 未指定执行器时使用共享工作窃取线程池。RunnerWrapper对每个任务生效，耗时以System.nanoTime计。
+     * <p>
+     * 批次因截止时间或取满前N个成功结果提前完成时，未开始的任务不再执行，执行中的任务被中断，
+     * 二者分别标记为{@link Task#isTimedOut()}或{@link Task#isCancelled()}，已完成的结果保留
+     *
+     * @param inputs   输入
+     * @param function 处理函数
+     * @param options  选项
+     * @param <T>      输入类型
+     * @param <V>      结果类型
+     * @return 批次完成时完成，结果按输入顺序排列；执行器拒绝导致任务无法执行时异常完成
+     */
+    public <T, V> CompletableFuture<CallableBatch<V>> mapAsync(Collection<T> inputs, TaskFunction<? super T, ? extends V> function, AsyncOptions<V> options) {
+        return new AsyncExecution<T, V, CallableTask<V>, CallableBatch<V>>(
+                new CallableBatch<>(), toList(inputs), function, options, options.onComplete, CallableTask::new
+        ).start();
+    }
+
+    private static <T> List<T> toList(Collection<? extends T> collection) {
+        if (collection == null) return Collections.emptyList();
+        return collection instanceof List ? Common.cast(collection) : new ArrayList<>(collection);
+    }
+
+    private static Throwable abortCause(int reason) {
+        return reason == Task.TIMED_OUT ?
+                new TimeoutException("parallel batch deadline exceeded.") :
+                new CancellationException("parallel batch completed.");
+    }
+
+    /**
+     * 终止未完成的任务：未开始的直接标记，执行中的中断执行线程
+     */
+    private static void abort(Task task, int reason) {
+        for (; ; ) {
+            int state = task.state;
+            if (state == Task.NEW) {
+                if (STATE.compareAndSet(task, Task.NEW, Task.INTERRUPTING)) {
+                    task.throwable = abortCause(reason);
+                    task.state = reason;
+                    return;
+                }
+            } else if (state == Task.RUNNING) {
+                if (STATE.compareAndSet(task, Task.RUNNING, Task.INTERRUPTING)) {
+                    Thread runner = task.runner;
+                    if (runner != null) runner.interrupt();
+                    task.throwable = abortCause(reason);
+                    task.state = reason;
+                    return;
+                }
+            } else if (state == Task.COMPLETING || state == Task.INTERRUPTING) {
+                Thread.yield();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private final class AsyncExecution<T, V, K extends Task, B extends AbstractBatch<K>> {
+        private final B batch;
+        private final List<T> inputs;
+        private final List<K> tasks;
+        private final TaskFunction<? super T, ? extends V> function;
+        private final AsyncOptions<?> options;
+        private final Consumer<? super K> onComplete;
+        private final CompletableFuture<B> future = new CompletableFuture<>();
+        private final AtomicInteger cursor = new AtomicInteger(0);
+        private final AtomicInteger succeeded = new AtomicInteger(0);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private final AtomicInteger lanes;
+        private final long startNanos;
+        private volatile Throwable rejected;
+        private volatile TimingWheel.Timeout deadline;
+
+        private AsyncExecution(B batch, List<T> inputs, TaskFunction<? super T, ? extends V> function,
+                               AsyncOptions<?> options, Consumer<? super K> onComplete, Supplier<K> taskSupplier) {
+            this.batch = batch;
+            this.inputs = inputs;
+            this.function = function;
+            this.options = options;
+            this.onComplete = onComplete;
+            // 耗时以真实的nanoTime计，起点也使用系统时间而非Clock，避免Clock倍率下两者不一致
+            batch.start = System.currentTimeMillis();
+            this.startNanos = System.nanoTime();
+            this.tasks = batch.getTasks();
+            for (int i = 0; i < inputs.size(); i++) {
+                K task = taskSupplier.get();
+                task.id = i + 1;
+                tasks.add(task);
+            }
+            this.lanes = new AtomicInteger(Math.min(inputs.size(), options.parallelism));
+        }
+
+        private CompletableFuture<B> start() {
+            int count = lanes.get();
+            if (count == 0) {
+                close(Task.DONE);
+                return future;
+            }
+            if (options.timeoutNanos > 0) {
+                deadline = TimingWheel.getDefault().schedule(() -> close(Task.TIMED_OUT),
+                        options.timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            Executor executor = executorService == null ? FORK_JOIN_EXECUTOR.get() : executorService;
+            for (int i = 0; i < count; i++) {
+                try {
+                    executor.execute(this::lane);
+                } catch (RejectedExecutionException e) {
+                    rejected = e;
+                    laneExit();
+                }
+            }
+            return future;
+        }
+
+        private long toMillis(long nanos) {
+            return batch.start + TimeUnit.NANOSECONDS.toMillis(nanos - startNanos);
+        }
+
+        private void lane() {
+            try {
+                for (int i; !closed.get() && (i = cursor.getAndIncrement()) < inputs.size(); ) {
+                    runTask(tasks.get(i), inputs.get(i));
+                }
+            } finally {
+                laneExit();
+            }
+        }
+
+        private void laneExit() {
+            if (lanes.decrementAndGet() > 0) return;
+            // 全部执行单元退出：已领取的任务均已结束，仍有未领取的说明执行器拒绝了任务
+            if (cursor.get() < inputs.size() && !closed.get()) {
+                if (closed.compareAndSet(false, true)) {
+                    cancelDeadline();
+                    future.completeExceptionally(rejected == null ?
+                            new RejectedExecutionException("parallel batch not finished.") : rejected);
+                }
+            } else {
+                close(Task.DONE);
+            }
+        }
+
+        private void cancelDeadline() {
+            TimingWheel.Timeout timeout = deadline;
+            if (timeout != null) timeout.cancel();
+        }
+
+        private void close(int reason) {
+            if (!closed.compareAndSet(false, true)) return;
+            cancelDeadline();
+            if (reason != Task.DONE) {
+                for (K task : tasks) {
+                    abort(task, reason);
+                }
+            }
+            batch.timedOut = reason == Task.TIMED_OUT;
+            batch.end = toMillis(System.nanoTime());
+            future.complete(batch);
+        }
+
+        private void runTask(K task, T input) {
+            long start = System.nanoTime();
+            task.start = toMillis(start);
+            task.runner = Thread.currentThread();
+            if (!STATE.compareAndSet(task, Task.NEW, Task.RUNNING)) {
+                task.runner = null;
+                return;
+            }
+            Runnable body = () -> {
+                V result = null;
+                Throwable failure = null;
+                try {
+                    result = function.apply(input);
+                } catch (Throwable th) {
+                    failure = th;
+                }
+                complete(task, result, failure, start);
+            };
+            try {
+                (wrapper == null ? body : wrapper.wrap(body)).run();
+            } catch (Throwable th) {
+                complete(task, null, th, start);
+            } finally {
+                task.runner = null;
+            }
+        }
+
+        private void complete(K task, V result, Throwable failure, long start) {
+            if (!STATE.compareAndSet(task, Task.RUNNING, Task.COMPLETING)) {
+                // 已被终止，等待中断完成后清除中断标记，避免影响执行单元的后续任务
+                while (task.state == Task.INTERRUPTING) Thread.yield();
+                //noinspection ResultOfMethodCallIgnored
+                Thread.interrupted();
+                return;
+            }
+            long end = System.nanoTime();
+            if (task instanceof CallableTask) {
+                Common.<CallableTask<V>>cast(task).result = result;
+            }
+            task.throwable = failure;
+            task.elapsedNanos = end - start;
+            task.end = toMillis(end);
+            task.finished = true;
+            task.state = Task.DONE;
+            if (onComplete != null) {
+                try {
+                    onComplete.accept(task);
+                } catch (Throwable th) {
+                    log.warn("parallel onComplete callback failed.", th);
+                }
+            }
+            if (failure == null && options.firstN > 0 && succeeded.incrementAndGet() == options.firstN) {
+                close(Task.CANCELLED);
+            }
+        }
+    }
+
     private Task newTask(final Runnable runnable, int i, final CountDownLatch latch/*, final Object lock*/) {
         final Task task = new Task();
         task.id = i;
@@ -175,12 +515,103 @@ public class Parallel {
         Callable<V> wrap(Callable<V> runnable);
     }
 
+    /**
+     * 异步批次选项
+     *
+     * @param <V> 结果类型
+     */
+    public static class AsyncOptions<V> {
+        private final int parallelism;
+        private final long timeoutNanos;
+        private final int firstN;
+        private final Consumer<? super CallableTask<V>> onComplete;
+
+        private AsyncOptions(AsyncOptionsBuilder<V> builder) {
+            this.parallelism = Math.max(1, builder.parallelism);
+            this.timeoutNanos = builder.timeoutNanos;
+            this.firstN = builder.firstN;
+            this.onComplete = builder.onComplete;
+        }
+    }
+
+    public static class AsyncOptionsBuilder<V> {
+        private int parallelism = DEFAULT_PARALLELISM;
+        private long timeoutNanos;
+        private int firstN;
+        private Consumer<? super CallableTask<V>> onComplete;
+
+        AsyncOptionsBuilder() {
+        }
+
+        /**
+         * @param parallelism 同时执行的任务数上限，默认为CPU数
+         */
+        public AsyncOptionsBuilder<V> parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * @param timeout 自提交起的截止时长，到期时批次以已有结果完成，未完成的任务标记为超时并被中断；不大于0时不限
+         */
+        public AsyncOptionsBuilder<V> timeout(long timeout, TimeUnit unit) {
+            this.timeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * @param firstN 成功完成的任务达到此数时批次完成，其余任务标记为取消并被中断；不大于0时等待全部任务
+         */
+        public AsyncOptionsBuilder<V> firstN(int firstN) {
+            this.firstN = firstN;
+            return this;
+        }
+
+        /**
+         * 任一任务成功即完成，即firstN(1)
+         */
+        public AsyncOptionsBuilder<V> anyOf() {
+            return firstN(1);
+        }
+
+        /**
+         * @param onComplete 每个任务完成时按完成顺序回调，在执行线程中调用，可能并发
+         */
+        public AsyncOptionsBuilder<V> onComplete(Consumer<? super CallableTask<V>> onComplete) {
+            this.onComplete = onComplete;
+            return this;
+        }
+
+        public AsyncOptions<V> build() {
+            return new AsyncOptions<>(this);
+        }
+    }
+
+    /**
+     * 可抛出异常的处理函数
+     */
+    public interface TaskFunction<T, V> {
+        V apply(T input) throws Exception;
+    }
+
     public static class Task {
+        static final int NEW = 0;
+        static final int RUNNING = 1;
+        static final int COMPLETING = 2;
+        static final int DONE = 3;
+        static final int INTERRUPTING = 4;
+        static final int CANCELLED = 5;
+        static final int TIMED_OUT = 6;
+
+        // 供AtomicIntegerFieldUpdater访问，不能为private
+        volatile int state = NEW;
+        volatile Thread runner;
         long start;
         long end;
         Throwable throwable;
         boolean finished = false;
         Integer id;
+        long elapsedNanos;
 
         @SuppressWarnings("unused")
         public long getTimeConsuming() {
@@ -195,6 +626,13 @@ public class Parallel {
             return end;
         }
 
+        /**
+         * @return 异步执行时以System.nanoTime计的耗时，纳秒
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
         public Throwable getThrowable() {
             return throwable;
         }
@@ -206,6 +644,20 @@ public class Parallel {
         public boolean isFinished() {
             return finished;
         }
+
+        /**
+         * @return 异步批次到达截止时间时尚未完成
+         */
+        public boolean isTimedOut() {
+            return state == TIMED_OUT;
+        }
+
+        /**
+         * @return 异步批次取满前N个结果后尚未完成
+         */
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
     }
 
     public static class CallableTask<V> extends Task {
@@ -217,17 +669,19 @@ public class Parallel {
     }
 
 
-    private static class AbstractBatch {
-        String id = newId();
+    private abstract static class AbstractBatch<K extends Task> {
+        // 按需生成，避免每个批次都访问ID生成器
+        private final Singleton<String> id = Singleton.with(IDGenerator::newId);
         long start;
         long end;
+        boolean timedOut;
 
         public long getTimeConsuming() {
             return end - start;
         }
 
         public String getId() {
-            return id;
+            return id.get();
         }
 
 
@@ -239,21 +693,30 @@ public class Parallel {
             return end;
         }
 
+        /**
+         * @return 异步批次是否因截止时间而完成
+         */
+        public boolean isTimedOut() {
+            return timedOut;
+        }
 
+        public abstract List<K> getTasks();
     }
 
 
-    public static class Batch extends AbstractBatch {
+    public static class Batch extends AbstractBatch<Task> {
         private final List<Task> tasks = new ArrayList<>();
 
+        @Override
         public List<Task> getTasks() {
             return tasks;
         }
     }
 
-    public static class CallableBatch<V> extends AbstractBatch {
+    public static class CallableBatch<V> extends AbstractBatch<CallableTask<V>> {
         private final List<CallableTask<V>> tasks = new ArrayList<>();
 
+        @Override
         public List<CallableTask<V>> getTasks() {
             return tasks;
         }
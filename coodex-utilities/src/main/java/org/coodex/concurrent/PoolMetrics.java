@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+import org.coodex.util.Common;
+import org.coodex.util.LazyServiceLoader;
+import org.coodex.util.ServiceLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ExecutorsHelper所建线程池的度量：排队耗时、执行耗时、线程数、队列深度及拒绝次数。
+ * <p>
+ * 计数均为LongAdder，耗时使用{@link LatencyHistogram}，记录路径无锁；系统属性executors.metrics为false时关闭。
+ * 耗时按executors.metrics.sampleInterval(默认16)抽样记录，未抽中的任务只计数、不调用System.nanoTime。
+ * 线程池创建时注册，shutdown时注销，并通知所有{@link PoolMetricsBinder}
+ */
+public class PoolMetrics implements PoolMetricsMBean {
+
+    private final static Logger log = LoggerFactory.getLogger(PoolMetrics.class);
+
+    private static final boolean ENABLED = Common.toBool(System.getProperty("executors.metrics"), true);
+    private static final int SAMPLE_INTERVAL = Math.max(1, Common.toInt(System.getProperty("executors.metrics.sampleInterval"), 16));
+    private static final Map<String, PoolMetrics> REGISTRY = new ConcurrentHashMap<>();
+    private static final AtomicInteger ANONYMOUS = new AtomicInteger(1);
+    private static final ServiceLoader<PoolMetricsBinder> BINDER_LOADER = new LazyServiceLoader<PoolMetricsBinder>() {
+    };
+    private static final double NANOS_PER_MILLI = 1000_000d;
+    /**
+     * 不记录排队耗时，System.nanoTime可能为负，不能用-1
+     */
+    static final long NOT_QUEUED = Long.MIN_VALUE;
+    /**
+     * 未抽中，不记录耗时
+     */
+    static final long NOT_TIMED = Long.MIN_VALUE + 1;
+
+    private final String name;
+    private final ThreadPoolExecutor threadPoolExecutor;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram execution = new LatencyHistogram();
+
+    private PoolMetrics(String name, ExecutorService executorService) {
+        this.name = name;
+        this.threadPoolExecutor = executorService instanceof ThreadPoolExecutor ?
+                (ThreadPoolExecutor) executorService : null;
+    }
+
+    /**
+     * @return 所有在用线程池的度量
+     */
+    public static Collection<PoolMetrics> getAll() {
+        return new ArrayList<>(REGISTRY.values());
+    }
+
+    /**
+     * @param name 线程池名，即线程名前缀；重名时依次追加#2、#3...
+     * @return 线程池度量，不存在时返回null
+     */
+    public static PoolMetrics get(String name) {
+        return REGISTRY.get(name);
+    }
+
+    static PoolMetrics register(String name, ExecutorService executorService) {
+        if (!ENABLED) return null;
+        String base = name == null ? ("coodex-pool-" + ANONYMOUS.getAndIncrement()) : name;
+        String unique = base;
+        PoolMetrics metrics = new PoolMetrics(unique, executorService);
+        for (int i = 2; REGISTRY.putIfAbsent(unique, metrics) != null; i++) {
+            unique = base + "#" + i;
+            metrics = new PoolMetrics(unique, executorService);
+        }
+        for (PoolMetricsBinder binder : BINDER_LOADER.sorted()) {
+            try {
+                binder.bind(metrics);
+            } catch (Throwable th) {
+                log.warn("bind executor metrics failed: {}, {}", unique, binder, th);
+            }
+        }
+        return metrics;
+    }
+
+    static void unregister(PoolMetrics metrics) {
+        if (metrics == null || !REGISTRY.remove(metrics.name, metrics)) return;
+        for (PoolMetricsBinder binder : BINDER_LOADER.sorted()) {
+            try {
+                binder.unbind(metrics);
+            } catch (Throwable th) {
+                log.warn("unbind executor metrics failed: {}, {}", metrics.name, binder, th);
+            }
+        }
+    }
+
+    /**
+     * @return 本次提交的任务是否记录耗时
+     */
+    boolean sample() {
+        return SAMPLE_INTERVAL == 1 || ThreadLocalRandom.current().nextInt(SAMPLE_INTERVAL) == 0;
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @param enqueued 入队时刻(System.nanoTime)，为{@link #NOT_QUEUED}时不记录排队耗时，为{@link #NOT_TIMED}时只计数
+     */
+    Runnable timed(Runnable runnable, long enqueued) {
+        submitted.increment();
+        return () -> {
+            long start = begin(enqueued);
+            boolean success = false;
+            try {
+                runnable.run();
+                success = true;
+            } finally {
+                end(start, success);
+            }
+        };
+    }
+
+    <V> Callable<V> timed(Callable<V> callable, long enqueued) {
+        submitted.increment();
+        return () -> {
+            long start = begin(enqueued);
+            boolean success = false;
+            try {
+                V v = callable.call();
+                success = true;
+                return v;
+            } finally {
+                end(start, success);
+            }
+        };
+    }
+
+    private long begin(long enqueued) {
+        if (enqueued == NOT_TIMED) {
+            started.increment();
+            return NOT_TIMED;
+        }
+        long start = System.nanoTime();
+        if (enqueued != NOT_QUEUED) {
+            queueWait.record(start - enqueued);
+        }
+        started.increment();
+        return start;
+    }
+
+    private void end(long start, boolean success) {
+        if (start != NOT_TIMED) execution.record(System.nanoTime() - start);
+        if (!success) failed.increment();
+        completed.increment();
+    }
+
+    void rejected() {
+        rejected.increment();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 排队耗时分布(抽样)，纳秒
+     */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * @return 执行耗时分布(抽样)，纳秒
+     */
+    public LatencyHistogram getExecution() {
+        return execution;
+    }
+
+    /**
+     * @return 提交的任务数，含被拒绝的
+     */
+    @Override
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * @return 执行结束的任务数，含失败的
+     */
+    @Override
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * @return 抛出异常的任务数；submit提交的任务异常由Future捕获，不计入
+     */
+    @Override
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getRunning() {
+        return Math.max(0L, started.sum() - completed.sum());
+    }
+
+    @Override
+    public int getQueueSize() {
+        return threadPoolExecutor == null ?
+                (int) Math.max(0L, submitted.sum() - started.sum() - rejected.sum()) :
+                threadPoolExecutor.getQueue().size();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return threadPoolExecutor == null ? -1 : threadPoolExecutor.getPoolSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return threadPoolExecutor == null ? (int) getRunning() : threadPoolExecutor.getActiveCount();
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return threadPoolExecutor == null ? -1 : threadPoolExecutor.getCorePoolSize();
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return threadPoolExecutor == null ? -1 : threadPoolExecutor.getMaximumPoolSize();
+    }
+
+    @Override
+    public double getQueueWaitMeanMillis() {
+        return toMillis(queueWait.getMean());
+    }
+
+    @Override
+    public double getQueueWaitP99Millis() {
+        return toMillis(queueWait.getPercentile(0.99d));
+    }
+
+    @Override
+    public double getQueueWaitMaxMillis() {
+        return toMillis(queueWait.getMax());
+    }
+
+    @Override
+    public double getExecutionMeanMillis() {
+        return toMillis(execution.getMean());
+    }
+
+    @Override
+    public double getExecutionP99Millis() {
+        return toMillis(execution.getPercentile(0.99d));
+    }
+
+    @Override
+    public double getExecutionMaxMillis() {
+        return toMillis(execution.getMax());
+    }
+
+    @Override
+    public String toString() {
+        return "PoolMetrics{" +
+                "name='" + name + '\'' +
+                ", submitted=" + getSubmitted() +
+                ", completed=" + getCompleted() +
+                ", failed=" + getFailed() +
+                ", rejected=" + getRejected() +
+                ", running=" + getRunning() +
+                ", queueSize=" + getQueueSize() +
+                '}';
+    }
+}
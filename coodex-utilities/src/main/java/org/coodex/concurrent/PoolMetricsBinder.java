@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+/**
+ * 线程池度量的扩展点，例如对接Micrometer等监控系统。
+ * <p>
+ * 线程池创建时bind，shutdown时unbind；实现类通过java.util.ServiceLoader注册，可以有多个
+ */
+public interface PoolMetricsBinder {
+
+    void bind(PoolMetrics metrics);
+
+    void unbind(PoolMetrics metrics);
+}
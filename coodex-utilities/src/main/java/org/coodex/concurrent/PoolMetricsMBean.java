@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+/**
+ * 线程池度量的JMX接口，耗时单位为毫秒
+ */
+public interface PoolMetricsMBean {
+
+    String getName();
+
+    long getSubmitted();
+
+    long getCompleted();
+
+    long getFailed();
+
+    long getRejected();
+
+    long getRunning();
+
+    int getQueueSize();
+
+    int getPoolSize();
+
+    int getActiveCount();
+
+    int getCorePoolSize();
+
+    int getMaximumPoolSize();
+
+    double getQueueWaitMeanMillis();
+
+    double getQueueWaitP99Millis();
+
+    double getQueueWaitMaxMillis();
+
+    double getExecutionMeanMillis();
+
+    double getExecutionP99Millis();
+
+    double getExecutionMaxMillis();
+}
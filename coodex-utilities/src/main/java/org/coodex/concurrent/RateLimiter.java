@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 平滑令牌桶限流器，按GCRA(通用信元速率算法)实现。
+ * <p>
+ * 全部状态压缩为一个long：下一个令牌的理论到达时刻(TAT)，以CAS更新，无锁。
+ * 等价于速率为permitsPerSecond、容量为burst的令牌桶：当前可用令牌数为 (now + burst间隔 - TAT) / 单个令牌间隔。
+ * 时间使用System.nanoTime，不受{@link org.coodex.util.Clock}倍率影响。
+ */
+public class RateLimiter {
+
+    private final double nanosPerPermit;
+    private final long toleranceNanos;
+    private final long burst;
+    private final long baseNanos = System.nanoTime();
+    /**
+     * 理论到达时刻，相对baseNanos
+     */
+    private final AtomicLong tat = new AtomicLong(0L);
+
+    private RateLimiter(double permitsPerSecond, long burst) {
+        if (!(permitsPerSecond > 0d)) throw new IllegalArgumentException("permitsPerSecond must be positive.");
+        if (burst < 1) throw new IllegalArgumentException("burst must be positive.");
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.burst = burst;
+        this.toleranceNanos = cost(burst);
+    }
+
+    /**
+     * @param permitsPerSecond 每秒令牌数
+     * @return 容量为1秒令牌数的限流器
+     */
+    public static RateLimiter create(double permitsPerSecond) {
+        return create(permitsPerSecond, Math.max(1L, (long) permitsPerSecond));
+    }
+
+    /**
+     * @param permitsPerSecond 每秒令牌数
+     * @param burst            桶容量，即空闲后允许立即获取的最大令牌数
+     * @return 限流器
+     */
+    public static RateLimiter create(double permitsPerSecond, long burst) {
+        return new RateLimiter(permitsPerSecond, burst);
+    }
+
+    private long cost(long permits) {
+        return (long) Math.ceil(permits * nanosPerPermit);
+    }
+
+    private long now() {
+        return System.nanoTime() - baseNanos;
+    }
+
+    private static void checkPermits(long permits) {
+        if (permits < 1) throw new IllegalArgumentException("permits must be positive: " + permits);
+    }
+
+    public double getRate() {
+        return TimeUnit.SECONDS.toNanos(1) / nanosPerPermit;
+    }
+
+    public long getBurst() {
+        return burst;
+    }
+
+    /**
+     * 预定令牌，不等待
+     *
+     * @param permits      令牌数
+     * @param maxWaitNanos 可接受的最长等待，纳秒
+     * @return 需等待的纳秒数；超出maxWaitNanos时不预定并返回-1
+     */
+    private long reserve(long permits, long maxWaitNanos) {
+        long cost = cost(permits);
+        for (; ; ) {
+            long now = now();
+            long current = tat.get();
+            long next = Math.max(current, now) + cost;
+            long wait = next - toleranceNanos - now;
+            if (wait > maxWaitNanos) return -1L;
+            if (tat.compareAndSet(current, next)) return Math.max(0L, wait);
+        }
+    }
+
+    /**
+     * 预定令牌，不阻塞，由调用者自行安排在返回的时长之后执行，适合异步或NIO场景
+     *
+     * @param permits 令牌数
+     * @return 需等待的纳秒数，0表示可立即执行
+     */
+    public long reserve(long permits) {
+        checkPermits(permits);
+        return reserve(permits, Long.MAX_VALUE);
+    }
+
+    /**
+     * 获取令牌，必要时等待；等待不响应中断，但会保留中断标记
+     *
+     * @param permits 令牌数，可以大于burst，此时按速率等待
+     * @return 等待的纳秒数
+     */
+    public long acquire(long permits) {
+        long wait = reserve(permits);
+        sleep(wait);
+        return wait;
+    }
+
+    public long acquire() {
+        return acquire(1);
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * @param permits 令牌数
+     * @return 当前有足够令牌时获取并返回true，否则不等待并返回false
+     */
+    public boolean tryAcquire(long permits) {
+        checkPermits(permits);
+        return reserve(permits, 0L) == 0L;
+    }
+
+    /**
+     * @param permits 令牌数
+     * @param timeout 最长等待
+     * @param unit    unit
+     * @return 能在timeout内获取时等待并返回true，否则立即返回false
+     */
+    public boolean tryAcquire(long permits, long timeout, TimeUnit unit) {
+        checkPermits(permits);
+        long wait = reserve(permits, Math.max(0L, unit.toNanos(timeout)));
+        if (wait < 0) return false;
+        sleep(wait);
+        return true;
+    }
+
+    /**
+     * @return 下一个令牌可用前需等待的纳秒数，0表示当前即有令牌，不预定
+     */
+    public long getWaitNanos() {
+        return Math.max(0L, tat.get() + cost(1) - toleranceNanos - now());
+    }
+
+    /**
+     * 获取当前可用的令牌，最多max个，不等待
+     *
+     * @param max 最多获取的令牌数
+     * @return 获取到的令牌数，可能为0
+     */
+    public long tryAcquireUpTo(long max) {
+        if (max < 1) return 0L;
+        for (; ; ) {
+            long now = now();
+            long current = tat.get();
+            long base = Math.max(current, now);
+            long available = (long) ((now + toleranceNanos - base) / nanosPerPermit);
+            long permits = Math.min(max, available);
+            if (permits < 1) return 0L;
+            if (tat.compareAndSet(current, base + cost(permits))) return permits;
+        }
+    }
+
+    private static void sleep(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        boolean interrupted = false;
+        for (long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) interrupted = true;
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
@@ -19,6 +19,7 @@ package org.coodex.concurrent;
 import org.coodex.util.Clock;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -26,40 +27,56 @@ import java.util.concurrent.TimeUnit;
 class ScheduledExecutorServiceImpl extends ExecutorServiceImpl implements ScheduledExecutorService {
     private final ScheduledExecutorService scheduledExecutorService;
 
-    ScheduledExecutorServiceImpl(ScheduledExecutorService scheduledExecutorService) {
-        super(scheduledExecutorService);
+    ScheduledExecutorServiceImpl(String name, ScheduledExecutorService scheduledExecutorService) {
+        super(name, scheduledExecutorService);
         this.scheduledExecutorService = scheduledExecutorService;
     }
 
     @Override
     public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
         long d = Clock.toMillis(delay, unit);
-        return scheduledExecutorService.schedule(wrapper.wrap(command, delay, unit), d, TimeUnit.MILLISECONDS);
+        try {
+            return scheduledExecutorService.schedule(wrapper.wrap(command, delay, unit), d, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            throw rejected(e);
+        }
     }
 
     @Override
     public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
         long d = Clock.toMillis(delay, unit);
-        return scheduledExecutorService.schedule(wrapper.wrap(callable, delay, unit), d, TimeUnit.MILLISECONDS);
+        try {
+            return scheduledExecutorService.schedule(wrapper.wrap(callable, delay, unit), d, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            throw rejected(e);
+        }
     }
 
     @Override
     public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
         long i = Clock.toMillis(initialDelay, unit);
         long p = Clock.toMillis(period, unit);
-        return scheduledExecutorService.scheduleAtFixedRate(
-                wrapper.wrap(command, initialDelay, period, unit),
-                i, p, TimeUnit.MILLISECONDS
-        );
+        try {
+            return scheduledExecutorService.scheduleAtFixedRate(
+                    wrapper.wrap(command, initialDelay, period, unit),
+                    i, p, TimeUnit.MILLISECONDS
+            );
+        } catch (RejectedExecutionException e) {
+            throw rejected(e);
+        }
     }
 
     @Override
     public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
         long i = Clock.toMillis(initialDelay, unit);
         long d = Clock.toMillis(delay, unit);
-        return scheduledExecutorService.scheduleAtFixedRate(
-                wrapper.wrap(command, initialDelay, delay, unit),
-                i, d, TimeUnit.MILLISECONDS
-        );
+        try {
+            return scheduledExecutorService.scheduleWithFixedDelay(
+                    wrapper.wrap(command, initialDelay, delay, unit),
+                    i, d, TimeUnit.MILLISECONDS
+            );
+        } catch (RejectedExecutionException e) {
+            throw rejected(e);
+        }
     }
 }
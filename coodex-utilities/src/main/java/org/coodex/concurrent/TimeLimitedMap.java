@@ -25,7 +25,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * 使用 {@link org.coodex.util.SingletonMap} 替代
+ * 使用 {@link org.coodex.util.SingletonMap} 或 {@link ExpiringMap} 替代
  *
  * @param <K>
  * @param <V>
@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.concurrent;
+
+import org.coodex.util.Common;
+import org.coodex.util.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 分层时间轮
+ * <p>
+ * 每层64个槽，共6层，第0层每槽一个tick。schedule/reschedule/cancel只向无锁队列投递，
+ * 由唯一的tick线程移入槽中，均为O(1)。到期任务按tick成批交给dispatcher执行。
+ * <p>
+ * 推迟到期时间({@link Timeout#reschedule(long, TimeUnit)}到更晚的时刻)只更新时间戳，
+ * 槽到期时发现未到期再重新放入时间轮，因此频繁推迟的任务不会产生队列操作。
+ */
+public class TimingWheel {
+
+    public static final long DEFAULT_TICK_MILLIS = 10L;
+
+    private final static Logger log = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 6;
+    private static final long MAX_TICKS = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    private static final int ST_WAITING = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private static final Singleton<TimingWheel> DEFAULT = Singleton.with(
+            () -> new TimingWheel("timingWheel-DEFAULT",
+                    Common.toLong(System.getProperty("timingWheel.tick"), DEFAULT_TICK_MILLIS),
+                    TimeUnit.MILLISECONDS,
+                    ExecutorsHelper.newCachedThreadPool("timingWheel-dispatcher"))
+    );
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Executor dispatcher;
+    private final Bucket[][] wheels = new Bucket[LEVELS][WHEEL_SIZE];
+    private final Queue<Timeout> scheduleQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelQueue = new ConcurrentLinkedQueue<>();
+    private final Thread ticker;
+    private volatile boolean running = true;
+    private volatile boolean idle = false;
+    /**
+     * 下一个待处理的tick，仅tick线程访问
+     */
+    private long currentTick = 0;
+    /**
+     * 时间轮中的任务数，仅tick线程访问
+     */
+    private int count = 0;
+
+    /**
+     * @param name         tick线程名称
+     * @param tickDuration 每个tick的时长，即到期精度
+     * @param unit         unit
+     * @param dispatcher   执行到期任务，为null时在tick线程中执行，此时任务应足够轻量
+     */
+    public TimingWheel(String name, long tickDuration, TimeUnit unit, Executor dispatcher) {
+        this.tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), unit.toNanos(tickDuration));
+        this.dispatcher = dispatcher;
+        for (Bucket[] wheel : wheels) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheel[i] = new Bucket();
+            }
+        }
+        this.startNanos = System.nanoTime();
+        this.ticker = new Thread(this::loop, name);
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+        ExecutorsHelper.registerShutdownHook(this::stop);
+    }
+
+    /**
+     * @return 共享的时间轮，tick默认10毫秒，可通过系统属性timingWheel.tick调整
+     */
+    public static TimingWheel getDefault() {
+        return DEFAULT.get();
+    }
+
+    /**
+     * @param task  到期执行的任务
+     * @param delay 延迟
+     * @param unit  unit
+     * @return 可取消、可调整的定时任务
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (task == null) throw new NullPointerException("task is null.");
+        if (!running) throw new IllegalStateException("timing wheel stopped.");
+        Timeout timeout = new Timeout(task, System.nanoTime() + Math.max(0, unit.toNanos(delay)));
+        enqueue(scheduleQueue, timeout);
+        return timeout;
+    }
+
+    /**
+     * @param unit unit
+     * @return tick时长，即到期精度
+     */
+    public long getTickDuration(TimeUnit unit) {
+        return unit.convert(tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(ticker);
+    }
+
+    private void enqueue(Queue<Timeout> queue, Timeout timeout) {
+        queue.offer(timeout);
+        if (idle) LockSupport.unpark(ticker);
+    }
+
+    private long toTick(long nanos) {
+        long ticks = nanos - startNanos;
+        return ticks <= 0 ? 0 : (ticks + tickNanos - 1) / tickNanos;
+    }
+
+    private void loop() {
+        List<Timeout> expired = new ArrayList<>();
+        while (running) {
+            try {
+                drain();
+                long now = System.nanoTime();
+                long nowTick = (now - startNanos) / tickNanos;
+                if (count == 0) {
+                    // 没有任务时直接跳到当前tick，等待新任务
+                    currentTick = Math.max(currentTick, nowTick);
+                    idle = true;
+                    if (scheduleQueue.isEmpty()) LockSupport.park(this);
+                    idle = false;
+                    continue;
+                }
+                if (currentTick > nowTick) {
+                    LockSupport.parkNanos(this, startNanos + currentTick * tickNanos - now);
+                    continue;
+                }
+                while (currentTick <= nowTick && count > 0) {
+                    tick(expired);
+                }
+                if (count == 0) currentTick = Math.max(currentTick, nowTick + 1);
+                if (!expired.isEmpty()) {
+                    dispatch(expired);
+                    expired = new ArrayList<>();
+                }
+            } catch (Throwable th) {
+                log.warn("timing wheel tick failed.", th);
+            }
+        }
+    }
+
+    private void drain() {
+        Timeout timeout;
+        while ((timeout = cancelQueue.poll()) != null) {
+            unlink(timeout);
+        }
+        while ((timeout = scheduleQueue.poll()) != null) {
+            if (timeout.state != ST_WAITING) continue;
+            unlink(timeout);
+            insert(timeout);
+        }
+    }
+
+    private void tick(List<Timeout> expired) {
+        long tick = currentTick;
+        // 低层转完一圈时，将上一层对应槽中的任务降级
+        for (int level = 1; level < LEVELS; level++) {
+            if (((tick >>> (WHEEL_BITS * (level - 1))) & WHEEL_MASK) != 0) break;
+            Timeout timeout = wheels[level][(int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK)].detach();
+            while (timeout != null) {
+                Timeout next = timeout.detached();
+                count--;
+                insert(timeout);
+                timeout = next;
+            }
+        }
+        Timeout timeout = wheels[0][(int) (tick & WHEEL_MASK)].detach();
+        currentTick = tick + 1;
+        while (timeout != null) {
+            Timeout next = timeout.detached();
+            count--;
+            if (toTick(timeout.deadline) > tick) {
+                // 已被推迟
+                insert(timeout);
+            } else if (STATE.compareAndSet(timeout, ST_WAITING, ST_EXPIRED)) {
+                expired.add(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void insert(Timeout timeout) {
+        if (timeout.state != ST_WAITING) return;
+        long expires = Math.max(toTick(timeout.deadline), currentTick);
+        long diff = Math.min(expires - currentTick, MAX_TICKS);
+        expires = currentTick + diff;
+        int level = 0;
+        while (level < LEVELS - 1 && diff >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        wheels[level][(int) ((expires >>> (WHEEL_BITS * level)) & WHEEL_MASK)].add(timeout);
+        count++;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.bucket != null) {
+            timeout.bucket.remove(timeout);
+            count--;
+        }
+    }
+
+    private void dispatch(List<Timeout> expired) {
+        Runnable batch = () -> {
+            for (Timeout timeout : expired) {
+                try {
+                    timeout.task.run();
+                } catch (Throwable th) {
+                    log.warn("timeout task failed: {}", timeout.task, th);
+                }
+            }
+        };
+        if (dispatcher == null) {
+            batch.run();
+        } else {
+            dispatcher.execute(batch);
+        }
+    }
+
+    /**
+     * 槽内的双向链表，仅tick线程访问
+     */
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * @return 摘下整条链表，遍历时通过{@link Timeout#detached()}逐个断开
+         */
+        Timeout detach() {
+            Timeout timeout = head;
+            head = null;
+            tail = null;
+            return timeout;
+        }
+    }
+
+    public class Timeout {
+        private final Runnable task;
+        // 供AtomicIntegerFieldUpdater访问，不能为private
+        volatile int state = ST_WAITING;
+        private volatile long deadline;
+        // 以下仅tick线程访问
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        private Timeout detached() {
+            Timeout n = next;
+            bucket = null;
+            prev = null;
+            next = null;
+            return n;
+        }
+
+        /**
+         * @return 取消成功返回true，已到期或已取消返回false
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, ST_WAITING, ST_CANCELLED)) return false;
+            enqueue(cancelQueue, this);
+            return true;
+        }
+
+        /**
+         * 从当前时刻起重新计算到期时间
+         *
+         * @param delay 延迟
+         * @param unit  unit
+         * @return 已到期或已取消时返回false
+         */
+        public boolean reschedule(long delay, TimeUnit unit) {
+            if (state != ST_WAITING) return false;
+            long newDeadline = System.nanoTime() + Math.max(0, unit.toNanos(delay));
+            long old = deadline;
+            deadline = newDeadline;
+            // 推迟时由tick线程在原槽到期时重新放置，提前时需要重新入槽
+            if (newDeadline < old) enqueue(scheduleQueue, this);
+            return state == ST_WAITING;
+        }
+
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        /**
+         * @return 距到期的剩余时间
+         */
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.count;
+
+import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.concurrent.TimingWheel;
+import org.coodex.util.Clock;
+import org.coodex.util.Common;
+import org.coodex.util.LazyServiceLoader;
+import org.coodex.util.ServiceLoader;
+import org.coodex.util.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分段计数器的基础实现。
+ * <p>
+ * 每个分段内按维度使用LongAdder/DoubleAdder累加，无锁；到达{@link Segmentation#next()}边界时以CAS替换为新分段，
+ * 关闭的分段延迟{@link #getFlushDelay()}毫秒(等待替换前已开始的计数完成)后，在独立线程中交给{@link SegmentSink}输出，
+ * 计数线程不会因IO阻塞。
+ * <p>
+ * 可作为{@link BatchCounter}挂在{@link CounterChain}上。
+ * <p>
+ * {@link #getStore()}返回{@link MappedCounterStore}时，计数仍在内存中累加，刷出线程每隔{@link #getCheckpointInterval()}毫秒
+ * 将有变化的维度写入映射文件；重启后未结束的分段继续累加，已结束未输出的分段补充输出。分段输出后回收其槽位，
+ * 输出与回收之间进程退出时，该分段会在重启后再次输出。
+ */
+public abstract class AbstractSegmentedCounter<T extends Countable> implements SegmentedCounter<T>, BatchCounter<T> {
+
+    private final static Logger log = LoggerFactory.getLogger(AbstractSegmentedCounter.class);
+
+    private static final ServiceLoader<SegmentSink> SINK_LOADER = new LazyServiceLoader<SegmentSink>() {
+    };
+    private static final SegmentSink DEFAULT_SINK = new LoggingSegmentSink();
+    private static final Singleton<ExecutorService> FLUSH_EXECUTOR = Singleton.with(
+            () -> ExecutorsHelper.newSingleThreadExecutor("segmented-counter"));
+    /**
+     * 分段边界的检查间隔上限，毫秒；{@link Clock}有倍率时实际时间与now()不一致，按此间隔轮询
+     */
+    private static final long MAX_ROLL_CHECK_INTERVAL = 1000L;
+
+    private final AtomicReference<Window> current = new AtomicReference<>();
+    private volatile MappedCounterStore store;
+    private long lastForce = System.nanoTime();
+
+    /**
+     * @param value value
+     * @return 维度，需实现equals/hashCode，应尽量紧凑；为null时不计数
+     */
+    protected abstract Object getDimension(T value);
+
+    /**
+     * @param value value
+     * @return 需累加的数值，默认0，只计次数
+     */
+    protected double getValue(T value) {
+        return 0d;
+    }
+
+    protected String getName() {
+        return getClass().getName();
+    }
+
+    protected long now() {
+        return Clock.currentTimeMillis();
+    }
+
+    /**
+     * @return 分段关闭后延迟多久刷出，毫秒，默认System.getProperty("segmentedCounter.flushDelay")或1000
+     */
+    protected long getFlushDelay() {
+        return Common.toLong(System.getProperty("segmentedCounter.flushDelay"), 1000L);
+    }
+
+    /**
+     * @return 持久化存储，默认null，不持久化；一个存储文件只能由一个计数器使用
+     */
+    protected MappedCounterStore getStore() {
+        return null;
+    }
+
+    /**
+     * @return 写入存储的间隔，毫秒，默认System.getProperty("segmentedCounter.checkpointInterval")或100
+     */
+    protected long getCheckpointInterval() {
+        return Common.toLong(System.getProperty("segmentedCounter.checkpointInterval"), 100L);
+    }
+
+    /**
+     * @return 存储force()到磁盘的间隔，毫秒，默认System.getProperty("segmentedCounter.forceInterval")或0，即只在关闭时force
+     */
+    protected long getForceInterval() {
+        return Common.toLong(System.getProperty("segmentedCounter.forceInterval"), 0L);
+    }
+
+    /**
+     * @param dimension 维度
+     * @return 维度在存储中的编码，默认整数取值，其他取字符串形式的64位FNV-1a散列
+     */
+    protected long encodeDimension(Object dimension) {
+        if (dimension instanceof Long || dimension instanceof Integer
+                || dimension instanceof Short || dimension instanceof Byte) {
+            return ((Number) dimension).longValue();
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : String.valueOf(dimension).getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 重启恢复时由编码还原维度。无法还原(默认)的维度在重新计数时合并，分段结束时仍未出现的以编码(Long)作为维度输出
+     *
+     * @param encoded 维度编码
+     * @return 维度，null表示无法还原
+     */
+    protected Object decodeDimension(long encoded) {
+        return null;
+    }
+
+    /**
+     * @return 分段输出，默认为所有{@link SegmentSink}服务，没有则输出到日志
+     */
+    protected Collection<SegmentSink> getSinks() {
+        List<SegmentSink> sinks = SINK_LOADER.sorted();
+        return sinks.isEmpty() ? Collections.singletonList(DEFAULT_SINK) : sinks;
+    }
+
+    @Override
+    public void count(T value) {
+        if (value != null) count(window(), value);
+    }
+
+    @Override
+    public void count(List<T> values) {
+        if (values == null || values.isEmpty()) return;
+        Window window = window();
+        for (T value : values) {
+            if (value != null) count(window, value);
+        }
+    }
+
+    private void count(Window window, T value) {
+        Object dimension = getDimension(value);
+        if (dimension != null) {
+            accumulator(window, dimension).add(getValue(value));
+        }
+    }
+
+    private Accumulator accumulator(Window window, Object dimension) {
+        Accumulator accumulator = window.accumulators.get(dimension);
+        if (accumulator == null) {
+            Accumulator newAccumulator = new Accumulator();
+            accumulator = window.accumulators.putIfAbsent(dimension, newAccumulator);
+            if (accumulator == null) {
+                accumulator = newAccumulator;
+                attach(window, dimension, accumulator);
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * 为新维度分配存储槽位，合并重启前的计数
+     */
+    private void attach(Window window, Object dimension, Accumulator accumulator) {
+        MappedCounterStore store = this.store;
+        if (store == null) return;
+        long encoded = encodeDimension(dimension);
+        MappedCounterStore.Entry recovered = window.unclaimed.remove(encoded);
+        if (recovered != null) {
+            accumulator.count.add(recovered.getCount());
+            accumulator.sum.add(recovered.getSum());
+        }
+        int slot = store.allocate(window.start, window.end, encoded);
+        if (slot < 0) {
+            log.warn("counter store of {} is full, dimension {} will not be persisted.", getName(), dimension);
+        }
+        accumulator.slot = slot;
+        accumulator.dirty = true;
+    }
+
+    @Override
+    public void slice() {
+        Window window = current.get();
+        if (window != null) roll(window, true);
+    }
+
+    private Window window() {
+        Window window = current.get();
+        if (window == null) window = init();
+        return now() < window.end ? window : roll(window, false);
+    }
+
+    private long next(long now) {
+        long next = getSegmentation().next();
+        if (next <= now) {
+            log.warn("segmentation {} returns a past time: {}", getSegmentation().getClass().getName(), next);
+            next = now + 1;
+        }
+        return next;
+    }
+
+    private synchronized Window init() {
+        Window window = current.get();
+        if (window != null) return window;
+        long now = now();
+        MappedCounterStore store = getStore();
+        this.store = store;
+        if (store != null) {
+            window = recover(store, now);
+            ExecutorsHelper.registerShutdownHook(() -> {
+                checkpoint();
+                store.force();
+            });
+            scheduleCheckpoint();
+        }
+        if (window == null) window = new Window(now, next(now));
+        current.set(window);
+        scheduleRoll(window);
+        return window;
+    }
+
+    /**
+     * @return 重启前未结束的分段，没有则返回null；已结束的分段安排输出
+     */
+    private Window recover(MappedCounterStore store, long now) {
+        Map<Long, Window> windows = new HashMap<>();
+        for (MappedCounterStore.Entry entry : store.entries()) {
+            windows.computeIfAbsent(entry.getSegment(), start -> new Window(start, entry.getEnd()))
+                    .unclaimed.put(entry.getDimension(), entry);
+        }
+        Window open = null;
+        for (Window window : windows.values()) {
+            if (window.end > now && (open == null || window.start > open.start)) open = window;
+        }
+        for (Window window : windows.values()) {
+            if (window != open) {
+                log.info("recovered segment [{} - {}] of {}.", window.start, window.end, getName());
+                close(window, Math.min(now, window.end));
+            }
+        }
+        if (open != null) {
+            for (Long encoded : new ArrayList<>(open.unclaimed.keySet())) {
+                Object dimension = decodeDimension(encoded);
+                if (dimension != null) accumulator(open, dimension);
+            }
+        }
+        return open;
+    }
+
+    private Window roll(Window expected, boolean force) {
+        for (; ; ) {
+            long now = now();
+            if (!force && now < expected.end) return expected;
+            // 分段开始时间即存储中的分段标识，不能重复
+            long closedAt = force ? Math.max(expected.start + 1, Math.min(now, expected.end)) : expected.end;
+            Window window = new Window(closedAt, next(Math.max(now, closedAt)));
+            if (current.compareAndSet(expected, window)) {
+                close(expected, closedAt);
+                scheduleRoll(window);
+                return window;
+            }
+            // 其他线程已经替换过
+            expected = current.get();
+            force = false;
+        }
+    }
+
+    /**
+     * 将当前分段有变化的计数写入存储，由刷出线程定期调用
+     */
+    public void checkpoint() {
+        MappedCounterStore store = this.store;
+        Window window = current.get();
+        if (store != null && window != null) checkpoint(store, window);
+    }
+
+    private static void checkpoint(MappedCounterStore store, Window window) {
+        for (Accumulator accumulator : window.accumulators.values()) {
+            int slot = accumulator.slot;
+            if (accumulator.dirty && slot >= 0) {
+                // 先清除标记，之后的计数会重新标记
+                accumulator.dirty = false;
+                store.write(slot, accumulator.count.sum(), accumulator.sum.sum());
+            }
+        }
+    }
+
+    private void scheduleCheckpoint() {
+        try {
+            TimingWheel.getDefault().schedule(() -> FLUSH_EXECUTOR.get().execute(() -> {
+                try {
+                    checkpoint();
+                    long forceInterval = getForceInterval();
+                    if (forceInterval > 0 && System.nanoTime() - lastForce >= TimeUnit.MILLISECONDS.toNanos(forceInterval)) {
+                        lastForce = System.nanoTime();
+                        store.force();
+                    }
+                } catch (Throwable th) {
+                    log.warn("checkpoint failed. {}, {}", getName(), th.getLocalizedMessage(), th);
+                }
+                scheduleCheckpoint();
+            }), Math.max(1L, getCheckpointInterval()), TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            log.warn("schedule checkpoint failed: {}", e.getLocalizedMessage());
+        }
+    }
+
+    private void scheduleRoll(Window window) {
+        long delay = Math.max(1L, Math.min(MAX_ROLL_CHECK_INTERVAL, window.end - now()));
+        try {
+            TimingWheel.getDefault().schedule(() -> {
+                if (current.get() != window) return;
+                if (now() < window.end) {
+                    scheduleRoll(window);
+                } else {
+                    roll(window, false);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            log.warn("schedule segment roll failed: {}", e.getLocalizedMessage());
+        }
+    }
+
+    private void close(Window window, long closedAt) {
+        try {
+            TimingWheel.getDefault().schedule(() -> FLUSH_EXECUTOR.get().execute(() -> flush(window, closedAt)),
+                    Math.max(0L, getFlushDelay()), TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            log.warn("schedule segment flush failed, flush in caller thread: {}", e.getLocalizedMessage());
+            flush(window, closedAt);
+        }
+    }
+
+    private void flush(Window window, long closedAt) {
+        MappedCounterStore store = this.store;
+        if (store != null) checkpoint(store, window);
+        if (!window.accumulators.isEmpty() || !window.unclaimed.isEmpty()) {
+            Map<Object, Segment.Value> values = new HashMap<>();
+            for (MappedCounterStore.Entry entry : window.unclaimed.values()) {
+                Object dimension = decodeDimension(entry.getDimension());
+                values.put(dimension == null ? entry.getDimension() : dimension,
+                        new Segment.Value(entry.getCount(), entry.getSum()));
+            }
+            for (Map.Entry<Object, Accumulator> entry : window.accumulators.entrySet()) {
+                Accumulator accumulator = entry.getValue();
+                values.put(entry.getKey(), new Segment.Value(accumulator.count.sum(), accumulator.sum.sum()));
+            }
+            Segment segment = new Segment(getName(), window.start, closedAt, values);
+            for (SegmentSink sink : getSinks()) {
+                try {
+                    sink.flush(segment);
+                } catch (Throwable th) {
+                    log.warn("segment flush failed. {}, {}", sink.getClass().getName(), th.getLocalizedMessage(), th);
+                }
+            }
+        }
+        if (store != null) store.release(window.start);
+    }
+
+    private static class Accumulator {
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private volatile int slot = -1;
+        private volatile boolean dirty = false;
+
+        private void add(double value) {
+            count.increment();
+            if (value != 0d) sum.add(value);
+            if (!dirty) dirty = true;
+        }
+    }
+
+    private static class Window {
+        private final long start;
+        private final long end;
+        private final ConcurrentMap<Object, Accumulator> accumulators = new ConcurrentHashMap<>();
+        /**
+         * 重启前写入存储、尚未合并的计数，维度编码 -> 计数
+         */
+        private final ConcurrentMap<Long, MappedCounterStore.Entry> unclaimed = new ConcurrentHashMap<>();
+
+        private Window(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
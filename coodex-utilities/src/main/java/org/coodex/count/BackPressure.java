@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.count;
+
+/**
+ * 计数缓冲区满时的处理策略
+ */
+public enum BackPressure {
+    /**
+     * 丢弃
+     */
+    DROP,
+    /**
+     * 阻塞生产者直到有空间，期间生产者会协助消费
+     */
+    BLOCK,
+    /**
+     * 缓冲区占用过半后按采样率入队，其余丢弃；满时丢弃
+     */
+    SAMPLE
+}
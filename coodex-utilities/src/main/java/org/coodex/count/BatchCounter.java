@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.count;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量计数器，由{@link CounterChain}的消费者按批调用，同一链上不会并发调用
+ */
+public interface BatchCounter<T extends Countable> extends Counter<T> {
+
+    /**
+     * @param values 一批待计数的值，按入队顺序，不可修改
+     */
+    void count(List<T> values);
+
+    @Override
+    default void count(T value) {
+        count(Collections.singletonList(value));
+    }
+}
@@ -16,31 +16,118 @@
 
 package org.coodex.count;
 
+import org.coodex.util.Common;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Created by davidoff shen on 2017-04-18.
+ * <p>
+ * 非{@link Sync}的计数器不再每个值提交一个任务：值先进入本链的有界环形缓冲区，
+ * 由线程池中的单个消费者按批分发，{@link BatchCounter}按批调用，普通{@link Counter}逐个调用。
+ * <p>
+ * 配置项(System.getProperty)，子类可覆盖对应方法，首次计数时读取：
+ * <ul>
+ *     <li>counter.bufferSize: 缓冲区大小，默认8192</li>
+ *     <li>counter.batchSize: 每批最大个数，默认256</li>
+ *     <li>counter.backPressure: 缓冲区满时的策略，{@link BackPressure}，默认BLOCK</li>
+ *     <li>counter.sampleRate: SAMPLE策略下每几个值入队一个，默认10</li>
+ * </ul>
  */
 public abstract class CounterChain<T extends Countable> implements Counter<T> {
 
     private final static Logger log = LoggerFactory.getLogger(CounterChain.class);
 
+    /**
+     * 单次消费任务最多处理的批数，超出后重新提交以免长期占用线程池
+     */
+    private static final int MAX_BATCHES_PER_RUN = 16;
 
-    private final List<Counter<T>> counters = new ArrayList<>();
+    private final List<Counter<T>> counters = new CopyOnWriteArrayList<>();
+    private final List<Counter<T>> syncCounters = new CopyOnWriteArrayList<>();
+    private final List<Counter<T>> asyncCounters = new CopyOnWriteArrayList<>();
+
+    /**
+     * 首次计数时按配置创建，之后不变
+     */
+    private volatile Pipeline<T> pipeline;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private final AtomicLong sampling = new AtomicLong(0L);
+    private final Runnable drainTask = this::drainLoop;
 
     public void addCounter(Counter<T> counter) {
         if (counter != null && !counters.contains(counter) && !CounterChain.class.isAssignableFrom(counter.getClass())) {
             counters.add(counter);
+            (isSync(counter) ? syncCounters : asyncCounters).add(counter);
         }
     }
 
     protected abstract Executor getThreadPool();
 
+    protected int getBufferSize() {
+        return Common.toInt(System.getProperty("counter.bufferSize"), 8192);
+    }
+
+    protected int getBatchSize() {
+        return Common.toInt(System.getProperty("counter.batchSize"), 256);
+    }
+
+    protected BackPressure getBackPressure() {
+        String backPressure = System.getProperty("counter.backPressure");
+        if (backPressure != null) {
+            try {
+                return BackPressure.valueOf(backPressure.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.warn("unknown counter.backPressure: {}, use BLOCK.", backPressure);
+            }
+        }
+        return BackPressure.BLOCK;
+    }
+
+    protected int getSampleRate() {
+        return Common.toInt(System.getProperty("counter.sampleRate"), 10);
+    }
+
+    /**
+     * @return 因缓冲区满或采样被丢弃的值的个数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return 缓冲区中待分发的值的个数
+     */
+    public int getPending() {
+        return pipeline().buffer.size();
+    }
+
+    private Pipeline<T> pipeline() {
+        Pipeline<T> p = pipeline;
+        if (p == null) {
+            synchronized (this) {
+                p = pipeline;
+                if (p == null) {
+                    p = new Pipeline<>(getBufferSize(), getBatchSize(), getBackPressure(), getSampleRate());
+                    pipeline = p;
+                }
+            }
+        }
+        return p;
+    }
+
     private boolean isSync(Counter<T> counter) {
 
         return counter.getClass().getAnnotation(Sync.class) != null;
@@ -48,23 +135,122 @@ public abstract class CounterChain<T extends Countable> implements Counter<T> {
 
     @Override
     public void count(final T value) {
-        if (value != null && counters.size() > 0) {
-            for (final Counter<T> counter : counters) {
-                Runnable runnable = () -> {
-                    synchronized (counter) {
-                        try {
-                            counter.count(value);
-                        } catch (Throwable th) {
-                            log.warn("count failed. {}, {}", counter.getClass().getName(), th.getLocalizedMessage(), th);
-                        }
+        if (value == null) return;
+        for (Counter<T> counter : syncCounters) {
+            synchronized (counter) {
+                countOne(counter, value);
+            }
+        }
+        if (!asyncCounters.isEmpty() && enqueue(value)) {
+            schedule();
+        }
+    }
+
+    private boolean enqueue(T value) {
+        Pipeline<T> p = pipeline();
+        CountingRingBuffer<T> ringBuffer = p.buffer;
+        switch (p.backPressure) {
+            case SAMPLE:
+                if (ringBuffer.size() >= ringBuffer.capacity() / 2
+                        && sampling.getAndIncrement() % p.sampleRate != 0) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                // fall through
+            case DROP:
+                if (ringBuffer.offer(value)) return true;
+                dropped.incrementAndGet();
+                return false;
+            default:
+                while (!ringBuffer.offer(value)) {
+                    // 缓冲区满时协助消费，避免生产者本身就是线程池线程时互相等待
+                    schedule();
+                    if (!drain(1)) {
+                        LockSupport.parkNanos(10_000L);
+                    }
+                }
+                return true;
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+            try {
+                getThreadPool().execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                log.warn("counter drain task rejected, drain in caller thread. {}", e.getLocalizedMessage());
+                drain(Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    private void drainLoop() {
+        scheduled.set(false);
+        drain(MAX_BATCHES_PER_RUN);
+    }
+
+    /**
+     * 取得消费权后最多分发maxBatches批，释放后如仍有积压则重新提交消费任务
+     *
+     * @param maxBatches 最多批数
+     * @return 是否取得了消费权
+     */
+    private boolean drain(int maxBatches) {
+        if (!draining.compareAndSet(false, true)) return false;
+        Pipeline<T> p = pipeline();
+        CountingRingBuffer<T> ringBuffer = p.buffer;
+        try {
+            int batchSize = p.batchSize;
+            for (int i = 0; i < maxBatches; i++) {
+                List<T> batch = new ArrayList<>(Math.min(batchSize, ringBuffer.size()));
+                if (ringBuffer.drainTo(batch, batchSize) == 0) break;
+                dispatch(Collections.unmodifiableList(batch));
+            }
+        } finally {
+            draining.set(false);
+        }
+        if (!ringBuffer.isEmpty()) schedule();
+        return true;
+    }
+
+    private void dispatch(List<T> batch) {
+        for (Counter<T> counter : asyncCounters) {
+            if (counter instanceof BatchCounter) {
+                try {
+                    ((BatchCounter<T>) counter).count(batch);
+                } catch (Throwable th) {
+                    log.warn("count failed. {}, {}", counter.getClass().getName(), th.getLocalizedMessage(), th);
+                }
+            } else {
+                synchronized (counter) {
+                    for (T value : batch) {
+                        countOne(counter, value);
                     }
-                };
-                if (isSync(counter))
-                    runnable.run();
-                else {
-                    getThreadPool().execute(runnable);
                 }
             }
         }
     }
+
+    private static <T extends Countable> void countOne(Counter<T> counter, T value) {
+        try {
+            counter.count(value);
+        } catch (Throwable th) {
+            log.warn("count failed. {}, {}", counter.getClass().getName(), th.getLocalizedMessage(), th);
+        }
+    }
+
+    private static class Pipeline<T> {
+        private final CountingRingBuffer<T> buffer;
+        private final int batchSize;
+        private final BackPressure backPressure;
+        private final int sampleRate;
+
+        private Pipeline(int bufferSize, int batchSize, BackPressure backPressure, int sampleRate) {
+            this.buffer = new CountingRingBuffer<>(Math.max(2, bufferSize));
+            this.batchSize = Math.max(1, batchSize);
+            this.backPressure = backPressure == null ? BackPressure.BLOCK : backPressure;
+            this.sampleRate = Math.max(1, sampleRate);
+        }
+    }
 }
@@ -58,8 +58,9 @@ public class CounterFacade {
      * @param <T>   <T>
      */
     public static <T extends Countable> void count(Collection<T> value) {
+        CountFacade countFacade = COUNTER_FACTORY.get();
         for (T t : value) {
-            COUNTER_FACTORY.get().count(t);
+            countFacade.count(t);
         }
     }
 
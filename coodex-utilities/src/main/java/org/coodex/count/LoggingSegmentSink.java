@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.count;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 没有配置{@link SegmentSink}时使用，以info级别输出分段统计结果
+ */
+public class LoggingSegmentSink implements SegmentSink {
+
+    private final static Logger log = LoggerFactory.getLogger(LoggingSegmentSink.class);
+
+    @Override
+    public void flush(Segment segment) {
+        log.info("{}", segment);
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.count;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * 基于内存映射文件的计数存储，进程重启后可恢复未输出的分段计数。
+ * <p>
+ * 文件由64字节的头和固定宽度(40字节)的槽位组成，每个槽位依次为：分段开始时间(long，0表示空闲)、分段结束时间(long)、
+ * 维度编码(long)、计数(long)、累计值(double)。写入均为对齐的8字节putLong，由操作系统页缓存持久化，JVM崩溃不丢失；
+ * 需要防止操作系统崩溃时调用{@link #force()}。已关闭的分段通过{@link #release(long)}回收槽位，文件不会增长。
+ */
+public class MappedCounterStore implements Closeable {
+
+    private static final int MAGIC = 0x43445843;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 40;
+    private static final int SEGMENT = 0;
+    private static final int END = 8;
+    private static final int DIMENSION = 16;
+    private static final int COUNT = 24;
+    private static final int SUM = 32;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final Map<Key, Integer> index = new HashMap<>();
+    private final Deque<Integer> free = new ArrayDeque<>();
+
+    /**
+     * @param file     存储文件，不存在时创建；已存在时按文件中的容量打开
+     * @param capacity 新建文件的槽位数
+     * @throws IOException 文件无法打开或不是计数存储文件
+     */
+    public MappedCounterStore(File file, int capacity) throws IOException {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.file = new RandomAccessFile(file, "rw");
+        try {
+            this.channel = this.file.getChannel();
+            boolean exists = channel.size() >= HEADER_SIZE;
+            if (exists) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(12) != SLOT_SIZE) {
+                    throw new IOException("not a counter store: " + file.getAbsolutePath());
+                }
+                capacity = header.getInt(8);
+            }
+            this.capacity = capacity;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            if (exists) {
+                recover();
+            } else {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, capacity);
+                buffer.putInt(12, SLOT_SIZE);
+                for (int i = capacity - 1; i >= 0; i--) {
+                    free.push(i);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private void recover() {
+        for (int slot = capacity - 1; slot >= 0; slot--) {
+            int offset = offset(slot);
+            long segment = buffer.getLong(offset + SEGMENT);
+            if (segment == 0L) {
+                free.push(slot);
+            } else {
+                index.put(new Key(segment, buffer.getLong(offset + DIMENSION)), slot);
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return 已使用的槽位数
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * 获取分段+维度对应的槽位，不存在时分配
+     *
+     * @param segment   分段开始时间，不能为0
+     * @param end       分段结束时间
+     * @param dimension 维度编码
+     * @return 槽位，已满时返回-1
+     */
+    public synchronized int allocate(long segment, long end, long dimension) {
+        if (segment == 0L) throw new IllegalArgumentException("segment must not be 0.");
+        Key key = new Key(segment, dimension);
+        Integer slot = index.get(key);
+        if (slot != null) return slot;
+        if (free.isEmpty()) return -1;
+        slot = free.pop();
+        int offset = offset(slot);
+        buffer.putLong(offset + END, end);
+        buffer.putLong(offset + DIMENSION, dimension);
+        buffer.putLong(offset + COUNT, 0L);
+        buffer.putLong(offset + SUM, Double.doubleToRawLongBits(0d));
+        // 最后写分段，标记为已使用
+        buffer.putLong(offset + SEGMENT, segment);
+        index.put(key, slot);
+        return slot;
+    }
+
+    /**
+     * @param slot  {@link #allocate(long, long, long)}返回的槽位
+     * @param count 计数
+     * @param sum   累计值
+     */
+    public synchronized void write(int slot, long count, double sum) {
+        if (slot < 0 || slot >= capacity) throw new IndexOutOfBoundsException("slot: " + slot);
+        int offset = offset(slot);
+        buffer.putLong(offset + COUNT, count);
+        buffer.putLong(offset + SUM, Double.doubleToRawLongBits(sum));
+    }
+
+    /**
+     * @return 所有已使用槽位的内容
+     */
+    public synchronized List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(index.size());
+        for (Map.Entry<Key, Integer> entry : index.entrySet()) {
+            int offset = offset(entry.getValue());
+            entries.add(new Entry(entry.getKey().segment, buffer.getLong(offset + END), entry.getKey().dimension,
+                    buffer.getLong(offset + COUNT), Double.longBitsToDouble(buffer.getLong(offset + SUM))));
+        }
+        return entries;
+    }
+
+    /**
+     * 回收一个已关闭分段的全部槽位
+     *
+     * @param segment 分段开始时间
+     * @return 回收的槽位数
+     */
+    public synchronized int release(long segment) {
+        int released = 0;
+        for (Iterator<Map.Entry<Key, Integer>> it = index.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Integer> entry = it.next();
+            if (entry.getKey().segment == segment) {
+                buffer.putLong(offset(entry.getValue()) + SEGMENT, 0L);
+                free.push(entry.getValue());
+                it.remove();
+                released++;
+            }
+        }
+        return released;
+    }
+
+    /**
+     * 将映射内容刷到磁盘
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    public static final class Entry {
+        private final long segment;
+        private final long end;
+        private final long dimension;
+        private final long count;
+        private final double sum;
+
+        Entry(long segment, long end, long dimension, long count, double sum) {
+            this.segment = segment;
+            this.end = end;
+            this.dimension = dimension;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /**
+         * @return 分段开始时间
+         */
+        public long getSegment() {
+            return segment;
+        }
+
+        /**
+         * @return 分段结束时间
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        public long getDimension() {
+            return dimension;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+    }
+
+    private static final class Key {
+        private final long segment;
+        private final long dimension;
+
+        private Key(long segment, long dimension) {
+            this.segment = segment;
+            this.dimension = dimension;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return segment == key.segment && dimension == key.dimension;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(segment * 31 + dimension);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.count;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 一个已关闭的统计分段，[start, end)内各维度的计数与累计值
+ */
+public final class Segment {
+
+    private final String name;
+    private final long start;
+    private final long end;
+    private final Map<Object, Value> values;
+
+    Segment(String name, long start, long end, Map<Object, Value> values) {
+        this.name = name;
+        this.start = start;
+        this.end = end;
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return 维度 -> 统计值
+     */
+    public Map<Object, Value> getValues() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "Segment{" +
+                "name='" + name + '\'' +
+                ", start=" + start +
+                ", end=" + end +
+                ", values=" + values +
+                '}';
+    }
+
+    public static final class Value {
+        private final long count;
+        private final double sum;
+
+        Value(long count, double sum) {
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /**
+         * @return 计数次数
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return 累计值
+         */
+        public double getSum() {
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count + ", sum=" + sum + '}';
+        }
+    }
+}
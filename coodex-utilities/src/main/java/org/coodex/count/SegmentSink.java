@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.count;
+
+/**
+ * 已关闭分段的输出SPI，例如写日志、JDBC批量写入、共享缓存的hash等。
+ * 在{@link AbstractSegmentedCounter}的刷出线程中调用，不阻塞计数。
+ */
+public interface SegmentSink {
+
+    void flush(Segment segment) throws Exception;
+}
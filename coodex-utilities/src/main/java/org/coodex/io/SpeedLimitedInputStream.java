@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.io;
+
+import org.coodex.concurrent.RateLimiter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 限速读取的InputStream，单次读取不超过令牌桶容量，按实际读取的字节数获取令牌
+ */
+public class SpeedLimitedInputStream extends FilterInputStream {
+
+    private final RateLimiter rateLimiter;
+    private final int chunkSize;
+
+    /**
+     * @param in         inputStream
+     * @param speedLimit 每秒字节数，Integer.MAX_VALUE表示不限速
+     */
+    public SpeedLimitedInputStream(InputStream in, int speedLimit) {
+        this(in, speedLimit == Integer.MAX_VALUE ? null : SpeedLimits.bytesPerSecond(speedLimit));
+    }
+
+    /**
+     * @param in          inputStream
+     * @param rateLimiter 字节令牌限流器，为null表示不限速
+     */
+    public SpeedLimitedInputStream(InputStream in, RateLimiter rateLimiter) {
+        super(in);
+        this.rateLimiter = rateLimiter;
+        this.chunkSize = SpeedLimits.chunkSize(rateLimiter);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0 && rateLimiter != null) rateLimiter.acquire(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, Math.min(len, chunkSize));
+        if (read > 0 && rateLimiter != null) rateLimiter.acquire(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(Math.min(n, chunkSize));
+        if (skipped > 0 && rateLimiter != null) rateLimiter.acquire(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
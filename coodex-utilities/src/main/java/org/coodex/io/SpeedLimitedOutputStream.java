@@ -16,53 +16,40 @@
 
 package org.coodex.io;
 
-import org.coodex.util.Clock;
+import org.coodex.concurrent.RateLimiter;
 
 import java.io.IOException;
 import java.io.OutputStream;
 
 /**
  * Created by davidoff shen on 2016-12-15.
+ * <p>
+ * 基于{@link RateLimiter}平滑限速，按令牌桶容量分块写出，不再按秒整段休眠。
  */
 public class SpeedLimitedOutputStream extends OutputStream {
 
     private final OutputStream outputStream;
-    private final int speedLimit;
-    private long lastCountTime = 0;
-    private int wroteBytesFromLastCountTime = 0;
-    public SpeedLimitedOutputStream(OutputStream outputStream, int speedLimit) {
-        this.outputStream = outputStream;
-        this.speedLimit = speedLimit;
-    }
+    private final RateLimiter rateLimiter;
+    private final int chunkSize;
 
-    private void startCount() {
-        lastCountTime = Clock.currentTimeMillis();
-        wroteBytesFromLastCountTime = 0;
+    /**
+     * @param outputStream outputStream
+     * @param speedLimit   每秒字节数，Integer.MAX_VALUE表示不限速
+     */
+    public SpeedLimitedOutputStream(OutputStream outputStream, int speedLimit) {
+        this(outputStream, speedLimit == Integer.MAX_VALUE ? null : SpeedLimits.bytesPerSecond(speedLimit));
     }
 
-    // 检查是否超限
-    private void check(int size) {
-        if (speedLimit == Integer.MAX_VALUE) return;
-        if (lastCountTime == 0) {
-            startCount();
-        }
-        wroteBytesFromLastCountTime += size;
-
-        if (wroteBytesFromLastCountTime >= speedLimit) {
-            long toSleep = 1000L - (Clock.currentTimeMillis() - lastCountTime);
-            if (toSleep > 0) {
-                try {
-                    Clock.sleep(toSleep);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-            startCount();
-        }
-
+    /**
+     * @param outputStream outputStream
+     * @param rateLimiter  字节令牌限流器，可在多个流之间共享以限制总带宽；为null表示不限速
+     */
+    public SpeedLimitedOutputStream(OutputStream outputStream, RateLimiter rateLimiter) {
+        this.outputStream = outputStream;
+        this.rateLimiter = rateLimiter;
+        this.chunkSize = SpeedLimits.chunkSize(rateLimiter);
     }
 
-
     @Override
     public void write(byte[] b) throws IOException {
         write(b, 0, b.length);
@@ -70,12 +57,16 @@ public class SpeedLimitedOutputStream extends OutputStream {
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
+        if (rateLimiter == null) {
+            outputStream.write(b, off, len);
+            return;
+        }
         while (len > 0) {
-            int toWrote = Math.min(speedLimit, len);
-            outputStream.write(b, off, toWrote);
-            check(toWrote);
-            off += toWrote;
-            len -= toWrote;
+            int toWrite = Math.min(chunkSize, len);
+            rateLimiter.acquire(toWrite);
+            outputStream.write(b, off, toWrite);
+            off += toWrite;
+            len -= toWrite;
         }
     }
 
@@ -91,7 +82,7 @@ public class SpeedLimitedOutputStream extends OutputStream {
 
     @Override
     public void write(int b) throws IOException {
+        if (rateLimiter != null) rateLimiter.acquire(1);
         outputStream.write(b);
-        check(1);
     }
 }
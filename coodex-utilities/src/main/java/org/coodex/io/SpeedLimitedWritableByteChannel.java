@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.io;
+
+import org.coodex.concurrent.RateLimiter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 限速的WritableByteChannel
+ * <p>
+ * 阻塞通道按令牌等待后写出；非阻塞通道不等待，只写出当前可用令牌数的字节，无令牌时返回0，
+ * 调用者可通过{@link #getWaitNanos()}安排下次写入，不会阻塞selector线程。
+ * 未写出的字节退还不了令牌，会计入限速。
+ */
+public class SpeedLimitedWritableByteChannel implements WritableByteChannel {
+
+    private final WritableByteChannel channel;
+    private final RateLimiter rateLimiter;
+    private final int chunkSize;
+
+    public SpeedLimitedWritableByteChannel(WritableByteChannel channel, int speedLimit) {
+        this(channel, SpeedLimits.bytesPerSecond(speedLimit));
+    }
+
+    public SpeedLimitedWritableByteChannel(WritableByteChannel channel, RateLimiter rateLimiter) {
+        if (rateLimiter == null) throw new NullPointerException("rateLimiter is null.");
+        this.channel = channel;
+        this.rateLimiter = rateLimiter;
+        this.chunkSize = SpeedLimits.chunkSize(rateLimiter);
+    }
+
+    private boolean isNonBlocking() {
+        return channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking();
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int remaining = src.remaining();
+        if (remaining == 0) return 0;
+        int permits;
+        if (isNonBlocking()) {
+            permits = (int) rateLimiter.tryAcquireUpTo(Math.min(remaining, chunkSize));
+            if (permits == 0) return 0;
+        } else {
+            permits = Math.min(remaining, chunkSize);
+            rateLimiter.acquire(permits);
+        }
+        int limit = src.limit();
+        src.limit(src.position() + permits);
+        try {
+            return channel.write(src);
+        } finally {
+            src.limit(limit);
+        }
+    }
+
+    /**
+     * @return 下一个字节令牌可用前需等待的纳秒数，0表示当前即可写
+     */
+    public long getWaitNanos() {
+        return rateLimiter.getWaitNanos();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
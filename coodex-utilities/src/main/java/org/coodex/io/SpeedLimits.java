@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.io;
+
+import org.coodex.concurrent.RateLimiter;
+
+class SpeedLimits {
+
+    private SpeedLimits() {
+    }
+
+    /**
+     * @param speedLimit 每秒字节数
+     * @return 容量为100ms流量的限流器，使流量平滑
+     */
+    static RateLimiter bytesPerSecond(int speedLimit) {
+        if (speedLimit <= 0) throw new IllegalArgumentException("speedLimit must be positive: " + speedLimit);
+        return RateLimiter.create(speedLimit, Math.max(1, speedLimit / 10));
+    }
+
+    static int chunkSize(RateLimiter rateLimiter) {
+        return rateLimiter == null ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE, rateLimiter.getBurst());
+    }
+}
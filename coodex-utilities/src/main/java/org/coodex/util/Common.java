@@ -16,6 +16,7 @@
 
 package org.coodex.util;
 
+import org.coodex.concurrent.RateLimiter;
 import org.coodex.id.IDGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -301,27 +302,13 @@ public class Common {
                                   int blockSize, boolean flushPerBlock, int bps) throws IOException {
         byte[] buf = new byte[blockSize];
         int cached;
-        long start = Clock.currentTimeMillis();
-        long wrote = 0;
+        RateLimiter rateLimiter = bps == Integer.MAX_VALUE ? null :
+                RateLimiter.create(bps, Math.max(1, bps / 10));
         while ((cached = is.read(buf)) > 0) {
-            // 自上次计时开始，已写入数据超出bps
-            if (wrote >= bps) {
-                long n = wrote / bps;
-                wrote = wrote % bps;
-                long interval = Clock.currentTimeMillis() - start;
-                try {
-                    if (interval < 1000 * n)
-                        Clock.sleep(interval);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-            // 重新开始计时
-            start = Clock.currentTimeMillis();
+            if (rateLimiter != null) rateLimiter.acquire(cached);
             os.write(buf, 0, cached);
             if (flushPerBlock) {
                 os.flush();
-                wrote += cached;
             }
         }
         if (!flushPerBlock)
@@ -135,7 +135,8 @@ public abstract class Profile {
                     }
                 }
             })
-            .maxAge(RELOAD_INTERVAL_SINGLETON.get())
+            // 到期后仍返回当前Profile，后台重新加载
+            .refreshAfter(RELOAD_INTERVAL_SINGLETON.get())
             .build();
     private static final ServiceLoader<ActiveProfilesProvider> ACTIVE_PROFILES_PROVIDER_SERVICE_LOADER =
             new LazyServiceLoader<ActiveProfilesProvider>() {
@@ -143,7 +144,7 @@ public abstract class Profile {
 
     static final SingletonMap<String, Profile> PATH_PROFILE_MAP = SingletonMap.<String, Profile>builder()
             .function(Profile::getByPath)
-            .maxAge(RELOAD_INTERVAL_SINGLETON.get())
+            .refreshAfter(RELOAD_INTERVAL_SINGLETON.get())
             .build();
 
     static {
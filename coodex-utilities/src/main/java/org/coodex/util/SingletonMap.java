@@ -16,25 +16,40 @@
 
 package org.coodex.util;
 
-import org.coodex.concurrent.Debouncer;
 import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.concurrent.TimingWheel;
 import org.slf4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.ToIntBiFunction;
 import java.util.stream.Collectors;
 
 public class SingletonMap<K, V> {
 
     private static final AtomicLong VERSION = new AtomicLong(Long.MIN_VALUE);
-    private static final Singleton<ScheduledExecutorService> DEFAULT_SCHEDULED_EXECUTOR_SERVICE
-            = Singleton.with(() -> ExecutorsHelper.newSingleThreadScheduledExecutor("singletonMap-DEFAULT"));
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(SingletonMap.class);
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Value> REFRESHING =
+            AtomicIntegerFieldUpdater.newUpdater(Value.class, "refreshing");
+    private static final Singleton<ExecutorService> DEFAULT_EXECUTOR = Singleton.with(
+            () -> ExecutorsHelper.newFixedThreadPool(
+                    Common.toInt(System.getProperty("singletonMap.executors.size"),
+                            Math.max(4, Runtime.getRuntime().availableProcessors() * 2)),
+                    "singletonMap-loader")
+    );
     private final Map<K, Value<K, V>> map;
     private final Function<K, V> function;
     private final K nullKey;
@@ -42,21 +57,36 @@ public class SingletonMap<K, V> {
     private final BiConsumer<K, V> deathListener;
     private final boolean activeOnGet;
     private final ScheduledExecutorService scheduledExecutorService;
-    private long version = VERSION.get();
-
-    private SingletonMap(Function<K, V> function,
-                         K nullKey, boolean activeOnGet,
-                         long maxAge,
-                         BiConsumer<K, V> deathListener,
-                         Supplier<Map<K, Value<K, V>>> mapSupplier,
-                         ScheduledExecutorService scheduledExecutorService) {
-        this.function = function;
-        this.nullKey = nullKey;
-        this.maxAge = Math.max(0, maxAge);
-        this.map = mapSupplier == null ? new ConcurrentHashMap<>() : mapSupplier.get();
-        this.deathListener = deathListener;
-        this.activeOnGet = activeOnGet;
-        this.scheduledExecutorService = scheduledExecutorService;
+    private final ConcurrentHashMap<K, Loading<K, V>> loading = new ConcurrentHashMap<>();
+    /**
+     * 正在等待其他线程构建的线程及其等待的构建，用于检测跨key、跨SingletonMap的循环等待
+     */
+    private static final ConcurrentHashMap<Thread, Loading<?, ?>> WAITING = new ConcurrentHashMap<>();
+    private final TinyLfuPolicy<K, Value<K, V>> policy;
+    private final ToIntBiFunction<K, V> weigher;
+    private final StatsCounter stats = new StatsCounter();
+    private final long refreshAfter;
+    private final Executor executor;
+    private volatile long version = VERSION.get();
+
+    private SingletonMap(SingletonMapBuilder<K, V> builder) {
+        this.function = builder.function;
+        this.nullKey = builder.nullKey;
+        this.maxAge = Math.max(0, builder.maxAge);
+        this.map = builder.mapSupplier == null ? new ConcurrentHashMap<>() : builder.mapSupplier.get();
+        this.deathListener = builder.deathListener;
+        this.activeOnGet = builder.activeOnGet;
+        this.scheduledExecutorService = builder.scheduledExecutorService;
+        this.refreshAfter = TimeUnit.MILLISECONDS.toNanos(Math.max(0, builder.refreshAfter));
+        this.executor = builder.executor;
+        if (builder.maximumWeight >= 0) {
+            this.weigher = builder.weigher;
+            this.policy = new TinyLfuPolicy<>(builder.maximumWeight,
+                    builder.weigher == null ? builder.maximumWeight : Math.min(builder.maximumWeight, 1 << 16));
+        } else {
+            this.weigher = null;
+            this.policy = null;
+        }
     }
 
     /**
@@ -70,10 +100,6 @@ public class SingletonMap<K, V> {
         return new SingletonMapBuilder<>();
     }
 
-    private ScheduledExecutorService getScheduledExecutorService() {
-        return scheduledExecutorService == null ? DEFAULT_SCHEDULED_EXECUTOR_SERVICE.get() : scheduledExecutorService;
-    }
-
     public boolean containsKey(Object key) {
         return map.containsKey(key == null ? nullKey : key);
     }
@@ -125,49 +151,249 @@ public class SingletonMap<K, V> {
 
     public V get(final K key, Function<K, V> function, long maxAge, BiConsumer<K, V> deathListener) {
         if (function == null) throw new NullPointerException("function is null.");
-        if (version != VERSION.get()) {
-            synchronized (map) {
-                if (version != VERSION.get()) {
+        long currentVersion = VERSION.get();
+        if (version != currentVersion) {
+            synchronized (this) {
+                if (version != currentVersion) {
                     clear();
-                    version = VERSION.get();
+                    version = currentVersion;
                 }
             }
         }
         final K finalKey = key == null ? nullKey : key;
-        if (!map.containsKey(finalKey)) {
-            synchronized (map) {
-                if (!map.containsKey(finalKey)) {
-                    V o = function.apply(finalKey);
-                    Value<K, V> value = new Value<>();
-                    value.value = o;
-                    if (maxAge > 0) {
-                        value.debouncer = new Debouncer<>(k -> {
-                            Value<K, V> v = map.remove(k);
-                            if (v != null) {
-                                log.debug("{} die.", k);
-                                BiConsumer<K, V> listener = deathListener == null ? this.deathListener : deathListener;
-                                if (listener != null) {
-                                    try {
-                                        listener.accept(k, v.value);
-                                    } catch (Throwable th) {
-                                        log.warn("listener process failed: {}", listener, th);
-                                    }
-                                }
-                            }
-
-                        }, maxAge, getScheduledExecutorService());
-                        value.debouncer.call(finalKey);
+        Value<K, V> value = map.get(finalKey);
+        if (value == null || value.version != currentVersion) {
+            stats.misses.increment();
+            value = load(finalKey, function, maxAge, deathListener);
+        } else {
+            stats.hits.increment();
+            if (activeOnGet && value.timeout != null) {
+                // 只记录时间，到期时再检查
+                value.lastActive = System.nanoTime();
+            }
+            if (value.node != null) policy.recordAccess(value.node);
+            if (refreshAfter > 0 && System.nanoTime() - value.loadedAt > refreshAfter) {
+                refresh(finalKey, value);
+            }
+        }
+        return value.value;
+    }
+
+    /**
+     * 同一key的并发构建只执行一次，其他线程等待其结果；不同key并行构建
+     */
+    private Value<K, V> load(K key, Function<K, V> function, long maxAge, BiConsumer<K, V> deathListener) {
+        Loading<K, V> loading = new Loading<>();
+        Loading<K, V> existing = this.loading.putIfAbsent(key, loading);
+        if (existing != null) {
+            if (existing.owner == Thread.currentThread())
+                throw new IllegalStateException("recursive load: " + key);
+            return await(key, existing);
+        }
+        try {
+            long loadVersion = VERSION.get();
+            Value<K, V> value = map.get(key);
+            if (value == null || value.version != loadVersion) {
+                // 构建前记录版本，构建期间resetAll时此值在下次get时重建
+                Value<K, V> stale = value;
+                value = create(key, function, maxAge,
+                        deathListener == null ? this.deathListener : deathListener, loadVersion);
+                map.put(key, value);
+                install(key, value, stale);
+            }
+            loading.complete(value);
+            return value;
+        } catch (Throwable th) {
+            loading.completeExceptionally(th);
+            throw th;
+        } finally {
+            this.loading.remove(key, loading);
+        }
+    }
+
+    /**
+     * 等待其他线程的构建。构建者直接或间接地在等待当前线程的构建时，等待永远不会结束，此时视同递归构建抛出异常
+     */
+    private static <K, V> Value<K, V> await(K key, Loading<K, V> existing) {
+        Thread current = Thread.currentThread();
+        WAITING.put(current, existing);
+        try {
+            Thread owner = existing.owner;
+            for (int i = 0; owner != null && i <= WAITING.size(); i++) {
+                if (owner == current) throw new IllegalStateException("circular load: " + key);
+                Loading<?, ?> next = WAITING.get(owner);
+                owner = next == null ? null : next.owner;
+            }
+            return existing.await();
+        } finally {
+            WAITING.remove(current);
+        }
+    }
+
+    private Value<K, V> create(K key, Function<K, V> function, long maxAge, BiConsumer<K, V> deathListener, long version) {
+        Value<K, V> value = new Value<>();
+        value.version = version;
+        value.loader = function;
+        value.deathListener = deathListener;
+        long start = System.nanoTime();
+        try {
+            value.value = function.apply(key);
+        } catch (Throwable th) {
+            stats.loadFailures.increment();
+            stats.totalLoadTime.add(System.nanoTime() - start);
+            throw th;
+        }
+        value.loadedAt = System.nanoTime();
+        stats.loadSuccesses.increment();
+        stats.totalLoadTime.add(value.loadedAt - start);
+        value.maxAgeMillis = maxAge;
+        if (policy != null) {
+            value.node = new TinyLfuPolicy.Node<>(key, value,
+                    weigher == null ? 1 : weigher.applyAsInt(key, value.value));
+        }
+        return value;
+    }
+
+    /**
+     * 已放入map的新值开始计时、计入容量，并释放被替换的旧值
+     */
+    private void install(K key, Value<K, V> value, Value<K, V> stale) {
+        if (value.maxAgeMillis > 0) {
+            value.maxAge = TimeUnit.MILLISECONDS.toNanos(value.maxAgeMillis);
+            value.lastActive = System.nanoTime();
+            schedule(key, value, value.maxAgeMillis);
+        }
+        discard(stale);
+        if (policy != null) {
+            for (TinyLfuPolicy.Node<K, Value<K, V>> node : policy.add(value.node)) {
+                evict(node);
+            }
+        }
+    }
+
+    /**
+     * 后台重新构建，完成前继续提供旧值
+     */
+    private void refresh(K key, Value<K, V> value) {
+        if (!REFRESHING.compareAndSet(value, 0, 1)) return;
+        try {
+            getExecutor().execute(() -> {
+                try {
+                    Value<K, V> fresh = create(key, value.loader, value.maxAgeMillis, value.deathListener, value.version);
+                    if (map.replace(key, value, fresh)) {
+                        install(key, fresh, value);
                     }
-                    map.put(finalKey, value);
+                } catch (Throwable th) {
+                    log.warn("refresh {} failed.", key, th);
+                } finally {
+                    value.refreshing = 0;
                 }
-            }
+            });
+        } catch (RuntimeException e) {
+            value.refreshing = 0;
+            log.warn("refresh {} rejected.", key, e);
         }
+    }
+
+    private Executor getExecutor() {
+        return executor == null ? DEFAULT_EXECUTOR.get() : executor;
+    }
+
+    public CompletableFuture<V> getAsync(final K key) {
+        return getAsync(key, Objects.requireNonNull(function, "function is null"));
+    }
+
+    /**
+     * 已有值时直接返回，同一key正在构建时共享其结果，否则在executor中构建
+     *
+     * @param key      key
+     * @param function 构建方法
+     * @return 值的future
+     */
+    public CompletableFuture<V> getAsync(final K key, Function<K, V> function) {
+        if (function == null) throw new NullPointerException("function is null.");
+        final K finalKey = key == null ? nullKey : key;
         Value<K, V> value = map.get(finalKey);
-        if (activeOnGet && value.debouncer != null) {
-            value.debouncer.call(finalKey);
-            log.debug("{} active.", finalKey);
+        if (value != null && value.version == VERSION.get()) {
+            return CompletableFuture.completedFuture(get(key, function));
+        }
+        Loading<K, V> existing = loading.get(finalKey);
+        if (existing != null) {
+            return existing.thenApply(v -> v.value);
+        }
+        return CompletableFuture.supplyAsync(() -> get(key, function), getExecutor());
+    }
+
+    private void schedule(K key, Value<K, V> value, long delay) {
+        value.timeout = TimingWheel.getDefault().schedule(() -> {
+            long idle = System.nanoTime() - value.lastActive;
+            if (activeOnGet && idle < value.maxAge) {
+                schedule(key, value, TimeUnit.NANOSECONDS.toMillis(value.maxAge - idle) + 1);
+                return;
+            }
+            if (scheduledExecutorService == null) {
+                die(key, value);
+            } else {
+                scheduledExecutorService.execute(() -> die(key, value));
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void die(K key, Value<K, V> value) {
+        if (map.remove(key, value)) {
+            log.debug("{} die.", key);
+            if (policy != null) policy.remove(value.node);
+            notifyDeath(key, value);
+        }
+    }
+
+    private void evict(TinyLfuPolicy.Node<K, Value<K, V>> node) {
+        Value<K, V> value = node.entry;
+        if (map.remove(node.key, value)) {
+            log.debug("{} evicted.", node.key);
+            cancel(value);
+            stats.evictions.increment();
+            stats.evictionWeight.add(node.weight);
+            notifyDeath(node.key, value);
         }
-        return value.value;
+    }
+
+    private void notifyDeath(K key, Value<K, V> value) {
+        BiConsumer<K, V> listener = value.deathListener;
+        if (listener != null) {
+            try {
+                listener.accept(key, value.value);
+            } catch (Throwable th) {
+                log.warn("listener process failed: {}", listener, th);
+            }
+        }
+    }
+
+    /**
+     * 从map中移除后释放定时任务和容量
+     */
+    private void discard(Value<K, V> value) {
+        if (value == null) return;
+        cancel(value);
+        if (policy != null) policy.remove(value.node);
+    }
+
+    private static <K, V> void cancel(Value<K, V> value) {
+        if (value != null && value.timeout != null) value.timeout.cancel();
+    }
+
+    /**
+     * @return 命中、构建、淘汰统计的快照
+     */
+    public Stats getStats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * @return 设置了容量上限时为当前条目的总权重，否则为条目数
+     */
+    public long weight() {
+        return policy == null ? map.size() : policy.getWeight();
     }
 
     public Set<K> keySet() {
@@ -205,16 +431,9 @@ public class SingletonMap<K, V> {
     }
 
     public V remove(K key) {
-        final K finalKey = key == null ? nullKey : key;
-        if (map.containsKey(finalKey)) {
-            synchronized (map) {
-                if (map.containsKey(finalKey)) {
-                    Value<K, V> value = map.remove(finalKey);
-                    return value == null ? null : value.value;
-                }
-            }
-        }
-        return null;
+        Value<K, V> value = map.remove(key == null ? nullKey : key);
+        discard(value);
+        return value == null ? null : value.value;
     }
 
     public Collection<V> values() {
@@ -222,9 +441,10 @@ public class SingletonMap<K, V> {
     }
 
     public void clear() {
-        synchronized (map) {
-            if (map.size() > 0)
-                map.clear();
+        for (Iterator<Value<K, V>> iterator = map.values().iterator(); iterator.hasNext(); ) {
+            Value<K, V> value = iterator.next();
+            iterator.remove();
+            discard(value);
         }
     }
 
@@ -260,8 +480,126 @@ public class SingletonMap<K, V> {
 //    }
 //        }
 
+    private static class StatsCounter {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder loadSuccesses = new LongAdder();
+        private final LongAdder loadFailures = new LongAdder();
+        private final LongAdder totalLoadTime = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder evictionWeight = new LongAdder();
+
+        Stats snapshot() {
+            return new Stats(hits.sum(), misses.sum(), loadSuccesses.sum(), loadFailures.sum(),
+                    totalLoadTime.sum(), evictions.sum(), evictionWeight.sum());
+        }
+    }
+
+    public static class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long loadSuccessCount;
+        private final long loadFailureCount;
+        private final long totalLoadTime;
+        private final long evictionCount;
+        private final long evictionWeight;
+
+        Stats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+              long totalLoadTime, long evictionCount, long evictionWeight) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.loadSuccessCount = loadSuccessCount;
+            this.loadFailureCount = loadFailureCount;
+            this.totalLoadTime = totalLoadTime;
+            this.evictionCount = evictionCount;
+            this.evictionWeight = evictionWeight;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 1.0 : (double) hitCount / requests;
+        }
+
+        public long getLoadSuccessCount() {
+            return loadSuccessCount;
+        }
+
+        public long getLoadFailureCount() {
+            return loadFailureCount;
+        }
+
+        /**
+         * @return 构建耗时合计，单位纳秒
+         */
+        public long getTotalLoadTime() {
+            return totalLoadTime;
+        }
+
+        /**
+         * @return 平均构建耗时，单位纳秒
+         */
+        public double getAverageLoadPenalty() {
+            long loads = loadSuccessCount + loadFailureCount;
+            return loads == 0 ? 0.0 : (double) totalLoadTime / loads;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getEvictionWeight() {
+            return evictionWeight;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "hitCount=" + hitCount +
+                    ", missCount=" + missCount +
+                    ", loadSuccessCount=" + loadSuccessCount +
+                    ", loadFailureCount=" + loadFailureCount +
+                    ", totalLoadTime=" + totalLoadTime +
+                    ", evictionCount=" + evictionCount +
+                    ", evictionWeight=" + evictionWeight +
+                    '}';
+        }
+    }
+
+    private static class Loading<K, V> extends CompletableFuture<Value<K, V>> {
+        private final Thread owner = Thread.currentThread();
+
+        Value<K, V> await() {
+            try {
+                return join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw e;
+            }
+        }
+    }
+
     public static class Value<K, V> {
-        private Debouncer<K> debouncer;
+        private long version;
+        private Function<K, V> loader;
+        private long loadedAt;
+        private long maxAgeMillis;
+        // 供AtomicIntegerFieldUpdater访问，不能为private
+        volatile int refreshing;
+        private TinyLfuPolicy.Node<K, Value<K, V>> node;
+        private TimingWheel.Timeout timeout;
+        private volatile long lastActive;
+        private long maxAge;
+        private BiConsumer<K, V> deathListener;
         private V value;
     }
 
@@ -273,10 +611,51 @@ public class SingletonMap<K, V> {
         private BiConsumer<K, V> deathListener;
         private Supplier<Map<K, Value<K, V>>> mapSupplier;
         private ScheduledExecutorService scheduledExecutorService;
+        private long maximumWeight = -1;
+        private ToIntBiFunction<K, V> weigher;
+        private long refreshAfter;
+        private Executor executor;
 
         SingletonMapBuilder() {
         }
 
+        /**
+         * @param refreshAfter 构建后超过此时长(毫秒)的值在下次get时于后台重新构建，构建完成前继续返回旧值
+         */
+        public SingletonMapBuilder<K, V> refreshAfter(long refreshAfter) {
+            this.refreshAfter = refreshAfter;
+            return this;
+        }
+
+        /**
+         * @param executor 执行后台刷新和{@link SingletonMap#getAsync(Object)}的线程池，默认共享的singletonMap-loader
+         */
+        public SingletonMapBuilder<K, V> executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param maximumSize 最大条目数，超出时按W-TinyLFU淘汰，淘汰时触发deathListener
+         */
+        public SingletonMapBuilder<K, V> maximumSize(long maximumSize) {
+            if (maximumSize < 0) throw new IllegalArgumentException("maximumSize must not be negative.");
+            this.maximumWeight = maximumSize;
+            this.weigher = null;
+            return this;
+        }
+
+        /**
+         * @param maximumWeight 最大总权重，超出时按W-TinyLFU淘汰，淘汰时触发deathListener
+         * @param weigher       条目权重，构建时计算一次
+         */
+        public SingletonMapBuilder<K, V> maximumWeight(long maximumWeight, ToIntBiFunction<K, V> weigher) {
+            if (maximumWeight < 0) throw new IllegalArgumentException("maximumWeight must not be negative.");
+            this.maximumWeight = maximumWeight;
+            this.weigher = Objects.requireNonNull(weigher, "weigher is null.");
+            return this;
+        }
+
         public SingletonMapBuilder<K, V> function(Function<K, V> function) {
             this.function = function;
             return this;
@@ -307,13 +686,17 @@ public class SingletonMap<K, V> {
             return this;
         }
 
+        /**
+         * @param scheduledExecutorService 执行死亡通知的线程池，到期时刻由共享的{@link TimingWheel}判定；
+         *                                 为null时在时间轮的dispatcher中执行
+         */
         public SingletonMapBuilder<K, V> scheduledExecutorService(ScheduledExecutorService scheduledExecutorService) {
             this.scheduledExecutorService = scheduledExecutorService;
             return this;
         }
 
         public SingletonMap<K, V> build() {
-            return new SingletonMap<>(function, nullKey, activeOnGet, maxAge, deathListener, mapSupplier, scheduledExecutorService);
+            return new SingletonMap<>(this);
         }
 
     }
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * W-TinyLFU容量淘汰策略
+ * <p>
+ * 新条目先进入约占1%容量的LRU窗口，挤出窗口的条目与主区(SLRU，probation 20%、protected 80%)的LRU端比较
+ * {@link FrequencySketch}估算的访问频率，频率更高者留下。
+ * <p>
+ * 读操作只写入有损的环形缓冲，由获得锁的线程批量应用，读多时不争用锁。
+ *
+ * @param <K> key
+ * @param <E> 条目
+ */
+class TinyLfuPolicy<K, E> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int REMOVED = 3;
+
+    private static final int BUFFER_SIZE = 256;
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+    private static final int DRAIN_THRESHOLD = BUFFER_SIZE / 4;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final Queue<K, E> window = new Queue<>();
+    private final Queue<K, E> probation = new Queue<>();
+    private final Queue<K, E> protectedQueue = new Queue<>();
+
+    private final AtomicReferenceArray<Node<K, E>> readBuffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+    private final AtomicLong readWrites = new AtomicLong();
+    private volatile long readReads = 0;
+
+    TinyLfuPolicy(long maximum, long expectedEntries) {
+        this.maximum = maximum;
+        this.windowMaximum = Math.max(1, maximum / 100);
+        this.protectedMaximum = (maximum - windowMaximum) * 8 / 10;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    long getWeight() {
+        lock.lock();
+        try {
+            return window.weight + probation.weight + protectedQueue.weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录一次读，缓冲满时丢弃
+     */
+    void recordAccess(Node<K, E> node) {
+        long writes = readWrites.get();
+        long pending = writes - readReads;
+        if (pending < BUFFER_SIZE && readWrites.compareAndSet(writes, writes + 1)) {
+            readBuffer.lazySet((int) (writes & BUFFER_MASK), node);
+            pending++;
+        }
+        if (pending >= DRAIN_THRESHOLD && lock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @param node 新条目
+     * @return 被淘汰的条目
+     */
+    List<Node<K, E>> add(Node<K, E> node) {
+        lock.lock();
+        try {
+            drainReads();
+            sketch.increment(node.key);
+            window.addLast(node, WINDOW);
+            return evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void remove(Node<K, E> node) {
+        if (node == null) return;
+        lock.lock();
+        try {
+            unlink(node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void unlink(Node<K, E> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            case PROTECTED:
+                protectedQueue.remove(node);
+                break;
+            default:
+                return;
+        }
+        node.queue = REMOVED;
+    }
+
+    private void drainReads() {
+        long reads = readReads;
+        long writes = readWrites.get();
+        while (reads < writes) {
+            int index = (int) (reads & BUFFER_MASK);
+            Node<K, E> node = readBuffer.get(index);
+            // 写入方已占位但尚未写入
+            if (node == null) break;
+            readBuffer.lazySet(index, null);
+            reads++;
+            onAccess(node);
+        }
+        readReads = reads;
+    }
+
+    private void onAccess(Node<K, E> node) {
+        switch (node.queue) {
+            case WINDOW:
+                sketch.increment(node.key);
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                sketch.increment(node.key);
+                probation.remove(node);
+                protectedQueue.addLast(node, PROTECTED);
+                // protected超出时降级到probation
+                while (protectedQueue.weight > protectedMaximum && protectedQueue.head != protectedQueue.tail) {
+                    Node<K, E> demoted = protectedQueue.head;
+                    protectedQueue.remove(demoted);
+                    probation.addLast(demoted, PROBATION);
+                }
+                break;
+            case PROTECTED:
+                sketch.increment(node.key);
+                protectedQueue.moveToLast(node);
+                break;
+            default:
+        }
+    }
+
+    private List<Node<K, E>> evict() {
+        List<Node<K, E>> evicted = null;
+        while (window.weight > windowMaximum && window.head != null) {
+            Node<K, E> candidate = window.head;
+            window.remove(candidate);
+            probation.addLast(candidate, PROBATION);
+            if (window.weight + probation.weight + protectedQueue.weight <= maximum) continue;
+
+            // 主区已满，候选者与主区LRU端比较频率
+            Node<K, E> victim = probation.head != candidate ? probation.head : protectedQueue.head;
+            boolean admitted = victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key);
+            evicted = evicted(evicted, admitted ? victim : candidate);
+            // 仍超出时继续淘汰主区LRU端，跳过已准入的候选者
+            while (window.weight + probation.weight + protectedQueue.weight > maximum) {
+                Node<K, E> next = probation.head == candidate ? candidate.next : probation.head;
+                if (next == null) next = protectedQueue.head;
+                if (next == null && candidate.queue == PROBATION) next = candidate;
+                if (next == null) break;
+                evicted = evicted(evicted, next);
+            }
+        }
+        // 单个条目超过上限等情况
+        while (window.weight + probation.weight + protectedQueue.weight > maximum && window.head != null) {
+            evicted = evicted(evicted, window.head);
+        }
+        return evicted == null ? Collections.emptyList() : evicted;
+    }
+
+    private List<Node<K, E>> evicted(List<Node<K, E>> evicted, Node<K, E> node) {
+        unlink(node);
+        if (evicted == null) evicted = new ArrayList<>();
+        evicted.add(node);
+        return evicted;
+    }
+
+    static class Node<K, E> {
+        final K key;
+        final E entry;
+        final int weight;
+        // 以下由锁保护
+        private int queue = REMOVED;
+        private Node<K, E> prev;
+        private Node<K, E> next;
+
+        Node(K key, E entry, int weight) {
+            this.key = key;
+            this.entry = entry;
+            this.weight = Math.max(0, weight);
+        }
+    }
+
+    private static class Queue<K, E> {
+        private Node<K, E> head;
+        private Node<K, E> tail;
+        private long weight;
+
+        void addLast(Node<K, E> node, int queue) {
+            node.queue = queue;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void remove(Node<K, E> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToLast(Node<K, E> node) {
+            if (tail == node) return;
+            int queue = node.queue;
+            remove(node);
+            addLast(node, queue);
+        }
+    }
+}
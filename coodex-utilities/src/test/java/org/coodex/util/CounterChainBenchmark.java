@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.count.Countable;
+import org.coodex.count.Counter;
+import org.coodex.count.CounterChain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CounterChain计数吞吐：每次调用投入一个值，2个异步计数器，每次迭代结束等待全部计数完成
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(2)
+public class CounterChainBenchmark {
+
+    private static final Countable VALUE = new Countable() {
+    };
+
+    private final LongAdder counted = new LongAdder();
+    private final LongAdder submitted = new LongAdder();
+    private ExecutorService executorService;
+    private CounterChain<Countable> chain;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CounterChainBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        executorService = ExecutorsHelper.newFixedThreadPool(2, "benchmark-counter");
+        chain = new CounterChain<Countable>() {
+            @Override
+            protected Executor getThreadPool() {
+                return executorService;
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            chain.addCounter(new Counter<Countable>() {
+                @Override
+                public void count(Countable value) {
+                    counted.increment();
+                }
+            });
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void awaitCounted() throws InterruptedException {
+        while (counted.sum() < submitted.sum() * 2) {
+            Thread.sleep(1);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public void count() {
+        submitted.increment();
+        chain.count(VALUE);
+    }
+}
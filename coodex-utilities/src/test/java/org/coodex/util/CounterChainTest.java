@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.coodex.count.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CounterChainTest {
+
+    static class Value implements Countable {
+        final int v;
+
+        Value(int v) {
+            this.v = v;
+        }
+    }
+
+    static class ManualChain extends CounterChain<Value> {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private final BackPressure backPressure;
+
+        ManualChain(BackPressure backPressure) {
+            this.backPressure = backPressure;
+        }
+
+        @Override
+        protected Executor getThreadPool() {
+            return tasks::add;
+        }
+
+        @Override
+        protected int getBufferSize() {
+            return 16;
+        }
+
+        @Override
+        protected int getBatchSize() {
+            return 4;
+        }
+
+        @Override
+        protected BackPressure getBackPressure() {
+            return backPressure;
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    @Sync
+    static class SyncCounter implements Counter<Value> {
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void count(Value value) {
+            threads.add(Thread.currentThread());
+        }
+    }
+
+    static class Batches implements BatchCounter<Value> {
+        final List<List<Value>> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void count(List<Value> values) {
+            batches.add(values);
+        }
+    }
+
+    static class Single implements Counter<Value> {
+        final AtomicInteger sum = new AtomicInteger();
+
+        @Override
+        public void count(Value value) {
+            sum.addAndGet(value.v);
+        }
+    }
+
+    @Test
+    public void batchedInOrder() {
+        ManualChain chain = new ManualChain(BackPressure.DROP);
+        SyncCounter sync = new SyncCounter();
+        Batches batches = new Batches();
+        Single single = new Single();
+        chain.addCounter(sync);
+        chain.addCounter(batches);
+        chain.addCounter(single);
+        for (int i = 1; i <= 10; i++) {
+            chain.count(new Value(i));
+        }
+        Assert.assertEquals(10, sync.threads.size());
+        Assert.assertTrue(sync.threads.stream().allMatch(t -> t == Thread.currentThread()));
+        // 只提交一个消费任务
+        Assert.assertEquals(1, chain.tasks.size());
+        Assert.assertEquals(10, chain.getPending());
+
+        chain.runAll();
+        Assert.assertEquals(55, single.sum.get());
+        Assert.assertEquals(3, batches.batches.size());
+        Assert.assertEquals(4, batches.batches.get(0).size());
+        int expected = 1;
+        for (List<Value> batch : batches.batches) {
+            for (Value value : batch) {
+                Assert.assertEquals(expected++, value.v);
+            }
+        }
+    }
+
+    @Test
+    public void dropWhenFull() {
+        ManualChain chain = new ManualChain(BackPressure.DROP);
+        Single single = new Single();
+        chain.addCounter(single);
+        for (int i = 0; i < 100; i++) {
+            chain.count(new Value(1));
+        }
+        Assert.assertEquals(84, chain.getDropped());
+        chain.runAll();
+        Assert.assertEquals(16, single.sum.get());
+    }
+
+    @Test
+    public void blockDrainsInCaller() {
+        ManualChain chain = new ManualChain(BackPressure.BLOCK);
+        Single single = new Single();
+        chain.addCounter(single);
+        for (int i = 0; i < 100; i++) {
+            chain.count(new Value(1));
+        }
+        Assert.assertEquals(0, chain.getDropped());
+        chain.runAll();
+        Assert.assertEquals(100, single.sum.get());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.concurrent.LatencyHistogram;
+import org.coodex.concurrent.PoolMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutorsHelperTest {
+
+    @Test
+    public void growBeforeQueueing() throws InterruptedException {
+        ExecutorService executorService = ExecutorsHelper.newLinkedThreadPool(1, 4, 1, "growTest");
+        try {
+            CountDownLatch started = new CountDownLatch(4);
+            CountDownLatch release = new CountDownLatch(1);
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            AtomicInteger done = new AtomicInteger(0);
+            for (int i = 0; i < 5; i++) {
+                executorService.execute(() -> {
+                    threads.add(Thread.currentThread().getName());
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    done.incrementAndGet();
+                });
+            }
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(4, threads.size());
+            // 4个线程全忙且队列已满
+            try {
+                executorService.execute(() -> {
+                });
+                Assert.fail("queue is full");
+            } catch (RejectedExecutionException ignored) {
+            }
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (done.get() < 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(5, done.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentSubmit() throws Exception {
+        final int submitters = 8, tasks = 500;
+        ExecutorService executorService = ExecutorsHelper.newPriorityThreadPool(1, 4, Integer.MAX_VALUE, "submitTest");
+        ExecutorService producers = Executors.newFixedThreadPool(submitters);
+        try {
+            CountDownLatch latch = new CountDownLatch(submitters * tasks);
+            Future<?>[] futures = new Future<?>[submitters];
+            for (int i = 0; i < submitters; i++) {
+                futures[i] = producers.submit(() -> {
+                    for (int j = 0; j < tasks; j++) {
+                        executorService.execute(latch::countDown);
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            producers.shutdownNow();
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void virtualThreadExecutor() throws Exception {
+        ExecutorService executorService = ExecutorsHelper.newVirtualThreadExecutor("virtualTest");
+        try {
+            String name = executorService.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(name, name.startsWith("virtualTest-"));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void poolMetrics() throws Exception {
+        ExecutorService executorService = ExecutorsHelper.newLinkedThreadPool(1, 1, 1, "metricsTest");
+        PoolMetrics metrics = PoolMetrics.get("metricsTest");
+        Assert.assertNotNull(metrics);
+        ObjectName objectName = new ObjectName("org.coodex.concurrent:type=ExecutorPool,name=\"metricsTest\"");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Assert.assertTrue(server.isRegistered(objectName));
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            executorService.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            });
+            executorService.execute(() -> {
+                throw new IllegalStateException("test");
+            });
+            try {
+                executorService.execute(() -> {
+                });
+                Assert.fail("queue is full");
+            } catch (RejectedExecutionException ignored) {
+            }
+            Assert.assertEquals(1, metrics.getRejected());
+            Assert.assertEquals(1, metrics.getQueueSize());
+            Assert.assertEquals(1, metrics.getMaximumPoolSize());
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (metrics.getCompleted() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals("ok", executorService.submit(() -> "ok").get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(3L, metrics.getCompleted());
+            Assert.assertEquals(1L, metrics.getFailed());
+            // 耗时抽样记录
+            Assert.assertTrue(metrics.getExecution().getCount() <= 3L);
+            Assert.assertEquals(3L, server.getAttribute(objectName, "Completed"));
+        } finally {
+            executorService.shutdown();
+        }
+        Assert.assertNull(PoolMetrics.get("metricsTest"));
+        Assert.assertFalse(server.isRegistered(objectName));
+    }
+
+    @Test
+    public void latencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(100_000L, histogram.getMax());
+        Assert.assertEquals(50_500d, histogram.getMean(), 0.001d);
+        long p50 = histogram.getPercentile(0.5d);
+        Assert.assertTrue(String.valueOf(p50), p50 >= 50_000L && p50 < 100_000L);
+        Assert.assertEquals(100_000L, histogram.getPercentile(1d));
+    }
+}
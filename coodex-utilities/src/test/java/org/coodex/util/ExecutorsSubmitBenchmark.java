@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.coodex.concurrent.ExecutorsHelper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.*;
+
+/**
+ * ExecutorsHelper线程池的任务提交吞吐
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(4)
+public class ExecutorsSubmitBenchmark {
+
+    private static final int BATCH = 64;
+    private static final Runnable NOOP = () -> {
+    };
+
+    private ExecutorService linked;
+    private ExecutorService priority;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ExecutorsSubmitBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        linked = ExecutorsHelper.newLinkedThreadPool(2, 8, Integer.MAX_VALUE, "benchmark-linked");
+        priority = ExecutorsHelper.newPriorityThreadPool(2, 8, Integer.MAX_VALUE, "benchmark-priority");
+    }
+
+    @TearDown
+    public void tearDown() {
+        linked.shutdownNow();
+        priority.shutdownNow();
+    }
+
+    private static int batch(ExecutorService executorService) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            executorService.execute(latch::countDown);
+        }
+        latch.await();
+        return BATCH;
+    }
+
+    /**
+     * 提交64个任务并等待全部完成
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int linkedExecute() throws InterruptedException {
+        return batch(linked);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int priorityExecute() throws InterruptedException {
+        return batch(priority);
+    }
+
+    @Benchmark
+    public Object linkedSubmitAndGet() throws Exception {
+        return linked.submit(NOOP).get();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.coodex.concurrent.ExpiringMap;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ExpiringMapTest {
+
+    @Test
+    public void timeoutAndRemove() throws InterruptedException {
+        Map<String, String> timedOut = new ConcurrentHashMap<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger callbacks = new AtomicInteger();
+        ExpiringMap<String, String> map = new ExpiringMap<>(100, (k, v) -> {
+            timedOut.put(k, v);
+            latch.countDown();
+        });
+        map.put("answered", "a", callbacks::incrementAndGet);
+        map.put("replaced", "old", callbacks::incrementAndGet);
+        map.put("replaced", "new", 5000, callbacks::incrementAndGet);
+        map.put("lost", "l", 50, callbacks::incrementAndGet);
+        assertEquals("a", map.getAndRemove("answered"));
+        assertNull(map.getAndRemove("answered"));
+        assertEquals("new", map.putIfAbsent("replaced", "other", 0, null));
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        Thread.sleep(150);
+        assertEquals("l", timedOut.get("lost"));
+        assertEquals(1, timedOut.size());
+        assertEquals(1, callbacks.get());
+        assertFalse(map.containsKey("lost"));
+        assertEquals("new", map.get("replaced"));
+        map.clear();
+        assertEquals(0, map.size());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.coodex.concurrent.KeyedDebouncer;
+import org.coodex.concurrent.KeyedThrottler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class KeyedCoalitionTest {
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void debounce() throws InterruptedException {
+        final int keys = 20000;
+        Map<Integer, Integer> delivered = new ConcurrentHashMap<>();
+        AtomicInteger calls = new AtomicInteger(0);
+        KeyedDebouncer<Integer, Integer> debouncer = new KeyedDebouncer<>((key, value) -> {
+            calls.incrementAndGet();
+            delivered.put(key, value);
+        }, 1000);
+        for (int round = 0; round < 5; round++) {
+            for (int key = 0; key < keys; key++) {
+                debouncer.call(key, round);
+            }
+        }
+        await(() -> calls.get() >= keys && debouncer.size() == 0);
+        Assert.assertEquals(keys, calls.get());
+        Assert.assertEquals(0, debouncer.size());
+        for (int key = 0; key < keys; key++) {
+            Assert.assertEquals(Integer.valueOf(4), delivered.get(key));
+        }
+    }
+
+    @Test
+    public void throttle() throws InterruptedException {
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        KeyedThrottler<String, Integer> throttler = new KeyedThrottler<>(
+                (key, value) -> delivered.add(key + value), 300);
+        throttler.call("a", 0);
+        throttler.call("b", 0);
+        // 窗口外首次调用在调用线程中立即回调
+        Assert.assertEquals(2, delivered.size());
+        throttler.call("a", 1);
+        throttler.call("a", 2);
+        Thread.sleep(100);
+        Assert.assertEquals(2, delivered.size());
+        await(() -> delivered.size() >= 3);
+        Assert.assertEquals("a2", delivered.get(2));
+        await(() -> throttler.size() == 0);
+        Assert.assertEquals(3, delivered.size());
+        Assert.assertEquals(0, throttler.size());
+    }
+}
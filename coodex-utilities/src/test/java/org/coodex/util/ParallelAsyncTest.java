@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.concurrent.Parallel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ParallelAsyncTest {
+
+    @Test
+    public void mapAsync() throws Exception {
+        AtomicInteger wrapped = new AtomicInteger(0);
+        AtomicInteger concurrent = new AtomicInteger(0);
+        AtomicInteger maxConcurrent = new AtomicInteger(0);
+        Parallel parallel = Parallel.forkJoin(runnable -> () -> {
+            wrapped.incrementAndGet();
+            runnable.run();
+        });
+        Parallel.CallableBatch<Integer> batch = parallel.mapAsync(IntStream.range(0, 10000).boxed(), i -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                if (i % 1000 == 999) throw new IllegalArgumentException(String.valueOf(i));
+                return i * 2;
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }, 2).get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(10000, wrapped.get());
+        Assert.assertTrue(maxConcurrent.get() <= 2);
+        Assert.assertEquals(10000, batch.getTasks().size());
+        for (int i = 0; i < 10000; i++) {
+            Parallel.CallableTask<Integer> task = batch.getTasks().get(i);
+            Assert.assertTrue(task.isFinished());
+            Assert.assertEquals(Integer.valueOf(i + 1), task.getId());
+            if (i % 1000 == 999) {
+                Assert.assertTrue(task.getThrowable() instanceof IllegalArgumentException);
+            } else {
+                Assert.assertEquals(Integer.valueOf(i * 2), task.getResult());
+            }
+        }
+    }
+
+    @Test
+    public void runAndCallAsync() throws Exception {
+        AtomicInteger count = new AtomicInteger(0);
+        Parallel parallel = new Parallel(ExecutorsHelper.newFixedThreadPool(2, "asyncTest"));
+        Parallel.Batch batch = parallel.runAsync(
+                Arrays.asList(count::incrementAndGet, count::incrementAndGet, count::incrementAndGet))
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(3, count.get());
+        Assert.assertEquals(3, batch.getTasks().size());
+        Assert.assertEquals(Arrays.asList("a", "b"), parallel.<String>callAsync(Arrays.asList(() -> "a", () -> "b"))
+                .get(5, TimeUnit.SECONDS)
+                .getTasks().stream().map(Parallel.CallableTask::getResult).collect(Collectors.toList()));
+        Assert.assertTrue(parallel.runAsync(null).get(5, TimeUnit.SECONDS).getTasks().isEmpty());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void rejected() throws Exception {
+        ExecutorService executorService = ExecutorsHelper.newFixedThreadPool(1, "asyncRejected");
+        executorService.shutdown();
+        new Parallel(executorService).runAsync(Arrays.asList(() -> {
+        }, () -> {
+        })).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void deadline() throws Exception {
+        AtomicInteger interrupted = new AtomicInteger(0);
+        Parallel parallel = new Parallel(ExecutorsHelper.newFixedThreadPool(4, "asyncDeadline"));
+        long start = System.currentTimeMillis();
+        Parallel.CallableBatch<Integer> batch = parallel.mapAsync(Arrays.asList(0, 5000, 0, 5000), sleep -> {
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                throw e;
+            }
+            return sleep;
+        }, Parallel.<Integer>options().parallelism(4).timeout(300, TimeUnit.MILLISECONDS).build())
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(System.currentTimeMillis() - start < 3000);
+        Assert.assertTrue(batch.isTimedOut());
+        for (int i : new int[]{0, 2}) {
+            Assert.assertTrue(batch.getTasks().get(i).isFinished());
+            Assert.assertEquals(Integer.valueOf(0), batch.getTasks().get(i).getResult());
+        }
+        for (int i : new int[]{1, 3}) {
+            Parallel.CallableTask<Integer> task = batch.getTasks().get(i);
+            Assert.assertTrue(task.isTimedOut());
+            Assert.assertFalse(task.isFinished());
+            Assert.assertNull(task.getResult());
+            Assert.assertTrue(task.getThrowable() instanceof TimeoutException);
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        while (interrupted.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, interrupted.get());
+    }
+
+    @Test
+    public void firstN() throws Exception {
+        List<Integer> completed = new CopyOnWriteArrayList<>();
+        Parallel parallel = new Parallel(ExecutorsHelper.newFixedThreadPool(4, "asyncFirstN"));
+        Parallel.CallableBatch<Integer> batch = parallel.mapAsync(Arrays.asList(0, 1, 2, 20), i -> {
+            Thread.sleep(i * 200L);
+            if (i == 0) throw new IllegalStateException("failed");
+            return i;
+        }, Parallel.<Integer>options().parallelism(4).firstN(2)
+                .onComplete(task -> completed.add(task.getId()))
+                .build())
+                .get(3, TimeUnit.SECONDS);
+        Assert.assertEquals(Arrays.asList(1, 2, 3), completed);
+        Assert.assertFalse(batch.isTimedOut());
+        Assert.assertTrue(batch.getTasks().get(0).getThrowable() instanceof IllegalStateException);
+        Assert.assertEquals(Integer.valueOf(2), batch.getTasks().get(2).getResult());
+        Assert.assertTrue(batch.getTasks().get(3).isCancelled());
+    }
+}
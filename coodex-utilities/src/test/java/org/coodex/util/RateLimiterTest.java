@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.coodex.concurrent.RateLimiter;
+import org.coodex.io.SpeedLimitedOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiterTest {
+
+    @Test
+    public void burstThenRefuse() {
+        RateLimiter limiter = RateLimiter.create(1, 5);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+        }
+        Assert.assertFalse(limiter.tryAcquire());
+        Assert.assertEquals(0L, limiter.tryAcquireUpTo(3));
+        Assert.assertTrue(limiter.getWaitNanos() > TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertFalse(limiter.tryAcquire(1, 100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void partialAndTimedAcquire() {
+        RateLimiter limiter = RateLimiter.create(100, 10);
+        Assert.assertEquals(10L, limiter.tryAcquireUpTo(50));
+        long start = System.nanoTime();
+        Assert.assertTrue(limiter.tryAcquire(5, 1, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        Assert.assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void speedLimitedStream() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        try (SpeedLimitedOutputStream os = new SpeedLimitedOutputStream(bytes, 10000)) {
+            // 首个1000字节为桶容量，其余2000字节按速率约200ms
+            os.write(new byte[3000]);
+        }
+        long elapsed = System.nanoTime() - start;
+        Assert.assertEquals(3000, bytes.size());
+        Assert.assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(180));
+        Assert.assertTrue(elapsed < TimeUnit.SECONDS.toNanos(5));
+    }
+}
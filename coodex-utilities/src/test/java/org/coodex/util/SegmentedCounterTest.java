@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.coodex.count.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SegmentedCounterTest {
+
+    static class Value implements Countable {
+        final int v;
+
+        Value(int v) {
+            this.v = v;
+        }
+    }
+
+    static class ModCounter extends AbstractSegmentedCounter<Value> {
+        final AtomicLong time = new AtomicLong(10_000L);
+        final List<Segment> segments = new CopyOnWriteArrayList<>();
+        private final MappedCounterStore store;
+        private final boolean decode;
+
+        ModCounter() {
+            this(null, false);
+        }
+
+        ModCounter(MappedCounterStore store, boolean decode) {
+            this.store = store;
+            this.decode = decode;
+        }
+
+        @Override
+        protected MappedCounterStore getStore() {
+            return store;
+        }
+
+        @Override
+        protected Object decodeDimension(long encoded) {
+            return decode ? (Object) (int) encoded : null;
+        }
+
+        @Override
+        protected Object getDimension(Value value) {
+            return value.v % 3;
+        }
+
+        @Override
+        protected double getValue(Value value) {
+            return value.v;
+        }
+
+        @Override
+        protected long now() {
+            return time.get();
+        }
+
+        @Override
+        protected long getFlushDelay() {
+            return 0;
+        }
+
+        @Override
+        protected Collection<SegmentSink> getSinks() {
+            return Collections.singletonList(segments::add);
+        }
+
+        @Override
+        public Segmentation getSegmentation() {
+            return () -> (time.get() / 1000 + 1) * 1000;
+        }
+
+        void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (segments.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(count, segments.size());
+        }
+    }
+
+    @Test
+    public void rollAndFlush() throws InterruptedException {
+        ModCounter counter = new ModCounter();
+        for (int i = 1; i <= 9; i++) {
+            counter.count(new Value(i));
+        }
+        counter.time.set(11_200L);
+        counter.count(Arrays.asList(new Value(3), new Value(6)));
+        counter.await(1);
+
+        Segment first = counter.segments.get(0);
+        Assert.assertEquals(10_000L, first.getStart());
+        Assert.assertEquals(11_000L, first.getEnd());
+        Assert.assertEquals(3, first.getValues().size());
+        Assert.assertEquals(3L, first.getValues().get(1).getCount());
+        Assert.assertEquals(1 + 4 + 7, first.getValues().get(1).getSum(), 0d);
+        Assert.assertEquals(3 + 6 + 9, first.getValues().get(0).getSum(), 0d);
+
+        counter.time.set(11_500L);
+        counter.slice();
+        counter.await(2);
+        Segment second = counter.segments.get(1);
+        Assert.assertEquals(11_000L, second.getStart());
+        Assert.assertEquals(11_500L, second.getEnd());
+        Assert.assertEquals(1, second.getValues().size());
+        Assert.assertEquals(2L, second.getValues().get(0).getCount());
+    }
+
+    @Test
+    public void recoverFromStore() throws IOException, InterruptedException {
+        File file = File.createTempFile("segmented-counter", ".store");
+        Assert.assertTrue(file.delete());
+        file.deleteOnExit();
+
+        // 第一次运行，写入存储后"崩溃"
+        MappedCounterStore store = new MappedCounterStore(file, 16);
+        ModCounter first = new ModCounter(store, true);
+        for (int i = 1; i <= 9; i++) {
+            first.count(new Value(i));
+        }
+        first.checkpoint();
+        Assert.assertEquals(3, store.size());
+        store.close();
+
+        // 重启后分段未结束，继续累加
+        store = new MappedCounterStore(file, 1024);
+        Assert.assertEquals(16, store.getCapacity());
+        ModCounter second = new ModCounter(store, true);
+        second.time.set(10_500L);
+        second.count(new Value(3));
+        second.time.set(11_200L);
+        second.count(new Value(6));
+        second.await(1);
+        Segment segment = second.segments.get(0);
+        Assert.assertEquals(10_000L, segment.getStart());
+        Assert.assertEquals(11_000L, segment.getEnd());
+        Assert.assertEquals(4L, segment.getValues().get(0).getCount());
+        Assert.assertEquals(3 + 6 + 9 + 3, segment.getValues().get(0).getSum(), 0d);
+        Assert.assertEquals(3L, segment.getValues().get(2).getCount());
+        // 输出后回收槽位
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.size() != 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, store.size());
+        second.checkpoint();
+        store.close();
+
+        // 分段已结束，重启后补充输出，无法还原的维度以编码输出
+        store = new MappedCounterStore(file, 16);
+        ModCounter third = new ModCounter(store, false);
+        third.time.set(20_000L);
+        third.count(new Value(1));
+        third.await(1);
+        segment = third.segments.get(0);
+        Assert.assertEquals(11_000L, segment.getStart());
+        Assert.assertEquals(12_000L, segment.getEnd());
+        Assert.assertEquals(1L, segment.getValues().get(0L).getCount());
+        Assert.assertEquals(6d, segment.getValues().get(0L).getSum(), 0d);
+        store.close();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class SingletonMapBoundTest {
+
+    @Test
+    public void frequentKeysSurviveScan() {
+        Map<Integer, Integer> died = new ConcurrentHashMap<>();
+        SingletonMap<Integer, Integer> map = SingletonMap.<Integer, Integer>builder()
+                .function(key -> key)
+                .maximumSize(100)
+                .deathListener(died::put)
+                .build();
+        for (int round = 0; round < 20; round++) {
+            for (int hot = 0; hot < 50; hot++) {
+                map.get(hot);
+            }
+        }
+        // 一次性扫描大量冷数据
+        for (int cold = 1000; cold < 11000; cold++) {
+            map.get(cold);
+        }
+        assertTrue(map.weight() <= 100);
+        int hotRetained = 0;
+        for (int hot = 0; hot < 50; hot++) {
+            if (map.containsKey(hot)) hotRetained++;
+        }
+        assertTrue("hot keys retained: " + hotRetained, hotRetained >= 45);
+
+        SingletonMap.Stats stats = map.getStats();
+        assertEquals(stats.getEvictionCount(), died.size());
+        assertEquals(10050 - map.keySet().size(), stats.getEvictionCount());
+        assertEquals(10050, stats.getLoadSuccessCount());
+        assertEquals(950, stats.getHitCount());
+        assertEquals(10050, stats.getMissCount());
+    }
+
+    @Test
+    public void weighted() {
+        SingletonMap<String, String> map = SingletonMap.<String, String>builder()
+                .function(key -> key)
+                .maximumWeight(1000, (k, v) -> v.length())
+                .build();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append('x');
+            map.get(builder.toString());
+            assertTrue(map.weight() <= 1000);
+        }
+        assertTrue(map.getStats().getEvictionWeight() > 0);
+        // 超过上限的单个条目不会保留
+        String huge = new String(new char[2000]);
+        assertEquals(huge, map.get(huge));
+        assertFalse(map.containsKey(huge));
+        assertTrue(map.weight() <= 1000);
+    }
+}
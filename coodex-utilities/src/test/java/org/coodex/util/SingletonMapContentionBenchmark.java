@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多线程同时构建不同key、读取已有key时的吞吐，构建过程模拟1毫秒的IO等待
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(8)
+public class SingletonMapContentionBenchmark {
+
+    private static final int HOT_KEYS = 1024;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private SingletonMap<Long, Long> map;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SingletonMapContentionBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        map = SingletonMap.<Long, Long>builder()
+                .function(key -> {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return key;
+                })
+                .build();
+        for (long i = 0; i < HOT_KEYS; i++) {
+            map.get(-i - 1);
+        }
+    }
+
+    /**
+     * 每次都是新key
+     */
+    @Benchmark
+    public Long missDistinctKeys() {
+        return map.get(sequence.incrementAndGet());
+    }
+
+    /**
+     * 读取已构建的key
+     */
+    @Benchmark
+    public Long hit() {
+        return map.get(-ThreadLocalRandom.current().nextLong(HOT_KEYS) - 1);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SingletonMapLoadTest {
+
+    @Test
+    public void perKeyLoading() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch releaseSlow = new CountDownLatch(1);
+        SingletonMap<String, String> map = SingletonMap.<String, String>builder()
+                .function(key -> {
+                    loads.incrementAndGet();
+                    if (key.equals("slow")) {
+                        slowStarted.countDown();
+                        try {
+                            releaseSlow.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return key + "-value";
+                })
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> map.get("slow"));
+            Future<String> second = executor.submit(() -> map.get("slow"));
+            assertTrue(slowStarted.await(2, TimeUnit.SECONDS));
+            // 慢key构建期间其他key不受影响
+            assertEquals("fast-value", executor.submit(() -> map.get("fast")).get(1, TimeUnit.SECONDS));
+            releaseSlow.countDown();
+            assertEquals("slow-value", first.get(1, TimeUnit.SECONDS));
+            assertEquals("slow-value", second.get(1, TimeUnit.SECONDS));
+            assertEquals(2, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void crossKeyCycle() throws Exception {
+        CyclicBarrier bothLoading = new CyclicBarrier(2);
+        AtomicReference<SingletonMap<String, String>> holder = new AtomicReference<>();
+        SingletonMap<String, String> map = SingletonMap.<String, String>builder()
+                .function(key -> {
+                    try {
+                        bothLoading.await(2, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return holder.get().get(key.equals("a") ? "b" : "a");
+                })
+                .build();
+        holder.set(map);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> map.get("a")));
+            futures.add(executor.submit(() -> map.get("b")));
+            // 两个线程互相等待对方的key，应检测出循环而不是永久阻塞
+            for (Future<String> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    fail("circular load not detected.");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+            }
+            assertFalse(map.containsKey("a"));
+            assertFalse(map.containsKey("b"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failureAndReset() {
+        AtomicInteger loads = new AtomicInteger();
+        SingletonMap<String, Integer> map = SingletonMap.<String, Integer>builder()
+                .function(key -> {
+                    if (key.equals("bad")) throw new IllegalArgumentException(key);
+                    return loads.incrementAndGet();
+                })
+                .build();
+        try {
+            map.get("bad");
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        assertFalse(map.containsKey("bad"));
+
+        assertEquals(Integer.valueOf(1), map.get("k"));
+        assertEquals(Integer.valueOf(1), map.get("k"));
+        SingletonMap.resetAll();
+        assertEquals(Integer.valueOf(2), map.get("k"));
+        assertEquals(Integer.valueOf(2), map.remove("k"));
+        assertFalse(map.containsKey("k"));
+    }
+
+    @Test
+    public void refreshAfter() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        SingletonMap<String, Integer> map = SingletonMap.<String, Integer>builder()
+                .function(key -> loads.incrementAndGet())
+                .refreshAfter(50)
+                .build();
+        assertEquals(Integer.valueOf(1), map.get("k"));
+        Thread.sleep(80);
+        // 过期后仍返回旧值，同时在后台刷新
+        assertEquals(Integer.valueOf(1), map.get("k"));
+        long deadline = System.currentTimeMillis() + 2000;
+        int refreshed;
+        while ((refreshed = map.get("k")) == 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        // 慢速环境下读取时可能已再次过期并刷新
+        assertTrue(refreshed >= 2);
+        assertTrue(map.getStats().getLoadSuccessCount() >= 2);
+    }
+
+    @Test
+    public void getAsync() throws Exception {
+        SingletonMap<Integer, Integer> map = SingletonMap.<Integer, Integer>builder()
+                .function(key -> {
+                    if (key < 0) throw new IllegalArgumentException();
+                    return key * 2;
+                })
+                .build();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(map.getAsync(i));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.valueOf(i * 2), futures.get(i).get(2, TimeUnit.SECONDS));
+        }
+        assertTrue(map.getAsync(3).isDone());
+        try {
+            map.getAsync(-1).get(2, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.util;
+
+import org.coodex.concurrent.TimingWheel;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+    @Test
+    public void scheduleCancelReschedule() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel("timingWheel-test", 5, TimeUnit.MILLISECONDS, null);
+        try {
+            CountDownLatch latch = new CountDownLatch(3);
+            long start = System.nanoTime();
+            Map<String, Long> fired = new ConcurrentHashMap<>();
+            wheel.schedule(() -> {
+                fired.put("short", System.nanoTime() - start);
+                latch.countDown();
+            }, 20, TimeUnit.MILLISECONDS);
+            // 跨层：64 * 5ms以上
+            wheel.schedule(() -> {
+                fired.put("long", System.nanoTime() - start);
+                latch.countDown();
+            }, 400, TimeUnit.MILLISECONDS);
+            TimingWheel.Timeout later = wheel.schedule(() -> {
+                fired.put("later", System.nanoTime() - start);
+                latch.countDown();
+            }, 10, TimeUnit.MILLISECONDS);
+            assertTrue(later.reschedule(150, TimeUnit.MILLISECONDS));
+            TimingWheel.Timeout cancelled = wheel.schedule(() -> fired.put("cancelled", 0L), 10, TimeUnit.MILLISECONDS);
+            assertTrue(cancelled.cancel());
+            assertFalse(cancelled.reschedule(10, TimeUnit.MILLISECONDS));
+
+            assertTrue(latch.await(3, TimeUnit.SECONDS));
+            assertFalse(fired.containsKey("cancelled"));
+            assertTrue(fired.get("short") >= TimeUnit.MILLISECONDS.toNanos(20));
+            assertTrue(fired.get("later") >= TimeUnit.MILLISECONDS.toNanos(150));
+            assertTrue(fired.get("long") >= TimeUnit.MILLISECONDS.toNanos(400));
+            assertTrue(later.isExpired());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void manyTimeouts() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel("timingWheel-test", 1, TimeUnit.MILLISECONDS, null);
+        try {
+            int n = 100000;
+            AtomicInteger fired = new AtomicInteger();
+            int cancelled = 0;
+            for (int i = 0; i < n; i++) {
+                TimingWheel.Timeout timeout = wheel.schedule(fired::incrementAndGet, i % 200, TimeUnit.MILLISECONDS);
+                // 短延时的任务可能在取消前已到期
+                if (i % 2 == 1 && timeout.cancel()) cancelled++;
+            }
+            int expected = n - cancelled;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (fired.get() < expected && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+            assertEquals(expected, fired.get());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void singletonMapExpiry() throws InterruptedException {
+        Map<String, String> died = new ConcurrentHashMap<>();
+        SingletonMap<String, String> map = SingletonMap.<String, String>builder()
+                .function(key -> key)
+                .activeOnGet(true)
+                .maxAge(500)
+                .deathListener(died::put)
+                .build();
+        map.get("active");
+        map.get("idle");
+        for (int i = 0; i < 8; i++) {
+            Thread.sleep(100);
+            map.get("active");
+        }
+        assertFalse(map.containsKey("idle"));
+        assertEquals("idle", died.get("idle"));
+        assertTrue(map.containsKey("active"));
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while ((map.containsKey("active") || !died.containsKey("active")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(map.containsKey("active"));
+        assertTrue(died.containsKey("active"));
+    }
+}
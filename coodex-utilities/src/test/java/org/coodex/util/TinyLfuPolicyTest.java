@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.coodex.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TinyLfuPolicyTest {
+
+    @Test
+    public void admitAgainstProtectedWhenProbationEmpty() {
+        // 窗口1，protected上限7
+        TinyLfuPolicy<String, String> policy = new TinyLfuPolicy<>(10, 16);
+        List<TinyLfuPolicy.Node<String, String>> nodes = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            TinyLfuPolicy.Node<String, String> node = new TinyLfuPolicy.Node<>("p" + i, "p" + i, 1);
+            nodes.add(node);
+            assertEquals(Collections.emptyList(), policy.add(node));
+            // 进入probation后访问一次，下次add时晋升到protected
+            if (i > 1 && i < 8) policy.recordAccess(nodes.get(i - 2));
+        }
+        // p7在probation中，访问至缓冲排空后晋升，probation为空
+        for (int i = 0; i < 64; i++) {
+            policy.recordAccess(nodes.get(6));
+        }
+        // 窗口中的p8访问频率高于protected的LRU端p1
+        TinyLfuPolicy.Node<String, String> candidate = nodes.get(7);
+        for (int i = 0; i < 5; i++) {
+            policy.recordAccess(candidate);
+        }
+
+        // p8挤出窗口后是probation中唯一的条目，主区超出上限
+        List<TinyLfuPolicy.Node<String, String>> evicted = policy.add(new TinyLfuPolicy.Node<>("heavy", "heavy", 3));
+        assertEquals(Collections.singletonList(nodes.get(0)), evicted);
+        assertEquals(10, policy.getWeight());
+    }
+}
@@ -16,22 +16,39 @@
 
 package org.coodex.sharedcache.jedis;
 
+import org.coodex.sharedcache.CacheValueCodec;
+import org.coodex.sharedcache.CacheValueCodecManager;
 import org.coodex.sharedcache.SharedCacheClient;
-import org.coodex.util.Common;
+import org.coodex.sharedcache.TimedValue;
+import org.coodex.sharedcache.VersionedValue;
 
-import java.io.*;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by davidoff shen on 2016-11-23.
  */
 public abstract class AbstractJedisClient implements SharedCacheClient {
 
+    /**
+     * 版本key的后缀，版本key与缓存key使用相同的hash tag，保证在集群中位于同一slot
+     */
+    private static final String VERSION_SUFFIX = ":__ver";
+
     private long default_max_cache_time;
+    private final CacheValueCodec codec;
 
 //    protected abstract void closeCommand(JedisAdaptor commands);
 
     public AbstractJedisClient(long default_max_cache_time) {
+        this(default_max_cache_time, CacheValueCodecManager.getCodec(JedisClientFactory.NAMESPACE_JEDIS));
+    }
+
+    public AbstractJedisClient(long default_max_cache_time, CacheValueCodec codec) {
         this.default_max_cache_time = default_max_cache_time;
+        this.codec = codec;
     }
 
     protected abstract JedisAdaptor getCommand();
@@ -40,29 +57,86 @@ public abstract class AbstractJedisClient implements SharedCacheClient {
         if (key == null) throw new NullPointerException("cache key is null.");
     }
 
+    protected byte[] toKey(String key) {
+        return key.getBytes();
+    }
+
+    /**
+     * 缓存key对应的版本key。版本用于{@link #compareAndSet(String, long, Serializable, long)}，
+     * 每次写入删除或递增，缺失时以随机值重建，因此A-B-A的写入不会使旧版本重新有效。
+     *
+     * @param key 缓存key
+     * @return 版本key；key含不成对的花括号、无法与其位于同一slot时返回null，此时不支持版本
+     */
+    protected byte[] toVersionKey(String key) {
+        int open = key.indexOf('{');
+        if (open < 0) {
+            return key.indexOf('}') < 0 ? toKey("{" + key + "}" + VERSION_SUFFIX) : null;
+        }
+        int close = key.indexOf('}', open + 1);
+        return close > open + 1 ? toKey(key + VERSION_SUFFIX) : null;
+    }
+
+    /**
+     * @return 缓存key及其版本key(如有)
+     */
+    private List<byte[]> keysOf(String key) {
+        byte[] versionKey = toVersionKey(key);
+        return versionKey == null ? Collections.singletonList(toKey(key)) : Arrays.asList(toKey(key), versionKey);
+    }
+
+    protected byte[] serialize(Serializable value) {
+        return codec.encode(value);
+    }
+
+    protected <T extends Serializable> T deserialize(byte[] buff) {
+        return codec.decode(buff);
+    }
+
     @Override
     public <T extends Serializable> T get(String key) {
         assertKey(key);
         JedisAdaptor commands = getCommand();
         try {
-            byte[] buff = commands.get(key.getBytes());
-            if (buff == null) return null;
+            return deserialize(commands.get(toKey(key)));
+        } finally {
+            commands.close();
+        }
+    }
 
-            ByteArrayInputStream bis = new ByteArrayInputStream(buff);
-            ObjectInputStream ois;
-            try {
-                ois = new ObjectInputStream(bis);
-                try {
-                    return Common.cast(ois.readObject());
-                } finally {
-                    ois.close();
-                }
-            } catch (Throwable e) {
-                throw new RuntimeException(e);
-            }
+    @Override
+    public long getDefaultMaxCacheTime() {
+        return default_max_cache_time;
+    }
+
+    @Override
+    public long getTimeToLive(String key) {
+        assertKey(key);
+        return getTimeToLive(Collections.singletonList(key)).get(key);
+    }
+
+    @Override
+    public Map<String, Long> getTimeToLive(Collection<String> keys) {
+        Map<String, Long> result = new HashMap<>();
+        if (keys == null || keys.isEmpty()) return result;
+        List<String> keyList = new ArrayList<>(new LinkedHashSet<>(keys));
+        keyList.removeIf(Objects::isNull);
+        if (keyList.isEmpty()) return result;
+        List<byte[]> keyBuffs = new ArrayList<>(keyList.size());
+        for (String key : keyList) {
+            keyBuffs.add(toKey(key));
+        }
+        List<Long> ttls;
+        JedisAdaptor commands = getCommand();
+        try {
+            ttls = commands.pttl(keyBuffs);
         } finally {
             commands.close();
         }
+        for (int i = 0; i < keyList.size(); i++) {
+            result.put(keyList.get(i), ttls.get(i));
+        }
+        return result;
     }
 
     @Override
@@ -78,32 +152,208 @@ public abstract class AbstractJedisClient implements SharedCacheClient {
             return;
         }
 
+        // SET PX并删除版本，一次往返完成
+        eval(LuaScript.PUT, keysOf(key), serialize(value), toArg(max_cached_time));
+    }
+
+    @Override
+    public void remove(String key) {
+        if (key == null) return;
         JedisAdaptor commands = getCommand();
         try {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-                oos.writeObject(value);
-                byte[] keyBuf = key.getBytes();
-                commands.set(keyBuf, bos.toByteArray());
-//                if (max_cached_time > 0) {
-                commands.pexpire(keyBuf, max_cached_time);
-//                }
-            }
-        } catch (Throwable e) {
-            throw new RuntimeException(e);
+            commands.del(keysOf(key));
         } finally {
             commands.close();
         }
     }
 
     @Override
-    public void remove(String key) {
-        if (key == null) return;
+    public <T extends Serializable> Map<String, T> getAll(Collection<String> keys) {
+        Map<String, T> result = new HashMap<>();
+        if (keys == null || keys.isEmpty()) return result;
+        List<String> keyList = new ArrayList<>(new LinkedHashSet<>(keys));
+        keyList.removeIf(Objects::isNull);
+        if (keyList.isEmpty()) return result;
+
+        List<byte[]> keyBuffs = new ArrayList<>(keyList.size());
+        for (String key : keyList) {
+            keyBuffs.add(toKey(key));
+        }
+        List<byte[]> values;
+        JedisAdaptor commands = getCommand();
+        try {
+            values = commands.mget(keyBuffs);
+        } finally {
+            commands.close();
+        }
+        for (int i = 0; i < keyList.size(); i++) {
+            T value = deserialize(values.get(i));
+            if (value != null) result.put(keyList.get(i), value);
+        }
+        return result;
+    }
+
+    @Override
+    public <T extends Serializable> Map<String, TimedValue<T>> getAllWithTimeToLive(Collection<String> keys) {
+        Map<String, TimedValue<T>> result = new HashMap<>();
+        if (keys == null || keys.isEmpty()) return result;
+        List<String> keyList = new ArrayList<>(new LinkedHashSet<>(keys));
+        keyList.removeIf(Objects::isNull);
+        if (keyList.isEmpty()) return result;
+
+        List<byte[]> keyBuffs = new ArrayList<>(keyList.size());
+        for (String key : keyList) {
+            keyBuffs.add(toKey(key));
+        }
+        long[] ttls = new long[keyList.size()];
+        List<byte[]> values;
+        JedisAdaptor commands = getCommand();
+        try {
+            // MGET与PTTL在同一pipeline中，一次往返
+            values = commands.mgetWithPttl(keyBuffs, ttls);
+        } finally {
+            commands.close();
+        }
+        for (int i = 0; i < keyList.size(); i++) {
+            T value = deserialize(values.get(i));
+            if (value != null) result.put(keyList.get(i), new TimedValue<>(value, ttls[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values) {
+        putAll(values, default_max_cache_time);
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values, long max_cached_time) {
+        if (values == null || values.isEmpty()) return;
+        List<byte[]> keys = new ArrayList<>(values.size());
+        List<byte[]> versionKeys = new ArrayList<>(values.size());
+        List<byte[]> buffs = new ArrayList<>(values.size());
+        List<String> toRemove = new ArrayList<>();
+        for (Map.Entry<String, ? extends Serializable> entry : values.entrySet()) {
+            assertKey(entry.getKey());
+            if (entry.getValue() == null || max_cached_time <= 0) {
+                toRemove.add(entry.getKey());
+            } else {
+                keys.add(toKey(entry.getKey()));
+                versionKeys.add(toVersionKey(entry.getKey()));
+                buffs.add(serialize(entry.getValue()));
+            }
+        }
+        if (!keys.isEmpty()) {
+            JedisAdaptor commands = getCommand();
+            try {
+                commands.mset(keys, versionKeys, buffs, max_cached_time);
+            } finally {
+                commands.close();
+            }
+        }
+        removeAll(toRemove);
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) return;
+        List<byte[]> keyBuffs = new ArrayList<>(keys.size());
+        for (String key : new LinkedHashSet<>(keys)) {
+            if (key != null) keyBuffs.addAll(keysOf(key));
+        }
+        if (keyBuffs.isEmpty()) return;
+        JedisAdaptor commands = getCommand();
+        try {
+            commands.del(keyBuffs);
+        } finally {
+            commands.close();
+        }
+    }
+
+    private static byte[] toArg(long l) {
+        return String.valueOf(l).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private Object eval(LuaScript script, String key, byte[]... args) {
+        return eval(script, Collections.singletonList(toKey(key)), args);
+    }
+
+    private Object eval(LuaScript script, List<byte[]> keys, byte[]... args) {
         JedisAdaptor commands = getCommand();
         try {
-            commands.del(key.getBytes());
+            return commands.eval(script, keys, Arrays.asList(args));
         } finally {
             commands.close();
         }
     }
+
+    private byte[] requireVersionKey(String key) {
+        byte[] versionKey = toVersionKey(key);
+        if (versionKey == null) {
+            throw new IllegalArgumentException("key with unbalanced hash tag can not be versioned: " + key);
+        }
+        return versionKey;
+    }
+
+    @Override
+    public boolean supportsAtomic() {
+        return true;
+    }
+
+    /**
+     * 按编码后的字节比较，编码不确定的对象(如含HashMap的对象)可能误判为不相等
+     */
+    @Override
+    public boolean removeIfEquals(String key, Serializable expected) {
+        assertKey(key);
+        if (expected == null) return false;
+        Object result = eval(LuaScript.REMOVE_IF_EQUALS, keysOf(key), serialize(expected));
+        return result instanceof Long && (Long) result == 1L;
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, Serializable value, long max_cached_time) {
+        assertKey(key);
+        if (value == null) throw new NullPointerException("cache value is null.");
+        if (max_cached_time <= 0) return false;
+        Object result = eval(LuaScript.PUT_IF_ABSENT, keysOf(key), serialize(value), toArg(max_cached_time));
+        return result instanceof Long && (Long) result == 1L;
+    }
+
+    @Override
+    public <T extends Serializable> VersionedValue<T> getVersioned(String key) {
+        assertKey(key);
+        // 版本缺失时以随机值重建，过期或删除后重新写入的值不会得到旧版本
+        Object result = eval(LuaScript.GET_VERSIONED, Arrays.asList(toKey(key), requireVersionKey(key)),
+                toArg(ThreadLocalRandom.current().nextLong(1L, 1L << 62)));
+        if (!(result instanceof List)) return null;
+        List<?> list = (List<?>) result;
+        long version = Long.parseLong(new String((byte[]) list.get(1), StandardCharsets.US_ASCII));
+        return new VersionedValue<>(deserialize((byte[]) list.get(0)), version);
+    }
+
+    @Override
+    public boolean compareAndSet(String key, long version, Serializable value, long max_cached_time) {
+        assertKey(key);
+        if (value == null) throw new NullPointerException("cache value is null.");
+        if (max_cached_time <= 0) return false;
+        Object result = eval(LuaScript.COMPARE_AND_SET, Arrays.asList(toKey(key), requireVersionKey(key)),
+                toArg(version), serialize(value), toArg(max_cached_time));
+        return result instanceof Long && (Long) result == 1L;
+    }
+
+    @Override
+    public long increment(String key, long delta, long max_cached_time) {
+        assertKey(key);
+        return (Long) eval(LuaScript.INCREMENT, key, toArg(delta), toArg(max_cached_time));
+    }
+
+    @Override
+    public <T extends Serializable> T getAndTouch(String key, long max_cached_time) {
+        assertKey(key);
+        if (max_cached_time <= 0) {
+            return deserialize((byte[]) eval(LuaScript.GET_AND_DELETE, keysOf(key)));
+        }
+        return deserialize((byte[]) eval(LuaScript.GET_AND_TOUCH, keysOf(key), toArg(max_cached_time)));
+    }
 }
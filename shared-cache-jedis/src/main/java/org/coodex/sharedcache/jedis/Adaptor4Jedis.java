@@ -16,13 +16,25 @@
 
 package org.coodex.sharedcache.jedis;
 
+import redis.clients.jedis.BinaryJedisPubSub;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.params.SetParams;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by davidoff shen on 2016-11-23.
  */
 public class Adaptor4Jedis implements JedisAdaptor {
 
+    private static final byte[][] EMPTY_KEYS = new byte[0][];
+
     private Jedis jedis;
 
     public Adaptor4Jedis(Jedis jedis) {
@@ -44,11 +56,97 @@ public class Adaptor4Jedis implements JedisAdaptor {
         return jedis.set(key, value);
     }
 
+    @Override
+    public String set(byte[] key, byte[] value, long milliseconds) {
+        return jedis.set(key, value, SetParams.setParams().px(milliseconds));
+    }
+
     @Override
     public byte[] get(byte[] key) {
         return jedis.get(key);
     }
 
+    @Override
+    public List<byte[]> mget(List<byte[]> keys) {
+        return jedis.mget(keys.toArray(EMPTY_KEYS));
+    }
+
+    @Override
+    public List<byte[]> mgetWithPttl(List<byte[]> keys, long[] ttls) {
+        Pipeline pipeline = jedis.pipelined();
+        Response<List<byte[]>> values = pipeline.mget(keys.toArray(EMPTY_KEYS));
+        List<Response<Long>> responses = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            responses.add(pipeline.pttl(key));
+        }
+        pipeline.sync();
+        for (int i = 0; i < ttls.length; i++) {
+            ttls[i] = responses.get(i).get();
+        }
+        return values.get();
+    }
+
+    @Override
+    public void mset(List<byte[]> keys, List<byte[]> versionKeys, List<byte[]> values, long milliseconds) {
+        Pipeline pipeline = jedis.pipelined();
+        SetParams params = SetParams.setParams().px(milliseconds);
+        byte[] ms = String.valueOf(milliseconds).getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0, size = keys.size(); i < size; i++) {
+            byte[] versionKey = versionKeys.get(i);
+            if (versionKey == null) {
+                pipeline.set(keys.get(i), values.get(i), params);
+            } else {
+                pipeline.eval(LuaScript.PUT.getScript(), Arrays.asList(keys.get(i), versionKey),
+                        Arrays.asList(values.get(i), ms));
+            }
+        }
+        pipeline.sync();
+    }
+
+    @Override
+    public List<Long> pttl(List<byte[]> keys) {
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<Long>> responses = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            responses.add(pipeline.pttl(key));
+        }
+        pipeline.sync();
+        List<Long> result = new ArrayList<>(keys.size());
+        for (Response<Long> response : responses) {
+            result.add(response.get());
+        }
+        return result;
+    }
+
+    @Override
+    public void del(List<byte[]> keys) {
+        jedis.del(keys.toArray(EMPTY_KEYS));
+    }
+
+
+    @Override
+    public boolean setIfAbsent(byte[] key, byte[] value, long milliseconds) {
+        return "OK".equals(jedis.set(key, value, SetParams.setParams().nx().px(milliseconds)));
+    }
+
+    @Override
+    public Object eval(LuaScript script, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return jedis.evalsha(script.getSha1(), keys, args);
+        } catch (JedisNoScriptException e) {
+            return jedis.eval(script.getScript(), keys, args);
+        }
+    }
+
+    @Override
+    public void publish(byte[] channel, byte[] message) {
+        jedis.publish(channel, message);
+    }
+
+    @Override
+    public void subscribe(BinaryJedisPubSub pubSub, byte[] channel) {
+        jedis.subscribe(pubSub, channel);
+    }
 
     @Override
     public void close() {
@@ -16,7 +16,19 @@
 
 package org.coodex.sharedcache.jedis;
 
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 /**
  * Created by davidoff shen on 2016-11-23.
@@ -29,6 +41,22 @@ public class Adaptor4JedisCluster implements JedisAdaptor {
         this.jedis = jedis;
     }
 
+    private static Map<Integer, List<Integer>> groupBySlot(List<byte[]> keys) {
+        Map<Integer, List<Integer>> slots = new LinkedHashMap<>();
+        for (int i = 0, size = keys.size(); i < size; i++) {
+            slots.computeIfAbsent(JedisClusterCRC16.getSlot(keys.get(i)), slot -> new ArrayList<>()).add(i);
+        }
+        return slots;
+    }
+
+    private static byte[][] pick(List<byte[]> list, List<Integer> indexes) {
+        byte[][] picked = new byte[indexes.size()][];
+        for (int i = 0; i < picked.length; i++) {
+            picked[i] = list.get(indexes.get(i));
+        }
+        return picked;
+    }
+
 
     @Override
     public Long del(byte[] key) {
@@ -45,13 +73,254 @@ public class Adaptor4JedisCluster implements JedisAdaptor {
         return jedis.set(key, value);
     }
 
+    @Override
+    public String set(byte[] key, byte[] value, long milliseconds) {
+        return jedis.set(key, value, SetParams.setParams().px(milliseconds));
+    }
+
     @Override
     public byte[] get(byte[] key) {
         return jedis.get(key);
     }
 
+    @Override
+    public List<byte[]> mget(List<byte[]> keys) {
+        byte[][] result = new byte[keys.size()][];
+        execute(keys, new SlotTask() {
+            @Override
+            public Runnable pipelined(Pipeline pipeline, List<Integer> indexes) {
+                Response<List<byte[]>> response = pipeline.mget(pick(keys, indexes));
+                return () -> fill(indexes, response.get());
+            }
+
+            @Override
+            public void direct(List<Integer> indexes) {
+                fill(indexes, jedis.mget(pick(keys, indexes)));
+            }
+
+            private void fill(List<Integer> indexes, List<byte[]> values) {
+                for (int i = 0; i < indexes.size(); i++) {
+                    result[indexes.get(i)] = values.get(i);
+                }
+            }
+        });
+        return Arrays.asList(result);
+    }
+
+    @Override
+    public List<byte[]> mgetWithPttl(List<byte[]> keys, long[] ttls) {
+        byte[][] result = new byte[keys.size()][];
+        execute(keys, new SlotTask() {
+            @Override
+            public Runnable pipelined(Pipeline pipeline, List<Integer> indexes) {
+                Response<List<byte[]>> values = pipeline.mget(pick(keys, indexes));
+                List<Response<Long>> responses = new ArrayList<>(indexes.size());
+                for (Integer index : indexes) {
+                    responses.add(pipeline.pttl(keys.get(index)));
+                }
+                return () -> {
+                    List<byte[]> list = values.get();
+                    for (int i = 0; i < indexes.size(); i++) {
+                        result[indexes.get(i)] = list.get(i);
+                        ttls[indexes.get(i)] = responses.get(i).get();
+                    }
+                };
+            }
+
+            @Override
+            public void direct(List<Integer> indexes) {
+                List<byte[]> values = jedis.mget(pick(keys, indexes));
+                for (int i = 0; i < indexes.size(); i++) {
+                    result[indexes.get(i)] = values.get(i);
+                    ttls[indexes.get(i)] = jedis.pttl(keys.get(indexes.get(i)));
+                }
+            }
+        });
+        return Arrays.asList(result);
+    }
+
+    @Override
+    public void mset(List<byte[]> keys, List<byte[]> versionKeys, List<byte[]> values, long milliseconds) {
+        SetParams params = SetParams.setParams().px(milliseconds);
+        byte[] ms = String.valueOf(milliseconds).getBytes(StandardCharsets.US_ASCII);
+        execute(keys, new SlotTask() {
+            @Override
+            public Runnable pipelined(Pipeline pipeline, List<Integer> indexes) {
+                List<Response<?>> responses = new ArrayList<>(indexes.size());
+                for (Integer index : indexes) {
+                    byte[] versionKey = versionKeys.get(index);
+                    responses.add(versionKey == null ?
+                            pipeline.set(keys.get(index), values.get(index), params) :
+                            pipeline.eval(LuaScript.PUT.getScript(), Arrays.asList(keys.get(index), versionKey),
+                                    Arrays.asList(values.get(index), ms)));
+                }
+                return () -> responses.forEach(Response::get);
+            }
+
+            @Override
+            public void direct(List<Integer> indexes) {
+                for (Integer index : indexes) {
+                    byte[] versionKey = versionKeys.get(index);
+                    if (versionKey == null) {
+                        jedis.set(keys.get(index), values.get(index), params);
+                    } else {
+                        eval(LuaScript.PUT, Arrays.asList(keys.get(index), versionKey),
+                                Arrays.asList(values.get(index), ms));
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public List<Long> pttl(List<byte[]> keys) {
+        Long[] result = new Long[keys.size()];
+        execute(keys, new SlotTask() {
+            @Override
+            public Runnable pipelined(Pipeline pipeline, List<Integer> indexes) {
+                List<Response<Long>> responses = new ArrayList<>(indexes.size());
+                for (Integer index : indexes) {
+                    responses.add(pipeline.pttl(keys.get(index)));
+                }
+                return () -> {
+                    for (int i = 0; i < indexes.size(); i++) {
+                        result[indexes.get(i)] = responses.get(i).get();
+                    }
+                };
+            }
+
+            @Override
+            public void direct(List<Integer> indexes) {
+                for (Integer index : indexes) {
+                    result[index] = jedis.pttl(keys.get(index));
+                }
+            }
+        });
+        return Arrays.asList(result);
+    }
+
+    @Override
+    public void del(List<byte[]> keys) {
+        execute(keys, new SlotTask() {
+            @Override
+            public Runnable pipelined(Pipeline pipeline, List<Integer> indexes) {
+                Response<Long> response = pipeline.del(pick(keys, indexes));
+                return response::get;
+            }
+
+            @Override
+            public void direct(List<Integer> indexes) {
+                jedis.del(pick(keys, indexes));
+            }
+        });
+    }
+
+    /**
+     * 按slot分组执行批量命令：同一节点上的slot合并到一个pipeline中，一个节点一次网络往返；
+     * 遇到slot迁移时刷新slot缓存，并对该slot改为直接在集群上执行
+     */
+    private void execute(List<byte[]> keys, SlotTask task) {
+        if (keys.isEmpty()) return;
+        Map<Integer, List<Integer>> slots = groupBySlot(keys);
+        if (!(jedis instanceof SlotAwareJedisCluster)) {
+            for (List<Integer> indexes : slots.values()) {
+                task.direct(indexes);
+            }
+            return;
+        }
+
+        SlotAwareJedisCluster cluster = (SlotAwareJedisCluster) jedis;
+        Map<String, NodeBatch> nodes = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Integer, List<Integer>> entry : slots.entrySet()) {
+                Jedis connection = cluster.getConnectionFromSlot(entry.getKey());
+                Client client = connection.getClient();
+                String node = client.getHost() + ":" + client.getPort();
+                NodeBatch batch = nodes.get(node);
+                if (batch == null) {
+                    nodes.put(node, batch = new NodeBatch(connection));
+                } else {
+                    connection.close();
+                }
+                batch.slots.add(entry.getValue());
+            }
+
+            boolean redirected = false;
+            for (NodeBatch batch : nodes.values()) {
+                Pipeline pipeline = batch.connection.pipelined();
+                List<Runnable> callbacks = new ArrayList<>(batch.slots.size());
+                for (List<Integer> indexes : batch.slots) {
+                    callbacks.add(task.pipelined(pipeline, indexes));
+                }
+                pipeline.sync();
+                for (int i = 0; i < callbacks.size(); i++) {
+                    try {
+                        callbacks.get(i).run();
+                    } catch (JedisRedirectionException e) {
+                        if (!redirected) {
+                            redirected = true;
+                            cluster.renewSlotCache();
+                        }
+                        task.direct(batch.slots.get(i));
+                    }
+                }
+            }
+        } finally {
+            for (NodeBatch batch : nodes.values()) {
+                batch.connection.close();
+            }
+        }
+    }
+
+    @Override
+    public boolean setIfAbsent(byte[] key, byte[] value, long milliseconds) {
+        return "OK".equals(jedis.set(key, value, SetParams.setParams().nx().px(milliseconds)));
+    }
+
+    @Override
+    public Object eval(LuaScript script, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return jedis.evalsha(script.getSha1(), keys, args);
+        } catch (JedisNoScriptException e) {
+            return jedis.eval(script.getScript(), keys, args);
+        }
+    }
+
+    @Override
+    public void publish(byte[] channel, byte[] message) {
+        jedis.publish(channel, message);
+    }
+
+    @Override
+    public void subscribe(BinaryJedisPubSub pubSub, byte[] channel) {
+        jedis.subscribe(pubSub, channel);
+    }
+
     @Override
     public void close() {
 
     }
+
+    private interface SlotTask {
+        /**
+         * 在pipeline中提交一个slot的命令
+         *
+         * @return pipeline同步后处理响应的动作
+         */
+        Runnable pipelined(Pipeline pipeline, List<Integer> indexes);
+
+        /**
+         * 直接在集群上执行一个slot的命令
+         */
+        void direct(List<Integer> indexes);
+    }
+
+    private static class NodeBatch {
+        private final Jedis connection;
+        private final List<List<Integer>> slots = new ArrayList<>();
+
+        private NodeBatch(Jedis connection) {
+            this.connection = connection;
+        }
+    }
 }
@@ -16,6 +16,10 @@
 
 package org.coodex.sharedcache.jedis;
 
+import redis.clients.jedis.BinaryJedisPubSub;
+
+import java.util.List;
+
 /**
  * Created by davidoff shen on 2016-11-23.
  */
@@ -26,8 +30,65 @@ public interface JedisAdaptor {
 
     String set(byte[] key, byte[] value);
 
+    /**
+     * SET key value PX milliseconds
+     */
+    String set(byte[] key, byte[] value, long milliseconds);
+
     byte[] get(byte[] key);
 
+    /**
+     * @param keys keys
+     * @return 与keys顺序一致的值，不存在的key对应null
+     */
+    List<byte[]> mget(List<byte[]> keys);
+
+    /**
+     * 在同一次网络往返中读取值及其PTTL
+     *
+     * @param keys keys
+     * @param ttls 长度与keys一致，按keys顺序填入PTTL结果
+     * @return 与keys顺序一致的值，不存在的key对应null
+     */
+    List<byte[]> mgetWithPttl(List<byte[]> keys, long[] ttls);
+
+    /**
+     * 批量写入并设置相同的过期时间，每个key以{@link LuaScript#PUT}写入并删除其版本key
+     *
+     * @param keys         keys
+     * @param versionKeys  与keys顺序一致的版本key，元素为null时不处理版本
+     * @param values       与keys顺序一致的值
+     * @param milliseconds 过期时间
+     */
+    void mset(List<byte[]> keys, List<byte[]> versionKeys, List<byte[]> values, long milliseconds);
+
+    void del(List<byte[]> keys);
+
+    /**
+     * @param keys keys
+     * @return 与keys顺序一致的PTTL结果
+     */
+    List<Long> pttl(List<byte[]> keys);
+
+    /**
+     * SET key value NX PX milliseconds
+     *
+     * @return 是否写入
+     */
+    boolean setIfAbsent(byte[] key, byte[] value, long milliseconds);
+
+    /**
+     * 执行lua脚本，优先EVALSHA
+     */
+    Object eval(LuaScript script, List<byte[]> keys, List<byte[]> args);
+
+    void publish(byte[] channel, byte[] message);
+
+    /**
+     * 订阅频道，阻塞至pubSub取消订阅或连接中断
+     */
+    void subscribe(BinaryJedisPubSub pubSub, byte[] channel);
+
     void close();
 
 }
@@ -18,12 +18,15 @@ package org.coodex.sharedcache.jedis;
 
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.coodex.config.Config;
+import org.coodex.sharedcache.ConsistentHashRing;
+import org.coodex.sharedcache.InvalidationChannel;
 import org.coodex.sharedcache.SharedCacheClient;
 import org.coodex.sharedcache.SharedCacheClientFactory;
+import org.coodex.sharedcache.ShardedSharedCacheClient;
 import org.coodex.util.Singleton;
 import redis.clients.jedis.HostAndPort;
-import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -36,11 +39,20 @@ public class JedisClientFactory implements SharedCacheClientFactory {
     public static final String NAMESPACE_JEDIS = "sharedcache-jedis";
 
     public static final int DEFAULT_PORT = 6379;
+    /**
+     * 多节点时使用redis cluster，默认
+     */
+    public static final String MODE_CLUSTER = "cluster";
+    /**
+     * 多节点时按一致性hash在客户端分片
+     */
+    public static final String MODE_SHARDED = "sharded";
+    public static final String DEFAULT_INVALIDATION_CHANNEL = "coodex:sharedcache:invalidation";
 
 //    private static AbstractJedisClient client;
 
     //    private static Profile_Deprecated profile;
-    private static Singleton<AbstractJedisClient> client = Singleton.with(
+    private static Singleton<SharedCacheClient> client = Singleton.with(
             () -> {
 //                    profile = Profile_Deprecated.getProfile("sharedcache-jedis.properties");
                 String[] redisServers = Config.getArray("redisServers", NAMESPACE_JEDIS);
@@ -70,12 +82,55 @@ public class JedisClientFactory implements SharedCacheClientFactory {
                 if (servers.size() == 1) {
                     HostAndPort server = servers.iterator().next();
                     return new JedisSingleNodeClient(new JedisPool(poolConfig, server.getHost(), server.getPort()), defaultMaxCacheTime);
+                } else if (MODE_SHARDED.equalsIgnoreCase(Config.getValue("mode", MODE_CLUSTER, NAMESPACE_JEDIS))) {
+                    return buildSharded(redisServers, poolConfig, defaultMaxCacheTime);
                 } else {
-                    return new JedisClusterClient(new JedisCluster(servers, poolConfig), defaultMaxCacheTime);
+                    return new JedisClusterClient(new SlotAwareJedisCluster(servers, poolConfig), defaultMaxCacheTime);
                 }
             }
     );
 
+    /**
+     * 执行pub/sub和分布式锁的客户端，分片模式下使用第一个节点
+     */
+    private static Singleton<AbstractJedisClient> commandClient = Singleton.with(() -> {
+        SharedCacheClient instance = client.get();
+        if (instance instanceof ShardedSharedCacheClient) {
+            ShardedSharedCacheClient sharded = (ShardedSharedCacheClient) instance;
+            return sharded.getShard(sharded.getShardNames().get(0));
+        }
+        return (AbstractJedisClient) instance;
+    });
+
+    private static Singleton<JedisInvalidationChannel> invalidationChannel = Singleton.with(
+            () -> new JedisInvalidationChannel(commandClient.get(),
+                    Config.getValue("nearCache.channel", DEFAULT_INVALIDATION_CHANNEL, NAMESPACE_JEDIS),
+                    Config.getValue("nearCache.retryInterval", 3000L, NAMESPACE_JEDIS))
+    );
+
+    /**
+     * 多个独立的redis节点按一致性hash分片，节点权重由weight.host:port指定，默认1
+     */
+    private static ShardedSharedCacheClient buildSharded(String[] redisServers,
+                                                         GenericObjectPoolConfig<Object> poolConfig,
+                                                         long defaultMaxCacheTime) {
+        ShardedSharedCacheClient.Builder builder = ShardedSharedCacheClient.builder()
+                .virtualNodes(Config.getValue("sharded.virtualNodes", ConsistentHashRing.DEFAULT_VIRTUAL_NODES, NAMESPACE_JEDIS))
+                .failureThreshold(Config.getValue("sharded.failureThreshold", ShardedSharedCacheClient.DEFAULT_FAILURE_THRESHOLD, NAMESPACE_JEDIS))
+                .retryInterval(Config.getValue("sharded.retryInterval", ShardedSharedCacheClient.DEFAULT_RETRY_INTERVAL, NAMESPACE_JEDIS))
+                .failurePredicate(e -> e instanceof JedisConnectionException);
+        Set<String> names = new HashSet<>();
+        for (String server : redisServers) {
+            HostAndPort hostAndPort = toHostAndPort(server);
+            String name = hostAndPort.getHost() + ':' + hostAndPort.getPort();
+            if (!names.add(name)) continue;
+            builder.shard(name,
+                    new JedisSingleNodeClient(new JedisPool(poolConfig, hostAndPort.getHost(), hostAndPort.getPort()), defaultMaxCacheTime),
+                    Config.getValue("weight." + name, 1, NAMESPACE_JEDIS));
+        }
+        return builder.build();
+    }
+
     private static HostAndPort toHostAndPort(String desc) {
         int index = desc.indexOf(':');
         if (index < 0) return new HostAndPort(desc, DEFAULT_PORT);
@@ -84,6 +139,10 @@ public class JedisClientFactory implements SharedCacheClientFactory {
         return new HostAndPort(host, port);
     }
 
+    static AbstractJedisClient getJedisClient() {
+        return commandClient.get();
+    }
+
     @Override
     public boolean isAccepted(String driverName) {
         if (driverName == null) return false;
@@ -95,6 +154,16 @@ public class JedisClientFactory implements SharedCacheClientFactory {
         return client.get();
     }
 
+    @Override
+    public InvalidationChannel getInvalidationChannel() {
+        return invalidationChannel.get();
+    }
+
+    @Override
+    public String getNamespace() {
+        return NAMESPACE_JEDIS;
+    }
+
     @Override
     public boolean accept(String param) {
         return isAccepted(param);
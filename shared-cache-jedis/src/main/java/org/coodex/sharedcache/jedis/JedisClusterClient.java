@@ -16,6 +16,7 @@
 
 package org.coodex.sharedcache.jedis;
 
+import org.coodex.sharedcache.CacheValueCodec;
 import redis.clients.jedis.JedisCluster;
 
 /**
@@ -32,6 +33,12 @@ public class JedisClusterClient extends AbstractJedisClient {
         jedisAdaptor = new Adaptor4JedisCluster(cluster);
     }
 
+    public JedisClusterClient(JedisCluster cluster, long default_max_cache_time, CacheValueCodec codec) {
+        super(default_max_cache_time, codec);
+        this.cluster = cluster;
+        jedisAdaptor = new Adaptor4JedisCluster(cluster);
+    }
+
     @Override
     protected JedisAdaptor getCommand() {
         return jedisAdaptor;
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache.jedis;
+
+import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.sharedcache.InvalidationChannel;
+import org.coodex.util.UUIDHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.BinaryJedisPubSub;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 基于redis pub/sub的失效通知通道
+ * <p>
+ * 订阅使用一个独立的连接和线程，连接中断后按retryInterval重连，中断及重连时通知监听者清空近端缓存
+ */
+public class JedisInvalidationChannel implements InvalidationChannel {
+
+    private final static Logger log = LoggerFactory.getLogger(JedisInvalidationChannel.class);
+
+    private final AbstractJedisClient client;
+    private final byte[] channel;
+    private final long retryInterval;
+    private final String senderId = UUIDHelper.getUUIDString();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private ExecutorService executorService;
+    private volatile boolean running = false;
+    /**
+     * 每次关闭递增，使上一轮的订阅线程退出
+     */
+    private volatile int generation = 0;
+    private volatile BinaryJedisPubSub pubSub;
+
+    public JedisInvalidationChannel(AbstractJedisClient client, String channel, long retryInterval) {
+        this.client = client;
+        this.channel = channel.getBytes(StandardCharsets.UTF_8);
+        this.retryInterval = retryInterval;
+        ExecutorsHelper.registerShutdownHook(this::close);
+    }
+
+    @Override
+    public void publish(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) return;
+        try {
+            JedisAdaptor commands = client.getCommand();
+            try {
+                commands.publish(channel, encode(keys));
+            } finally {
+                commands.close();
+            }
+        } catch (Throwable th) {
+            // 远端已写入，通知失败时其他节点的近端缓存在有效期后失效
+            log.warn("publish invalidation failed: {}", keys, th);
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(Listener listener) {
+        listeners.add(listener);
+        if (!running) {
+            running = true;
+            if (executorService == null)
+                executorService = ExecutorsHelper.newSingleThreadExecutor("sharedcache-jedis-invalidation");
+            int current = generation;
+            executorService.execute(() -> loop(current));
+        }
+    }
+
+    @Override
+    public synchronized void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty()) close();
+    }
+
+    public synchronized void close() {
+        running = false;
+        generation++;
+        BinaryJedisPubSub current = pubSub;
+        if (current != null && current.isSubscribed()) {
+            try {
+                current.unsubscribe();
+            } catch (Throwable th) {
+                log.debug("unsubscribe failed.", th);
+            }
+        }
+    }
+
+    private boolean isRunning(int loopGeneration) {
+        return running && loopGeneration == generation;
+    }
+
+    private void loop(int loopGeneration) {
+        while (isRunning(loopGeneration)) {
+            BinaryJedisPubSub current = new BinaryJedisPubSub() {
+                @Override
+                public void onMessage(byte[] channel, byte[] message) {
+                    onInvalidate(message);
+                }
+
+                @Override
+                public void onSubscribe(byte[] channel, int subscribedChannels) {
+                    if (!isRunning(loopGeneration)) {
+                        unsubscribe();
+                        return;
+                    }
+                    // 订阅建立之前的通知可能已经丢失
+                    reset();
+                }
+            };
+            pubSub = current;
+            try {
+                JedisAdaptor commands = client.getCommand();
+                try {
+                    if (isRunning(loopGeneration)) commands.subscribe(current, channel);
+                } finally {
+                    commands.close();
+                }
+            } catch (Throwable th) {
+                log.warn("invalidation channel broken, retry after {}ms.", retryInterval, th);
+            }
+            reset();
+            if (isRunning(loopGeneration)) {
+                try {
+                    Thread.sleep(retryInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void reset() {
+        for (Listener listener : listeners) {
+            try {
+                listener.onReset();
+            } catch (Throwable th) {
+                log.warn("listener reset failed: {}", listener, th);
+            }
+        }
+    }
+
+    private void onInvalidate(byte[] message) {
+        List<String> keys;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(message))) {
+            if (senderId.equals(in.readUTF())) return;
+            int count = in.readInt();
+            keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                keys.add(in.readUTF());
+            }
+        } catch (IOException e) {
+            log.warn("unknown invalidation message.", e);
+            return;
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.onInvalidate(keys);
+            } catch (Throwable th) {
+                log.warn("listener invalidate failed: {}", listener, th);
+            }
+        }
+    }
+
+    private byte[] encode(Collection<String> keys) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeUTF(senderId);
+            out.writeInt(keys.size());
+            for (String key : keys) {
+                out.writeUTF(key);
+            }
+        }
+        return bos.toByteArray();
+    }
+}
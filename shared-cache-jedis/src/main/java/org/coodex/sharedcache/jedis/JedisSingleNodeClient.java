@@ -16,6 +16,7 @@
 
 package org.coodex.sharedcache.jedis;
 
+import org.coodex.sharedcache.CacheValueCodec;
 import redis.clients.jedis.JedisPool;
 
 /**
@@ -30,6 +31,11 @@ public class JedisSingleNodeClient extends AbstractJedisClient {
         this.pool = pool;
     }
 
+    public JedisSingleNodeClient(JedisPool pool, long default_max_cache_time, CacheValueCodec codec) {
+        super(default_max_cache_time, codec);
+        this.pool = pool;
+    }
+
     @Override
     protected JedisAdaptor getCommand() {
         return new Adaptor4Jedis(pool.getResource());
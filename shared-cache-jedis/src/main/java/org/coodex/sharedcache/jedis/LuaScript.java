@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.coodex.sharedcache.jedis;
+
+import org.coodex.util.DigestHelper;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 服务端执行的lua脚本，优先使用EVALSHA，服务端未缓存时退回EVAL
+ */
+public class LuaScript {
+
+    /**
+     * SET KEYS[1] ARGV[1] PX ARGV[2]，并删除版本KEYS[2](如有)
+     */
+    public static final LuaScript PUT = new LuaScript(
+            "redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+                    "if KEYS[2] then redis.call('DEL', KEYS[2]) end " +
+                    "return 1");
+
+    /**
+     * SET KEYS[1] ARGV[1] NX PX ARGV[2]，写入时删除版本KEYS[2](如有)
+     */
+    public static final LuaScript PUT_IF_ABSENT = new LuaScript(
+            "if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+                    "if KEYS[2] then redis.call('DEL', KEYS[2]) end " +
+                    "return 1 " +
+                    "end " +
+                    "return 0");
+
+    /**
+     * 返回{KEYS[1]的值, 版本KEYS[2]}；没有版本时以ARGV[1]为初值创建，与KEYS[1]同时过期
+     */
+    public static final LuaScript GET_VERSIONED = new LuaScript(
+            "local v = redis.call('GET', KEYS[1]) " +
+                    "if not v then return nil end " +
+                    "local ver = redis.call('GET', KEYS[2]) " +
+                    "if not ver then " +
+                    "ver = ARGV[1] " +
+                    "redis.call('SET', KEYS[2], ver) " +
+                    "local ttl = redis.call('PTTL', KEYS[1]) " +
+                    "if ttl > 0 then redis.call('PEXPIRE', KEYS[2], ttl) end " +
+                    "end " +
+                    "return {v, ver}");
+
+    /**
+     * KEYS[1]存在且版本KEYS[2]与ARGV[1]一致时，SET KEYS[1] ARGV[2] PX ARGV[3]并INCR版本
+     */
+    public static final LuaScript COMPARE_AND_SET = new LuaScript(
+            "if redis.call('EXISTS', KEYS[1]) == 1 and redis.call('GET', KEYS[2]) == ARGV[1] then " +
+                    "redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) " +
+                    "redis.call('INCR', KEYS[2]) " +
+                    "redis.call('PEXPIRE', KEYS[2], ARGV[3]) " +
+                    "return 1 " +
+                    "end " +
+                    "return 0");
+
+    /**
+     * INCRBY KEYS[1] ARGV[1]，计数器没有过期时间时设置为ARGV[2]毫秒
+     */
+    public static final LuaScript INCREMENT = new LuaScript(
+            "local v = redis.call('INCRBY', KEYS[1], ARGV[1]) " +
+                    "if tonumber(ARGV[2]) > 0 and redis.call('PTTL', KEYS[1]) == -1 then " +
+                    "redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+                    "end " +
+                    "return v");
+
+    /**
+     * GET KEYS[1]，存在时PEXPIRE KEYS[1]及版本KEYS[2](如有) ARGV[1]
+     */
+    public static final LuaScript GET_AND_TOUCH = new LuaScript(
+            "local v = redis.call('GET', KEYS[1]) " +
+                    "if v then " +
+                    "redis.call('PEXPIRE', KEYS[1], ARGV[1]) " +
+                    "if KEYS[2] then redis.call('PEXPIRE', KEYS[2], ARGV[1]) end " +
+                    "end " +
+                    "return v");
+
+    /**
+     * GET KEYS[1]，存在时删除KEYS[1]及版本KEYS[2](如有)
+     */
+    public static final LuaScript GET_AND_DELETE = new LuaScript(
+            "local v = redis.call('GET', KEYS[1]) " +
+                    "if v then " +
+                    "redis.call('DEL', unpack(KEYS)) " +
+                    "end " +
+                    "return v");
+
+    /**
+     * KEYS[1]的值与ARGV[1]一致时，删除KEYS[1]及版本KEYS[2](如有)
+     */
+    public static final LuaScript REMOVE_IF_EQUALS = new LuaScript(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+                    "redis.call('DEL', unpack(KEYS)) " +
+                    "return 1 " +
+                    "end " +
+                    "return 0");
+
+    /**
+     * SET KEYS[1] ARGV[1] NX PX ARGV[2]，成功时返回INCR KEYS[2]作为fencing token，否则返回0
+     */
+    public static final LuaScript LOCK_ACQUIRE = new LuaScript(
+            "if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+                    "return redis.call('INCR', KEYS[2]) " +
+                    "end " +
+                    "return 0");
+
+    /**
+     * KEYS[1]的值与ARGV[1]一致时返回INCR KEYS[2]，否则返回0
+     */
+    public static final LuaScript LOCK_FENCE = new LuaScript(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+                    "return redis.call('INCR', KEYS[2]) " +
+                    "end " +
+                    "return 0");
+
+    /**
+     * KEYS[1]的值与ARGV[1]一致时，PEXPIRE KEYS[1] ARGV[2]
+     */
+    public static final LuaScript LOCK_RENEW = new LuaScript(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+                    "return redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+                    "end " +
+                    "return 0");
+
+    /**
+     * KEYS[1]的值与ARGV[1]一致时，DEL KEYS[1]
+     */
+    public static final LuaScript LOCK_RELEASE = new LuaScript(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+                    "return redis.call('DEL', KEYS[1]) " +
+                    "end " +
+                    "return 0");
+
+    private final byte[] script;
+    private final byte[] sha1;
+
+    public LuaScript(String script) {
+        this.script = script.getBytes(StandardCharsets.UTF_8);
+        this.sha1 = DigestHelper.sha1(this.script).toLowerCase().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public byte[] getScript() {
+        return script;
+    }
+
+    public byte[] getSha1() {
+        return sha1;
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache.jedis;
+
+import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.concurrent.locks.AbstractResourceLock;
+import org.coodex.concurrent.locks.AbstractResourceLockProvider;
+import org.coodex.concurrent.locks.ResourceId;
+import org.coodex.config.Config;
+import org.coodex.util.Singleton;
+import org.coodex.util.UUIDHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.coodex.sharedcache.jedis.JedisClientFactory.NAMESPACE_JEDIS;
+
+/**
+ * 基于redis的跨节点资源锁
+ * <p>
+ * 同一JVM内的线程在{@link AbstractResourceLock}的ReentrantLock上排队，
+ * 只有JVM内首个持有者与redis交互(SET NX PX)，本地仍有等待者时不释放redis锁，直接交给下一个线程。
+ * 持有期间后台按租期的1/3续约，释放时仅删除自己的token(compare-and-delete)。
+ * <p>
+ * 每次获取成功时递增同slot的fencing计数器，本地交接时为新持有者再次递增，持有者可用
+ * {@link RedisResourceLock#getFencingToken()}向下游声明持有顺序，防止租约过期后旧持有者的写入覆盖新持有者。
+ * <p>
+ * 配置(namespace: sharedcache-jedis)：
+ * <pre>
+ *     lock.resourceTypes   接受的资源类型，逗号分隔，*表示全部，未配置时不接受任何资源
+ *     lock.prefix          redis key前缀，默认coodex:lock:
+ *     lock.leaseTime       租期，毫秒，默认30000
+ *     lock.retryInterval   竞争失败后的重试间隔，毫秒，默认100
+ * </pre>
+ */
+public class RedisResourceLockProvider extends AbstractResourceLockProvider {
+
+    public static final String DEFAULT_LOCK_PREFIX = "coodex:lock:";
+    public static final long DEFAULT_LEASE_TIME = 30000L;
+    public static final long DEFAULT_RETRY_INTERVAL = 100L;
+
+    private final static Logger log = LoggerFactory.getLogger(RedisResourceLockProvider.class);
+
+    private static final Singleton<ScheduledExecutorService> renewExecutor = Singleton.with(
+            () -> ExecutorsHelper.newSingleThreadScheduledExecutor("redisLockRenewal")
+    );
+
+    private final Singleton<AbstractJedisClient> client;
+    private final String prefix;
+    private final long leaseTime;
+    private final long retryInterval;
+
+    public RedisResourceLockProvider() {
+        this.client = Singleton.with(JedisClientFactory::getJedisClient);
+        this.prefix = Config.getValue("lock.prefix", DEFAULT_LOCK_PREFIX, NAMESPACE_JEDIS);
+        this.leaseTime = Config.getValue("lock.leaseTime", DEFAULT_LEASE_TIME, NAMESPACE_JEDIS);
+        this.retryInterval = Config.getValue("lock.retryInterval", DEFAULT_RETRY_INTERVAL, NAMESPACE_JEDIS);
+    }
+
+    public RedisResourceLockProvider(AbstractJedisClient client, String prefix, long leaseTime, long retryInterval) {
+        if (leaseTime <= 0) throw new IllegalArgumentException("leaseTime must be positive.");
+        this.client = Singleton.with(() -> client);
+        this.prefix = prefix == null ? DEFAULT_LOCK_PREFIX : prefix;
+        this.leaseTime = leaseTime;
+        this.retryInterval = Math.max(1, retryInterval);
+    }
+
+    @Override
+    public boolean accept(ResourceId param) {
+        if (param == null) return false;
+        String[] types = Config.getArray("lock.resourceTypes", NAMESPACE_JEDIS);
+        if (types == null) return false;
+        Set<String> accepted = new HashSet<>(Arrays.asList(types));
+        return accepted.contains("*") || accepted.contains(param.getType());
+    }
+
+    @Override
+    protected AbstractResourceLock buildResourceLock(ResourceId id) {
+        return new RedisResourceLock(id);
+    }
+
+    /**
+     * @param id 资源
+     * @return 锁和fencing计数器使用相同的hash tag，保证集群模式下落在同一slot
+     */
+    String toLockKey(ResourceId id) {
+        return prefix + '{' + id.getType() + ':' + id.getId() + '}';
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Object eval(LuaScript script, List<byte[]> keys, List<byte[]> args) {
+        JedisAdaptor commands = client.get().getCommand();
+        try {
+            return commands.eval(script, keys, args);
+        } finally {
+            commands.close();
+        }
+    }
+
+    private static long toLong(Object result) {
+        return result instanceof Number ? ((Number) result).longValue() : 0L;
+    }
+
+    public class RedisResourceLock extends AbstractResourceLock {
+        private final byte[] key;
+        private final byte[] fenceKey;
+        private volatile byte[] token;
+        private volatile long fencingToken = 0L;
+        private final Object renewMonitor = new Object();
+        private ScheduledFuture<?> renewal;
+        /**
+         * 本地持有者及其重入次数，只由持有者在持有{@link ReentrantLock}期间修改
+         */
+        private Thread holder;
+        private int holds = 0;
+        /**
+         * redis锁是否由当前持有者获取，否则为前一持有者交接而来
+         */
+        private boolean fresh = false;
+
+        RedisResourceLock(ResourceId resourceId) {
+            super(resourceId);
+            String lockKey = toLockKey(resourceId);
+            this.key = bytes(lockKey);
+            this.fenceKey = bytes(lockKey + ":fence");
+        }
+
+        /**
+         * @return 最近一次获取redis锁时得到的fencing token，单调递增；未持有时为0
+         */
+        public long getFencingToken() {
+            return token == null ? 0L : fencingToken;
+        }
+
+        private boolean acquire() {
+            byte[] candidate = bytes(UUIDHelper.getUUIDString());
+            long fence = toLong(eval(LuaScript.LOCK_ACQUIRE,
+                    Arrays.asList(key, fenceKey),
+                    Arrays.asList(candidate, bytes(String.valueOf(leaseTime)))));
+            if (fence <= 0) return false;
+            synchronized (renewMonitor) {
+                fencingToken = fence;
+                token = candidate;
+                fresh = true;
+                scheduleRenewal(candidate);
+            }
+            return true;
+        }
+
+        /**
+         * 本地首次持有时，redis锁若由前一持有者交接而来，为当前持有者递增fencing token
+         *
+         * @return redis锁是否仍然有效，租约已丢失时返回false，需重新获取
+         */
+        private boolean held() {
+            if (holds++ > 0) return true;
+            holder = Thread.currentThread();
+            if (fresh) {
+                fresh = false;
+                return true;
+            }
+            byte[] current = token;
+            long fence = current == null ? 0L : toLong(eval(LuaScript.LOCK_FENCE,
+                    Arrays.asList(key, fenceKey), Collections.singletonList(current)));
+            synchronized (renewMonitor) {
+                if (token != current) return false;
+                if (fence > 0) {
+                    fencingToken = fence;
+                    return true;
+                }
+                log.warn("lease of {} lost before hand-over, fencing token {}.",
+                        new String(key, StandardCharsets.UTF_8), fencingToken);
+                token = null;
+                if (renewal != null) {
+                    renewal.cancel(false);
+                    renewal = null;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void lock() {
+            super.lock();
+            try {
+                if (!held()) {
+                    alloc();
+                    fresh = false;
+                }
+            } catch (RuntimeException e) {
+                unlock();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean tryLock() {
+            if (!super.tryLock()) return false;
+            return retain(0);
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + unit.toMillis(time);
+            if (!super.tryLock(time, unit)) return false;
+            return retain(deadline - System.currentTimeMillis());
+        }
+
+        /**
+         * tryLock取得本地锁后确认redis锁，租约已丢失时在time毫秒内重新获取，失败时释放本地锁
+         */
+        private boolean retain(long time) {
+            try {
+                if (held() || (time > 0 ? tryAlloc(time) : tryAlloc())) {
+                    fresh = false;
+                    return true;
+                }
+            } catch (RuntimeException e) {
+                unlock();
+                throw e;
+            }
+            unlock();
+            return false;
+        }
+
+        @Override
+        public void unlock() {
+            if (holder == Thread.currentThread() && --holds == 0) holder = null;
+            super.unlock();
+        }
+
+        private void scheduleRenewal(byte[] current) {
+            renewal = renewExecutor.get().schedule(
+                    () -> renew(current), Math.max(1, leaseTime / 3), TimeUnit.MILLISECONDS);
+        }
+
+        private void renew(byte[] current) {
+            if (token != current) return;
+            // 持有期间保持活跃，避免被provider当作过期资源清理
+            active();
+            boolean lost = false;
+            try {
+                lost = toLong(eval(LuaScript.LOCK_RENEW,
+                        Collections.singletonList(key),
+                        Arrays.asList(current, bytes(String.valueOf(leaseTime))))) == 0L;
+            } catch (Throwable th) {
+                // 网络抖动时等待下一周期重试，租期内恢复即可
+                log.warn("renew lease of {} failed.", new String(key, StandardCharsets.UTF_8), th);
+            }
+            synchronized (renewMonitor) {
+                if (token != current) return;
+                if (lost) {
+                    log.warn("lease of {} lost, fencing token {}.", new String(key, StandardCharsets.UTF_8), fencingToken);
+                    token = null;
+                    renewal = null;
+                } else {
+                    scheduleRenewal(current);
+                }
+            }
+        }
+
+        @Override
+        protected void alloc() {
+            boolean interrupted = false;
+            try {
+                while (!acquire()) {
+                    try {
+                        Thread.sleep(retryInterval);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        protected boolean allocated() {
+            return token != null;
+        }
+
+        @Override
+        protected void release() {
+            byte[] current;
+            synchronized (renewMonitor) {
+                current = token;
+                token = null;
+                if (renewal != null) {
+                    renewal.cancel(false);
+                    renewal = null;
+                }
+            }
+            if (current == null) return;
+            try {
+                eval(LuaScript.LOCK_RELEASE, Collections.singletonList(key), Arrays.asList(current));
+            } catch (Throwable th) {
+                // 释放失败时等待租约自然过期
+                log.warn("release {} failed.", new String(key, StandardCharsets.UTF_8), th);
+            }
+        }
+
+        @Override
+        protected boolean tryAlloc() {
+            return acquire();
+        }
+
+        @Override
+        protected boolean tryAlloc(long time) {
+            long deadline = System.currentTimeMillis() + time;
+            while (true) {
+                if (acquire()) return true;
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                try {
+                    Thread.sleep(Math.min(retryInterval, remaining));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+}
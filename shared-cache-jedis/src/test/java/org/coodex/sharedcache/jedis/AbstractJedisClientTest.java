@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.coodex.sharedcache.jedis;
+
+import org.coodex.sharedcache.TimedValue;
+import org.coodex.sharedcache.VersionedValue;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AbstractJedisClientTest {
+
+    private final FakeJedisAdaptor.Store store = new FakeJedisAdaptor.Store();
+    private final AbstractJedisClient client = new AbstractJedisClient(60000L) {
+        @Override
+        protected JedisAdaptor getCommand() {
+            return new FakeJedisAdaptor(store);
+        }
+    };
+
+    @Test
+    public void versionKeySharesHashTag() {
+        assertEquals("{k}:__ver", new String(client.toVersionKey("k"), StandardCharsets.UTF_8));
+        assertEquals("{u1}:name:__ver", new String(client.toVersionKey("{u1}:name"), StandardCharsets.UTF_8));
+        assertNull(client.toVersionKey("a}b"));
+        assertNull(client.toVersionKey("{}b"));
+    }
+
+    @Test
+    public void compareAndSetBumpsVersion() {
+        client.put("k", "a");
+        VersionedValue<String> v = client.getVersioned("k");
+        assertEquals("a", v.getValue());
+        assertTrue(client.compareAndSet("k", v.getVersion(), "b", 60000L));
+        assertFalse(client.compareAndSet("k", v.getVersion(), "c", 60000L));
+        VersionedValue<String> next = client.getVersioned("k");
+        assertEquals("b", next.getValue());
+        assertEquals(v.getVersion() + 1, next.getVersion());
+    }
+
+    @Test
+    public void rewriteOfSameValueInvalidatesVersion() {
+        client.put("k", "a");
+        VersionedValue<String> v = client.getVersioned("k");
+        client.put("k", "b");
+        client.put("k", "a");
+        assertFalse(client.compareAndSet("k", v.getVersion(), "c", 60000L));
+        assertEquals("a", client.get("k"));
+    }
+
+    @Test
+    public void removeAndPutIfAbsentInvalidateVersion() {
+        client.put("k", "a");
+        VersionedValue<String> v = client.getVersioned("k");
+        client.remove("k");
+        assertFalse(store.contains("{k}:__ver"));
+        assertTrue(client.putIfAbsent("k", "a", 60000L));
+        assertFalse(client.compareAndSet("k", v.getVersion(), "c", 60000L));
+    }
+
+    @Test
+    public void getAndTouchWithoutTimeDeletes() {
+        client.put("k", "a");
+        client.getVersioned("k");
+        long evals = store.evals();
+        assertEquals("a", client.getAndTouch("k", 0));
+        assertEquals(1, store.evals() - evals);
+        assertFalse(store.contains("k"));
+        assertFalse(store.contains("{k}:__ver"));
+        assertNull(client.getAndTouch("k", 0));
+    }
+
+    @Test
+    public void removeIfEquals() {
+        client.put("lock", "owner");
+        assertFalse(client.removeIfEquals("lock", "other"));
+        assertTrue(client.removeIfEquals("lock", "owner"));
+        assertFalse(store.contains("lock"));
+    }
+
+    @Test
+    public void getAllWithTimeToLive() {
+        client.put("a", "1", 30000L);
+        client.put("b", "2");
+        Map<String, TimedValue<String>> all = client.getAllWithTimeToLive(Arrays.asList("a", "b", "missing"));
+        assertEquals(2, all.size());
+        assertEquals("1", all.get("a").getValue());
+        assertTrue(all.get("a").getTimeToLive() > 0 && all.get("a").getTimeToLive() <= 30000L);
+        assertTrue(all.get("b").getTimeToLive() > 30000L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unbalancedKeyCanNotBeVersioned() {
+        client.put("a}b", "a");
+        client.getVersioned("a}b");
+    }
+}
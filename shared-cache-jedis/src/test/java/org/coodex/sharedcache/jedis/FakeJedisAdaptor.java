@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.coodex.sharedcache.jedis;
+
+import redis.clients.jedis.BinaryJedisPubSub;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个仅用于测试的JedisAdaptor替身：在内存中模拟客户端用到的命令，以Java逐条实现{@link LuaScript}中的脚本，
+ * 不支持发布订阅。多个替身可共享同一个{@link Store}，模拟同一个服务端的多个连接。
+ */
+class FakeJedisAdaptor implements JedisAdaptor {
+
+    private final Store store;
+
+    FakeJedisAdaptor(Store store) {
+        this.store = store;
+    }
+
+    private static byte[] num(long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static long parse(byte[] value) {
+        return Long.parseLong(new String(value, StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public Long del(byte[] key) {
+        synchronized (store) {
+            return store.remove(key) ? 1L : 0L;
+        }
+    }
+
+    @Override
+    public Long pexpire(byte[] key, long milliseconds) {
+        synchronized (store) {
+            return store.expire(key, milliseconds) ? 1L : 0L;
+        }
+    }
+
+    @Override
+    public String set(byte[] key, byte[] value) {
+        synchronized (store) {
+            store.set(key, value, 0);
+            return "OK";
+        }
+    }
+
+    @Override
+    public String set(byte[] key, byte[] value, long milliseconds) {
+        synchronized (store) {
+            store.set(key, value, milliseconds);
+            return "OK";
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        synchronized (store) {
+            return store.get(key);
+        }
+    }
+
+    @Override
+    public List<byte[]> mget(List<byte[]> keys) {
+        synchronized (store) {
+            List<byte[]> values = new ArrayList<>(keys.size());
+            for (byte[] key : keys) values.add(store.get(key));
+            return values;
+        }
+    }
+
+    @Override
+    public List<byte[]> mgetWithPttl(List<byte[]> keys, long[] ttls) {
+        synchronized (store) {
+            for (int i = 0; i < ttls.length; i++) ttls[i] = store.pttl(keys.get(i));
+            return mget(keys);
+        }
+    }
+
+    @Override
+    public void mset(List<byte[]> keys, List<byte[]> versionKeys, List<byte[]> values, long milliseconds) {
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] versionKey = versionKeys.get(i);
+            eval(LuaScript.PUT, versionKey == null ?
+                            Collections.singletonList(keys.get(i)) : Arrays.asList(keys.get(i), versionKey),
+                    Arrays.asList(values.get(i), num(milliseconds)));
+        }
+    }
+
+    @Override
+    public void del(List<byte[]> keys) {
+        synchronized (store) {
+            for (byte[] key : keys) store.remove(key);
+        }
+    }
+
+    @Override
+    public List<Long> pttl(List<byte[]> keys) {
+        synchronized (store) {
+            List<Long> ttls = new ArrayList<>(keys.size());
+            for (byte[] key : keys) ttls.add(store.pttl(key));
+            return ttls;
+        }
+    }
+
+    @Override
+    public boolean setIfAbsent(byte[] key, byte[] value, long milliseconds) {
+        synchronized (store) {
+            if (store.get(key) != null) return false;
+            store.set(key, value, milliseconds);
+            return true;
+        }
+    }
+
+    @Override
+    public Object eval(LuaScript script, List<byte[]> keys, List<byte[]> args) {
+        store.evals.incrementAndGet();
+        byte[] key = keys.get(0);
+        byte[] second = keys.size() > 1 ? keys.get(1) : null;
+        synchronized (store) {
+            if (script == LuaScript.PUT) {
+                store.set(key, args.get(0), parse(args.get(1)));
+                if (second != null) store.remove(second);
+                return 1L;
+            } else if (script == LuaScript.PUT_IF_ABSENT) {
+                if (store.get(key) != null) return 0L;
+                store.set(key, args.get(0), parse(args.get(1)));
+                if (second != null) store.remove(second);
+                return 1L;
+            } else if (script == LuaScript.GET_VERSIONED) {
+                byte[] value = store.get(key);
+                if (value == null) return null;
+                byte[] version = store.get(second);
+                if (version == null) {
+                    version = args.get(0);
+                    long ttl = store.pttl(key);
+                    store.set(second, version, ttl > 0 ? ttl : 0);
+                }
+                return Arrays.asList(value, version);
+            } else if (script == LuaScript.COMPARE_AND_SET) {
+                if (store.get(key) == null || !Arrays.equals(store.get(second), args.get(0))) return 0L;
+                long ms = parse(args.get(2));
+                store.set(key, args.get(1), ms);
+                store.set(second, num(parse(store.get(second)) + 1), ms);
+                return 1L;
+            } else if (script == LuaScript.INCREMENT) {
+                byte[] current = store.get(key);
+                long value = (current == null ? 0 : parse(current)) + parse(args.get(0));
+                long ttl = store.pttl(key);
+                long ms = parse(args.get(1));
+                store.set(key, num(value), ttl > 0 ? ttl : (ms > 0 ? ms : 0));
+                return value;
+            } else if (script == LuaScript.GET_AND_TOUCH) {
+                byte[] value = store.get(key);
+                if (value != null) {
+                    long ms = parse(args.get(0));
+                    store.expire(key, ms);
+                    if (second != null) store.expire(second, ms);
+                }
+                return value;
+            } else if (script == LuaScript.GET_AND_DELETE) {
+                byte[] value = store.get(key);
+                if (value != null) {
+                    for (byte[] k : keys) store.remove(k);
+                }
+                return value;
+            } else if (script == LuaScript.REMOVE_IF_EQUALS) {
+                if (!Arrays.equals(store.get(key), args.get(0))) return 0L;
+                for (byte[] k : keys) store.remove(k);
+                return 1L;
+            } else if (script == LuaScript.LOCK_ACQUIRE) {
+                if (store.get(key) != null) return 0L;
+                store.set(key, args.get(0), parse(args.get(1)));
+                byte[] fence = store.get(second);
+                long next = (fence == null ? 0 : parse(fence)) + 1;
+                store.set(second, num(next), 0);
+                return next;
+            } else if (script == LuaScript.LOCK_FENCE) {
+                if (!Arrays.equals(store.get(key), args.get(0))) return 0L;
+                long next = parse(store.get(second)) + 1;
+                store.set(second, num(next), 0);
+                return next;
+            } else if (script == LuaScript.LOCK_RENEW) {
+                if (!Arrays.equals(store.get(key), args.get(0))) return 0L;
+                return store.expire(key, parse(args.get(1))) ? 1L : 0L;
+            } else if (script == LuaScript.LOCK_RELEASE) {
+                if (!Arrays.equals(store.get(key), args.get(0))) return 0L;
+                return store.remove(key) ? 1L : 0L;
+            }
+        }
+        throw new UnsupportedOperationException("unknown script: " + new String(script.getScript(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void publish(byte[] channel, byte[] message) {
+        throw new UnsupportedOperationException("publish");
+    }
+
+    @Override
+    public void subscribe(BinaryJedisPubSub pubSub, byte[] channel) {
+        throw new UnsupportedOperationException("subscribe");
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * 模拟的服务端数据，过期时间以可前移的时钟计算
+     */
+    static class Store {
+        private final Map<String, Item> items = new HashMap<>();
+        private final AtomicLong evals = new AtomicLong(0);
+        private long offset = 0;
+
+        private static String toString(byte[] key) {
+            return new String(key, StandardCharsets.UTF_8);
+        }
+
+        private long now() {
+            return System.currentTimeMillis() + offset;
+        }
+
+        /**
+         * 时钟前移
+         */
+        synchronized void advance(long milliseconds) {
+            offset += milliseconds;
+        }
+
+        long evals() {
+            return evals.get();
+        }
+
+        synchronized boolean contains(String key) {
+            return get(key.getBytes(StandardCharsets.UTF_8)) != null;
+        }
+
+        byte[] get(byte[] key) {
+            Item item = items.get(toString(key));
+            if (item == null) return null;
+            if (item.expireAt > 0 && item.expireAt <= now()) {
+                items.remove(toString(key));
+                return null;
+            }
+            return item.value;
+        }
+
+        void set(byte[] key, byte[] value, long milliseconds) {
+            items.put(toString(key), new Item(value, milliseconds > 0 ? now() + milliseconds : 0));
+        }
+
+        boolean remove(byte[] key) {
+            boolean exists = get(key) != null;
+            items.remove(toString(key));
+            return exists;
+        }
+
+        boolean expire(byte[] key, long milliseconds) {
+            byte[] value = get(key);
+            if (value == null) return false;
+            if (milliseconds <= 0) {
+                items.remove(toString(key));
+            } else {
+                set(key, value, milliseconds);
+            }
+            return true;
+        }
+
+        long pttl(byte[] key) {
+            if (get(key) == null) return -2;
+            long expireAt = items.get(toString(key)).expireAt;
+            return expireAt == 0 ? -1 : expireAt - now();
+        }
+    }
+
+    private static class Item {
+        private final byte[] value;
+        private final long expireAt;
+
+        Item(byte[] value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
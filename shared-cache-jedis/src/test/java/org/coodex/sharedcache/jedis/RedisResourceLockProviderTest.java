@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.coodex.sharedcache.jedis;
+
+import org.coodex.concurrent.locks.ResourceId;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RedisResourceLockProviderTest {
+
+    private static final String LOCK_KEY = "test:lock:{order:1}";
+
+    private final FakeJedisAdaptor.Store store = new FakeJedisAdaptor.Store();
+
+    private RedisResourceLockProvider provider(long leaseTime) {
+        return new RedisResourceLockProvider(new AbstractJedisClient(60000L) {
+            @Override
+            protected JedisAdaptor getCommand() {
+                return new FakeJedisAdaptor(store);
+            }
+        }, "test:lock:", leaseTime, 10);
+    }
+
+    private RedisResourceLockProvider.RedisResourceLock lockOf(RedisResourceLockProvider provider) {
+        return provider.new RedisResourceLock(new ResourceId("order", "1"));
+    }
+
+    @Test
+    public void acquireAndRelease() {
+        RedisResourceLockProvider.RedisResourceLock lock = lockOf(provider(30000));
+        lock.lock();
+        assertTrue(store.contains(LOCK_KEY));
+        assertEquals(1, lock.getFencingToken());
+        lock.lock();
+        lock.unlock();
+        assertTrue(store.contains(LOCK_KEY));
+        lock.unlock();
+        assertFalse(store.contains(LOCK_KEY));
+        assertEquals(0, lock.getFencingToken());
+
+        lock.lock();
+        assertEquals(2, lock.getFencingToken());
+        lock.unlock();
+    }
+
+    @Test
+    public void exclusiveAcrossNodes() throws InterruptedException {
+        RedisResourceLockProvider.RedisResourceLock node1 = lockOf(provider(30000));
+        RedisResourceLockProvider.RedisResourceLock node2 = lockOf(provider(30000));
+        node1.lock();
+        assertFalse(node2.tryLock());
+        assertFalse(node2.tryLock(50, TimeUnit.MILLISECONDS));
+        node1.unlock();
+        assertTrue(node2.tryLock());
+        assertEquals(2, node2.getFencingToken());
+        node2.unlock();
+    }
+
+    @Test
+    public void leaseRenewed() throws InterruptedException {
+        RedisResourceLockProvider.RedisResourceLock lock = lockOf(provider(150));
+        lock.lock();
+        Thread.sleep(500);
+        assertTrue(store.contains(LOCK_KEY));
+        lock.unlock();
+        assertFalse(store.contains(LOCK_KEY));
+    }
+
+    @Test
+    public void localHandOverAdvancesFencingToken() throws InterruptedException {
+        RedisResourceLockProvider.RedisResourceLock lock = lockOf(provider(30000));
+        lock.lock();
+        long first = lock.getFencingToken();
+        AtomicLong second = new AtomicLong();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            lock.lock();
+            try {
+                second.set(lock.getFencingToken());
+                acquired.countDown();
+            } finally {
+                lock.unlock();
+            }
+        });
+        waiter.start();
+        // 等待者排队后释放，redis锁交接给等待者而不释放
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        long evals = store.evals();
+        lock.unlock();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(first + 1, second.get());
+        // 交接时只递增fencing token，最后由等待者释放
+        assertEquals(2, store.evals() - evals);
+        assertFalse(store.contains(LOCK_KEY));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache.memcached;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+import net.rubyeye.xmemcached.transcoders.CompressionMode;
+import net.rubyeye.xmemcached.transcoders.SerializingTranscoder;
+import net.rubyeye.xmemcached.transcoders.Transcoder;
+import org.coodex.sharedcache.CacheValueCodec;
+
+import java.io.Serializable;
+
+/**
+ * 使用{@link CacheValueCodec}编解码的Transcoder。
+ * <p>
+ * 以flag区分，没有CODEC_FLAG的数据(旧版本写入的数据、incr/decr的计数器)仍由xmemcached默认的Transcoder解码
+ */
+public class CodecTranscoder implements Transcoder<Object> {
+
+    /**
+     * 不与SerializingTranscoder的flag冲突
+     */
+    public static final int CODEC_FLAG = 0x10000;
+
+    private final CacheValueCodec codec;
+    private final SerializingTranscoder legacy = new SerializingTranscoder();
+
+    public CodecTranscoder(CacheValueCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public CachedData encode(Object o) {
+        if (!(o instanceof Serializable))
+            throw new IllegalArgumentException("cache value must be Serializable: " + o);
+        return new CachedData(CODEC_FLAG, codec.encode((Serializable) o));
+    }
+
+    @Override
+    public Object decode(CachedData d) {
+        return (d.getFlag() & CODEC_FLAG) != 0 ? codec.decode(d.getData()) : legacy.decode(d);
+    }
+
+    @Override
+    public void setPrimitiveAsString(boolean primitiveAsString) {
+        legacy.setPrimitiveAsString(primitiveAsString);
+    }
+
+    @Override
+    public void setPackZeros(boolean packZeros) {
+        legacy.setPackZeros(packZeros);
+    }
+
+    @Override
+    public void setCompressionThreshold(int to) {
+        // 压缩由codec负责
+    }
+
+    @Override
+    public boolean isPrimitiveAsString() {
+        return legacy.isPrimitiveAsString();
+    }
+
+    @Override
+    public boolean isPackZeros() {
+        return legacy.isPackZeros();
+    }
+
+    @Override
+    public void setCompressionMode(CompressionMode compressionMode) {
+        // 压缩由codec负责
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.coodex.sharedcache.memcached;
+
+import net.rubyeye.xmemcached.MemcachedClient;
+import net.rubyeye.xmemcached.MemcachedClientBuilder;
+import org.coodex.concurrent.ExecutorsHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 持有一个长期存活的{@link MemcachedClient}：首次使用时构建，客户端被关闭或失效后重建，
+ * 并随{@link ExecutorsHelper#shutdownAll()}一同关闭。
+ * <p>
+ * 关闭动作弱引用持有者，关闭后仍可重建，因此不注销；已被回收的持有者的关闭动作在创建新持有者时清理，避免累积。
+ */
+class MemcachedClientHolder {
+
+    private final static Logger log = LoggerFactory.getLogger(MemcachedClientHolder.class);
+    private static final Set<ShutdownHook> HOOKS = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final Supplier<MemcachedClientBuilder> builderSupplier;
+    private MemcachedClientBuilder builder;
+    private volatile MemcachedClient client;
+
+    MemcachedClientHolder(Supplier<MemcachedClientBuilder> builderSupplier) {
+        if (builderSupplier == null) throw new NullPointerException("builderSupplier is null.");
+        this.builderSupplier = builderSupplier;
+        for (ShutdownHook h : HOOKS) {
+            if (h.holder.get() == null) h.unregister();
+        }
+        ShutdownHook hook = new ShutdownHook(this);
+        HOOKS.add(hook);
+        ExecutorsHelper.registerShutdownHook(hook);
+    }
+
+    MemcachedClient get() throws IOException {
+        MemcachedClient c = client;
+        if (c == null || c.isShutdown()) {
+            synchronized (this) {
+                c = client;
+                if (c == null || c.isShutdown()) {
+                    if (builder == null) {
+                        builder = builderSupplier.get();
+                    }
+                    c = builder.build();
+                    client = c;
+                    log.debug("memcached client built: {}", c.getName());
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * 丢弃失效的客户端，下次{@link #get()}时重建
+     *
+     * @param broken 失效的客户端
+     */
+    void reset(MemcachedClient broken) {
+        if (broken == null) return;
+        synchronized (this) {
+            if (client == broken) {
+                client = null;
+            }
+        }
+        shutdownQuietly(broken);
+    }
+
+    void shutdown() {
+        MemcachedClient c;
+        synchronized (this) {
+            c = client;
+            client = null;
+        }
+        shutdownQuietly(c);
+    }
+
+    private static void shutdownQuietly(MemcachedClient c) {
+        if (c != null && !c.isShutdown()) {
+            try {
+                c.shutdown();
+            } catch (IOException e) {
+                log.warn("shutdown memcached client failed: {}", e.getLocalizedMessage(), e);
+            }
+        }
+    }
+
+    private static class ShutdownHook implements Runnable {
+        private final WeakReference<MemcachedClientHolder> holder;
+
+        private ShutdownHook(MemcachedClientHolder holder) {
+            this.holder = new WeakReference<>(holder);
+        }
+
+        private void unregister() {
+            HOOKS.remove(this);
+            ExecutorsHelper.unregisterShutdownHook(this);
+        }
+
+        @Override
+        public void run() {
+            MemcachedClientHolder h = holder.get();
+            if (h == null) {
+                unregister();
+            } else {
+                h.shutdown();
+            }
+        }
+    }
+}
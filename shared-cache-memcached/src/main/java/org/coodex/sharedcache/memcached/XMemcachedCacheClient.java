@@ -17,12 +17,15 @@
 package org.coodex.sharedcache.memcached;
 
 import net.rubyeye.xmemcached.MemcachedClient;
+import net.rubyeye.xmemcached.GetsResponse;
 import net.rubyeye.xmemcached.MemcachedClientBuilder;
 import net.rubyeye.xmemcached.exception.MemcachedException;
 import org.coodex.sharedcache.SharedCacheClient;
+import org.coodex.sharedcache.VersionedValue;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.*;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -30,11 +33,15 @@ import java.util.concurrent.TimeoutException;
  */
 public class XMemcachedCacheClient implements SharedCacheClient {
 
-    private MemcachedClientBuilder builder;
+    private final MemcachedClientHolder holder;
     private long max_cached_time;
 
     public XMemcachedCacheClient(MemcachedClientBuilder builder, long max_cached_time) {
-        this.builder = builder;
+        this(new MemcachedClientHolder(() -> builder), max_cached_time);
+    }
+
+    XMemcachedCacheClient(MemcachedClientHolder holder, long max_cached_time) {
+        this.holder = holder;
         this.max_cached_time = max_cached_time;
     }
 
@@ -43,62 +50,183 @@ public class XMemcachedCacheClient implements SharedCacheClient {
     }
 
     protected MemcachedClient getClient() throws IOException, InterruptedException, MemcachedException, TimeoutException {
-        MemcachedClient client = builder.build();
-        return client;
+        return holder.get();
     }
 
-    @Override
-    public <T extends Serializable> T get(String key) {
-        assertKey(key);
-        try {
-            MemcachedClient client = getClient();
+    /**
+     * 使用共享的客户端执行操作；如果客户端已经被关闭，则重建后重试一次
+     */
+    protected <R> R execute(MemcachedCallback<R> callback) {
+        for (int i = 0; ; i++) {
+            MemcachedClient client = null;
             try {
-                return client.get(key);
-            } finally {
-                if (client != null)
-                    client.shutdown();
+                client = getClient();
+                return callback.call(client);
+            } catch (Throwable e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                } else if (i == 0 && client != null && client.isShutdown()) {
+                    holder.reset(client);
+                    continue;
+                }
+                throw new RuntimeException(e.getLocalizedMessage(), e);
             }
-        } catch (Throwable e) {
-            throw new RuntimeException(e.getLocalizedMessage(), e);
         }
     }
 
+    @Override
+    public <T extends Serializable> T get(String key) {
+        assertKey(key);
+        return execute(client -> client.get(key));
+    }
+
+    @Override
+    public long getDefaultMaxCacheTime() {
+        return max_cached_time;
+    }
+
     @Override
     public void put(String key, Serializable value) {
         put(key, value, max_cached_time);
     }
 
+    /**
+     * memcached的过期时间以秒为单位，不足一秒的部分向上取整
+     */
+    private int toIdleTime(long max_cached_time) {
+        if (max_cached_time <= 0) throw new RuntimeException("idleTime must be larger then zero.");
+        return (int) ((max_cached_time + 999) / 1000);
+    }
+
     @Override
     public void put(String key, Serializable value, long max_cached_time) {
         assertKey(key);
-        int idleTime = (int) (max_cached_time / 1000);
-        if (idleTime <= 0) throw new RuntimeException("idleTime must be larger then one second.");
-        try {
-            MemcachedClient client = getClient();
-            try {
-                client.set(key, idleTime, value);
-            } finally {
-                if (client != null)
-                    client.shutdown();
-            }
-        } catch (Throwable e) {
-            throw new RuntimeException(e.getLocalizedMessage(), e);
-        }
+        int idleTime = toIdleTime(max_cached_time);
+        execute(client -> client.set(key, idleTime, value));
     }
 
     @Override
     public void remove(String key) {
         if (key == null) return;
-        try {
-            MemcachedClient client = getClient();
-            try {
-                client.deleteWithNoReply(key);
-            } finally {
-                if (client != null)
-                    client.shutdown();
+        execute(client -> {
+            client.deleteWithNoReply(key);
+            return null;
+        });
+    }
+
+    @Override
+    public <T extends Serializable> Map<String, T> getAll(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) return new HashMap<>();
+        List<String> keyList = new ArrayList<>(new LinkedHashSet<>(keys));
+        keyList.removeIf(Objects::isNull);
+        if (keyList.isEmpty()) return new HashMap<>();
+        // getMulti: 每个节点一次往返
+        Map<String, T> result = execute(client -> client.get(keyList));
+        return result == null ? new HashMap<>() : result;
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values) {
+        putAll(values, max_cached_time);
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values, long max_cached_time) {
+        if (values == null || values.isEmpty()) return;
+        int idleTime = toIdleTime(max_cached_time);
+        for (String key : values.keySet()) {
+            assertKey(key);
+        }
+        // noreply写入，命令在连接上连续发出，不逐个等待响应
+        execute(client -> {
+            for (Map.Entry<String, ? extends Serializable> entry : values.entrySet()) {
+                if (entry.getValue() == null) {
+                    client.deleteWithNoReply(entry.getKey());
+                } else {
+                    client.setWithNoReply(entry.getKey(), idleTime, entry.getValue());
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) return;
+        execute(client -> {
+            for (String key : new LinkedHashSet<>(keys)) {
+                if (key != null) client.deleteWithNoReply(key);
             }
-        } catch (Throwable e) {
-            throw new RuntimeException(e.getLocalizedMessage(), e);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean supportsAtomic() {
+        return true;
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, Serializable value, long max_cached_time) {
+        assertKey(key);
+        if (value == null) throw new NullPointerException("cache value is null.");
+        int idleTime = toIdleTime(max_cached_time);
+        return execute(client -> client.add(key, idleTime, value));
+    }
+
+    @Override
+    public <T extends Serializable> VersionedValue<T> getVersioned(String key) {
+        assertKey(key);
+        GetsResponse<T> response = execute(client -> client.gets(key));
+        return response == null ? null : new VersionedValue<>(response.getValue(), response.getCas());
+    }
+
+    @Override
+    public boolean compareAndSet(String key, long version, Serializable value, long max_cached_time) {
+        assertKey(key);
+        if (value == null) throw new NullPointerException("cache value is null.");
+        int idleTime = toIdleTime(max_cached_time);
+        return execute(client -> client.cas(key, idleTime, value, version));
+    }
+
+    @Override
+    public boolean removeIfEquals(String key, Serializable expected) {
+        assertKey(key);
+        return execute(client -> {
+            GetsResponse<Serializable> response = client.gets(key);
+            return response != null && Objects.equals(response.getValue(), expected) &&
+                    client.delete(key, response.getCas(), client.getOpTimeout());
+        });
+    }
+
+    @Override
+    public long increment(String key, long delta, long max_cached_time) {
+        assertKey(key);
+        int idleTime = toIdleTime(max_cached_time);
+        // 计数器不存在时，服务端直接以init作为结果创建
+        return execute(client -> delta >= 0 ?
+                client.incr(key, delta, delta, client.getOpTimeout(), idleTime) :
+                client.decr(key, -delta, 0, client.getOpTimeout(), idleTime));
+    }
+
+    @Override
+    public <T extends Serializable> T getAndTouch(String key, long max_cached_time) {
+        assertKey(key);
+        if (max_cached_time <= 0) {
+            // 取得后以cas删除，期间被修改时重新读取
+            return execute(client -> {
+                while (true) {
+                    GetsResponse<T> response = client.gets(key);
+                    if (response == null) return null;
+                    if (client.delete(key, response.getCas(), client.getOpTimeout())) return response.getValue();
+                }
+            });
         }
+        int idleTime = toIdleTime(max_cached_time);
+        return execute(client -> client.getAndTouch(key, idleTime));
+    }
+
+    protected interface MemcachedCallback<R> {
+        R call(MemcachedClient client) throws Exception;
     }
 }
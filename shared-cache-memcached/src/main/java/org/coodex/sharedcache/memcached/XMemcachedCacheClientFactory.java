@@ -16,15 +16,19 @@
 
 package org.coodex.sharedcache.memcached;
 
+import net.rubyeye.xmemcached.MemcachedClient;
 import net.rubyeye.xmemcached.MemcachedClientBuilder;
 import net.rubyeye.xmemcached.XMemcachedClientBuilder;
 import net.rubyeye.xmemcached.auth.AuthInfo;
 import net.rubyeye.xmemcached.command.BinaryCommandFactory;
+import net.rubyeye.xmemcached.impl.KetamaMemcachedSessionLocator;
 import net.rubyeye.xmemcached.utils.AddrUtil;
 import org.coodex.config.Config;
+import org.coodex.sharedcache.CacheValueCodecManager;
 import org.coodex.sharedcache.SharedCacheClient;
 import org.coodex.sharedcache.SharedCacheClientFactory;
 import org.coodex.util.Common;
+import org.coodex.util.Singleton;
 
 /**
  * Created by davidoff shen on 2016-11-24.
@@ -32,10 +36,68 @@ import org.coodex.util.Common;
 public class XMemcachedCacheClientFactory implements SharedCacheClientFactory {
     public static final String DRIVER_NAME = "xmemcached";
     public static final String NAMESPACE_XMEMCHACHED = "sharedcache-xmemcached";
+    /**
+     * 按hash取模选择节点，xmemcached默认
+     */
+    public static final String LOCATOR_ARRAY = "array";
+    /**
+     * 带虚拟节点和权重的一致性hash(ketama)
+     */
+    public static final String LOCATOR_KETAMA = "ketama";
 
-    private MemcachedClientBuilder builder;
+    /**
+     * 整个factory共享一个长期存活的MemcachedClient，连接池大小由poolSize决定
+     */
+    private final MemcachedClientHolder holder = new MemcachedClientHolder(XMemcachedCacheClientFactory::newBuilder);
+
+    private final Singleton<XMemcachedCacheClient> client = Singleton.with(
+            () -> new XMemcachedCacheClient(holder,
+                    Config.getValue("defaultMaxCacheTime", DEFAULT_MAX_CACHED_SECONDS, NAMESPACE_XMEMCHACHED) * 1000)
+    );
 //    private Profile_Deprecated profile = Profile_Deprecated.getProfile("sharedcache-xmemcached.properties");
 
+    private static MemcachedClientBuilder newBuilder() {
+        // TODO 完善config接口
+        String serversDefined = Config.get("memcachedServers", NAMESPACE_XMEMCHACHED);
+        if (Common.isBlank(serversDefined)) {
+            // 兼容早期拼写错误的配置项
+            serversDefined = Config.get("memchachedServers", NAMESPACE_XMEMCHACHED);
+        }
+        String[] servers = Common.toArray(serversDefined, " ", (String[]) null);
+        if (servers == null || servers.length == 0)
+            throw new RuntimeException("no memcached server defined.");
+
+
+        int[] weights = new int[servers.length];
+        for (int i = 0; i < servers.length; i++) {
+            weights[i] = Config.getValue("weight." + servers[i], 1, NAMESPACE_XMEMCHACHED);
+        }
+        MemcachedClientBuilder memcachedClientBuilder = new XMemcachedClientBuilder(
+                AddrUtil.getAddresses(serversDefined), weights);
+        if (LOCATOR_KETAMA.equalsIgnoreCase(Config.getValue("sessionLocator", LOCATOR_ARRAY, NAMESPACE_XMEMCHACHED))) {
+            // 一致性hash，节点断开时其key转移到环上相邻节点，重连后恢复
+            memcachedClientBuilder.setSessionLocator(new KetamaMemcachedSessionLocator());
+        }
+        // failureMode为true时节点断开后不转移key，请求直接失败
+        memcachedClientBuilder.setFailureMode(Config.getValue("failureMode", false, NAMESPACE_XMEMCHACHED));
+        memcachedClientBuilder.setCommandFactory(new BinaryCommandFactory());
+        memcachedClientBuilder.setConnectionPoolSize(Config.getValue("poolSize", 1, NAMESPACE_XMEMCHACHED));
+        memcachedClientBuilder.setOpTimeout(Config.getValue("opTimeout", MemcachedClient.DEFAULT_OP_TIMEOUT, NAMESPACE_XMEMCHACHED));
+        // 连接断开后由xmemcached自动重连
+        memcachedClientBuilder.setEnableHealSession(true);
+        memcachedClientBuilder.setTranscoder(new CodecTranscoder(CacheValueCodecManager.getCodec(NAMESPACE_XMEMCHACHED)));
+        memcachedClientBuilder.setHealSessionInterval(Config.getValue("healSessionInterval", 2000L, NAMESPACE_XMEMCHACHED));
+        for (String server : servers) {
+            String username = Config.get("user." + server, NAMESPACE_XMEMCHACHED);
+            if (!Common.isBlank(username)) {
+                String password = Config.get("pwd." + server, NAMESPACE_XMEMCHACHED);
+                memcachedClientBuilder.addAuthInfo(AddrUtil.getOneAddress(server),
+                        AuthInfo.typical(username, password));
+            }
+        }
+        return memcachedClientBuilder;
+    }
+
     @Override
     public boolean isAccepted(String driverName) {
         if (Common.isBlank(driverName)) return false;
@@ -44,34 +106,19 @@ public class XMemcachedCacheClientFactory implements SharedCacheClientFactory {
 
     @Override
     public SharedCacheClient getClientInstance() {
-        init();
-        return new XMemcachedCacheClient(builder,
-                Config.getValue("defaultMaxCacheTime", DEFAULT_MAX_CACHED_SECONDS, NAMESPACE_XMEMCHACHED) * 1000);
+        return client.get();
     }
 
-    private synchronized void init() {
-        if (builder == null) {
-            // TODO 完善config接口
-            String[] servers = Common.toArray(Config.get("memchachedServers", NAMESPACE_XMEMCHACHED), " ", (String[]) null);
-            if (servers == null || servers.length == 0)
-                throw new RuntimeException("no memcached server defined.");
-
-
-            MemcachedClientBuilder memcachedClientBuilder = new XMemcachedClientBuilder(
-                    AddrUtil.getAddresses(Config.get("memcachedServers", NAMESPACE_XMEMCHACHED)));
-            memcachedClientBuilder.setCommandFactory(new BinaryCommandFactory());
-            memcachedClientBuilder.setConnectionPoolSize(Config.getValue("poolSize", 1, NAMESPACE_XMEMCHACHED));
-            for (String server : servers) {
-                String username = Config.get("user." + server, NAMESPACE_XMEMCHACHED);
-                if (!Common.isBlank(username)) {
-                    String password = Config.get("pwd." + server, NAMESPACE_XMEMCHACHED);
-                    memcachedClientBuilder.addAuthInfo(AddrUtil.getOneAddress(server),
-                            AuthInfo.typical(username, password));
-                }
-            }
+    /**
+     * 关闭共享的MemcachedClient，再次使用时会重新建立连接
+     */
+    public void shutdown() {
+        holder.shutdown();
+    }
 
-            builder = memcachedClientBuilder;
-        }
+    @Override
+    public String getNamespace() {
+        return NAMESPACE_XMEMCHACHED;
     }
 
     @Override
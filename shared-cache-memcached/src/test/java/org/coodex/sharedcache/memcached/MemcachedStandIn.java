@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.coodex.sharedcache.memcached;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个仅用于测试的memcached binary protocol替身：只实现缓存客户端用到的命令，不处理过期时间，
+ * 并记录接入的连接数和处理的命令数。
+ */
+class MemcachedStandIn implements Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(MemcachedStandIn.class);
+
+    private static final byte REQUEST = (byte) 0x80;
+    private static final byte RESPONSE = (byte) 0x81;
+
+    private static final int STATUS_OK = 0x0000;
+    private static final int STATUS_NOT_FOUND = 0x0001;
+    private static final int STATUS_EXISTS = 0x0002;
+    private static final int STATUS_NOT_STORED = 0x0005;
+    private static final int STATUS_UNKNOWN_COMMAND = 0x0081;
+
+    private final ServerSocket serverSocket;
+    private final Map<String, Item> items = new ConcurrentHashMap<>();
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger(0);
+    private final AtomicLong commands = new AtomicLong(0);
+    private final AtomicLong casSequence = new AtomicLong(0);
+    private volatile boolean closed = false;
+
+    MemcachedStandIn() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", 0));
+        Thread acceptor = new Thread(this::accept, "memcached-stand-in");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String getAddress() {
+        return "127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return 累计接入的连接数
+     */
+    int getConnections() {
+        return connections.get();
+    }
+
+    long getCommands() {
+        return commands.get();
+    }
+
+    Map<String, Item> getItems() {
+        return items;
+    }
+
+    /**
+     * 断开所有已建立的连接，模拟网络故障
+     */
+    void dropConnections() {
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        sockets.clear();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(serverSocket);
+        dropConnections();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                sockets.add(socket);
+                Thread worker = new Thread(() -> serve(socket), "memcached-stand-in-" + connections.get());
+                worker.setDaemon(true);
+                worker.start();
+            } catch (IOException e) {
+                if (!closed) log.warn("accept failed: {}", e.getLocalizedMessage(), e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            byte[] header = new byte[24];
+            while (!closed) {
+                in.readFully(header);
+                DataInputStream h = new DataInputStream(new ByteArrayInputStream(header));
+                if (h.readByte() != REQUEST) throw new IOException("bad magic");
+                byte opcode = h.readByte();
+                int keyLength = h.readUnsignedShort();
+                int extrasLength = h.readUnsignedByte();
+                h.readByte(); // data type
+                h.readShort(); // vbucket
+                int bodyLength = h.readInt();
+                int opaque = h.readInt();
+                long cas = h.readLong();
+
+                byte[] extras = new byte[extrasLength];
+                in.readFully(extras);
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                byte[] value = new byte[bodyLength - keyLength - extrasLength];
+                in.readFully(value);
+
+                commands.incrementAndGet();
+                if (!handle(opcode, extras, new String(key, StandardCharsets.UTF_8), value, opaque, cas, out)) {
+                    break;
+                }
+                if (in.available() == 0) out.flush();
+            }
+        } catch (IOException ignored) {
+        } finally {
+            sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private boolean handle(byte opcode, byte[] extras, String key, byte[] value, int opaque, long cas,
+                           DataOutputStream out) throws IOException {
+        switch (opcode) {
+            case 0x00: // get
+            case 0x09: // getq
+            case 0x0c: // getk
+            case 0x0d: // getkq
+                get(opcode, key, opaque, out, opcode == 0x09 || opcode == 0x0d, opcode == 0x0c || opcode == 0x0d);
+                return true;
+            case 0x1d: // gat
+            case 0x1e: // gatq
+                get(opcode, key, opaque, out, opcode == 0x1e, false);
+                return true;
+            case 0x1c: { // touch
+                boolean found = items.containsKey(key);
+                respond(out, opcode, found ? STATUS_OK : STATUS_NOT_FOUND, opaque, 0, null, null, null);
+                return true;
+            }
+            case 0x01: // set
+            case 0x02: // add
+            case 0x03: // replace
+            case 0x11: // setq
+            case 0x12: // addq
+            case 0x13: // replaceq
+                store(opcode, extras, key, value, opaque, cas, out);
+                return true;
+            case 0x04: // delete
+            case 0x14: { // deleteq
+                int status;
+                synchronized (items) {
+                    Item current = items.get(key);
+                    if (current == null) {
+                        status = STATUS_NOT_FOUND;
+                    } else if (cas != 0 && current.cas != cas) {
+                        status = STATUS_EXISTS;
+                    } else {
+                        items.remove(key);
+                        status = STATUS_OK;
+                    }
+                }
+                if (opcode == 0x04 || status != STATUS_OK)
+                    respond(out, opcode, status, opaque, 0, null, null, null);
+                return true;
+            }
+            case 0x05: // incr
+            case 0x06: // decr
+            case 0x15: // incrq
+            case 0x16: // decrq
+                arithmetic(opcode, extras, key, opaque, out);
+                return true;
+            case 0x07: // quit
+            case 0x17: // quitq
+                return false;
+            case 0x0a: // noop
+                respond(out, opcode, STATUS_OK, opaque, 0, null, null, null);
+                return true;
+            case 0x0b: // version
+                respond(out, opcode, STATUS_OK, opaque, 0, null, null, "1.6.0".getBytes(StandardCharsets.UTF_8));
+                return true;
+            default:
+                respond(out, opcode, STATUS_UNKNOWN_COMMAND, opaque, 0, null, null, null);
+                return true;
+        }
+    }
+
+    private void get(byte opcode, String key, int opaque, DataOutputStream out, boolean quiet, boolean withKey)
+            throws IOException {
+        Item item = items.get(key);
+        byte[] keyBytes = withKey ? key.getBytes(StandardCharsets.UTF_8) : null;
+        if (item == null) {
+            if (!quiet) respond(out, opcode, STATUS_NOT_FOUND, opaque, 0, null, keyBytes, null);
+        } else {
+            respond(out, opcode, STATUS_OK, opaque, item.cas, intBytes(item.flags), keyBytes, item.value);
+        }
+    }
+
+    private void store(byte opcode, byte[] extras, String key, byte[] value, int opaque, long cas,
+                       DataOutputStream out) throws IOException {
+        int flags = new DataInputStream(new ByteArrayInputStream(extras)).readInt();
+        boolean quiet = opcode >= 0x11;
+        int status = STATUS_OK;
+        Item stored = null;
+        synchronized (items) {
+            Item current = items.get(key);
+            if ((opcode == 0x02 || opcode == 0x12) && current != null) {
+                status = STATUS_EXISTS;
+            } else if ((opcode == 0x03 || opcode == 0x13) && current == null) {
+                status = STATUS_NOT_FOUND;
+            } else if (cas != 0 && (current == null || current.cas != cas)) {
+                status = current == null ? STATUS_NOT_FOUND : STATUS_EXISTS;
+            } else {
+                stored = new Item(flags, value, casSequence.incrementAndGet());
+                items.put(key, stored);
+            }
+        }
+        if (!quiet || status != STATUS_OK)
+            respond(out, opcode, status, opaque, stored == null ? 0 : stored.cas, null, null, null);
+    }
+
+    private void arithmetic(byte opcode, byte[] extras, String key, int opaque, DataOutputStream out)
+            throws IOException {
+        DataInputStream e = new DataInputStream(new ByteArrayInputStream(extras));
+        long delta = e.readLong();
+        long initial = e.readLong();
+        int expiration = e.readInt();
+        boolean quiet = opcode == 0x15 || opcode == 0x16;
+        boolean increment = opcode == 0x05 || opcode == 0x15;
+        long result;
+        Item stored;
+        synchronized (items) {
+            Item current = items.get(key);
+            if (current == null) {
+                if (expiration == -1) {
+                    respond(out, opcode, STATUS_NOT_FOUND, opaque, 0, null, null, null);
+                    return;
+                }
+                result = initial;
+            } else {
+                long v;
+                try {
+                    v = Long.parseLong(new String(current.value, StandardCharsets.US_ASCII).trim());
+                } catch (NumberFormatException ex) {
+                    respond(out, opcode, STATUS_NOT_STORED, opaque, 0, null, null, null);
+                    return;
+                }
+                result = increment ? v + delta : Math.max(0, v - delta);
+            }
+            stored = new Item(0, Long.toString(result).getBytes(StandardCharsets.US_ASCII),
+                    casSequence.incrementAndGet());
+            items.put(key, stored);
+        }
+        if (!quiet) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            new DataOutputStream(bos).writeLong(result);
+            respond(out, opcode, STATUS_OK, opaque, stored.cas, null, null, bos.toByteArray());
+        }
+    }
+
+    private static byte[] intBytes(int i) {
+        return new byte[]{(byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i};
+    }
+
+    private static void respond(DataOutputStream out, byte opcode, int status, int opaque, long cas,
+                                byte[] extras, byte[] key, byte[] value) throws IOException {
+        int extrasLength = extras == null ? 0 : extras.length;
+        int keyLength = key == null ? 0 : key.length;
+        int valueLength = value == null ? 0 : value.length;
+        out.writeByte(RESPONSE);
+        out.writeByte(opcode);
+        out.writeShort(keyLength);
+        out.writeByte(extrasLength);
+        out.writeByte(0);
+        out.writeShort(status);
+        out.writeInt(extrasLength + keyLength + valueLength);
+        out.writeInt(opaque);
+        out.writeLong(cas);
+        if (extras != null) out.write(extras);
+        if (key != null) out.write(key);
+        if (value != null) out.write(value);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    static class Item {
+        final int flags;
+        final byte[] value;
+        final long cas;
+
+        Item(int flags, byte[] value, long cas) {
+            this.flags = flags;
+            this.value = value;
+            this.cas = cas;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.coodex.sharedcache.memcached;
+
+import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.sharedcache.AsyncSharedCacheClient;
+import org.coodex.sharedcache.SharedCacheClient;
+import org.coodex.sharedcache.VersionedValue;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class XMemcachedCacheClientTest {
+
+    private static final int POOL_SIZE = 2;
+
+    private static MemcachedStandIn standIn;
+    private static XMemcachedCacheClientFactory factory;
+
+    @BeforeClass
+    public static void startUp() throws Exception {
+        standIn = new MemcachedStandIn();
+        System.setProperty("memcachedServers", standIn.getAddress());
+        System.setProperty("poolSize", String.valueOf(POOL_SIZE));
+        System.setProperty("opTimeout", "1000");
+        System.setProperty("healSessionInterval", "200");
+        factory = new XMemcachedCacheClientFactory();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        factory.shutdown();
+        standIn.close();
+        System.clearProperty("memcachedServers");
+        System.clearProperty("poolSize");
+        System.clearProperty("opTimeout");
+        System.clearProperty("healSessionInterval");
+    }
+
+    @Before
+    public void reset() {
+        factory.shutdown();
+    }
+
+    @Test
+    public void connectionsAreReused() {
+        int before = standIn.getConnections();
+        SharedCacheClient client = factory.getClientInstance();
+        for (int i = 0; i < 200; i++) {
+            String key = "key-" + i;
+            client.put(key, "value-" + i);
+            assertEquals("value-" + i, client.get(key));
+            client.remove(key);
+        }
+        assertNull(client.get("key-0"));
+        assertSame(client, factory.getClientInstance());
+        assertEquals(POOL_SIZE, standIn.getConnections() - before);
+    }
+
+    @Test
+    public void batchOperations() throws InterruptedException {
+        SharedCacheClient client = factory.getClientInstance();
+        Map<String, Serializable> values = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            values.put("batch-" + i, i);
+        }
+        client.putAll(values, 10000);
+
+        // noreply写入，可能落在连接池的另一个连接上
+        Map<String, Integer> result = client.getAll(values.keySet());
+        long deadline = System.currentTimeMillis() + 2000;
+        while (result.size() < values.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            result = client.getAll(values.keySet());
+        }
+        assertEquals(values, new HashMap<>(result));
+
+        client.removeAll(values.keySet());
+        deadline = System.currentTimeMillis() + 2000;
+        while (!result.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            result = client.getAll(values.keySet());
+        }
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void asyncOperations() throws Exception {
+        AsyncSharedCacheClient async = factory.newAsyncClient();
+        Map<String, Integer> values = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            values.put("async-" + i, i);
+        }
+        async.putAllAsync(values, 10000).get();
+        // noreply写入，可能落在连接池的另一个连接上
+        Map<String, Integer> result = async.<Integer>getAllAsync(values.keySet()).get();
+        for (int i = 0; i < 20 && result.size() < values.size(); i++) {
+            Thread.sleep(20);
+            result = async.<Integer>getAllAsync(values.keySet()).get();
+        }
+        assertEquals(values, result);
+        assertEquals(Integer.valueOf(3), async.<Integer>getAsync("async-3").get());
+        async.removeAllAsync(values.keySet()).get();
+    }
+
+    @Test
+    public void atomicOperations() {
+        SharedCacheClient client = factory.getClientInstance();
+        assertTrue(client.putIfAbsent("atomic", "first", 10000));
+        assertFalse(client.putIfAbsent("atomic", "second", 10000));
+
+        VersionedValue<String> versioned = client.getVersioned("atomic");
+        assertEquals("first", versioned.getValue());
+        assertTrue(client.compareAndSet("atomic", versioned.getVersion(), "third", 10000));
+        assertFalse(client.compareAndSet("atomic", versioned.getVersion(), "fourth", 10000));
+        assertEquals("third", client.getAndTouch("atomic", 10000));
+        assertNull(client.getVersioned("missing"));
+
+        assertEquals(5, client.increment("counter", 5, 10000));
+        assertEquals(7, client.increment("counter", 2, 10000));
+        assertEquals(4, client.increment("counter", -3, 10000));
+        assertEquals(4, client.increment("counter", 0, 10000));
+        assertFalse(client.removeIfEquals("atomic", "first"));
+        assertTrue(client.removeIfEquals("atomic", "third"));
+        assertNull(client.get("atomic"));
+        client.remove("atomic");
+        client.remove("counter");
+    }
+
+    @Test
+    public void subSecondAndZeroTime() {
+        SharedCacheClient client = factory.getClientInstance();
+        assertTrue(client.putIfAbsent("short", "lock", 500));
+        assertFalse(client.putIfAbsent("short", "other", 500));
+        assertEquals("lock", client.getAndTouch("short", 0));
+        assertNull(client.get("short"));
+        assertNull(client.getAndTouch("short", 0));
+    }
+
+    /**
+     * 连接池中的连接异步建立，首个连接可用时其余连接可能尚未建立
+     */
+    private static int awaitConnections(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (standIn.getConnections() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return standIn.getConnections();
+    }
+
+    @Test
+    public void rebuiltAfterShutdownAll() throws InterruptedException {
+        int before = standIn.getConnections();
+        SharedCacheClient client = factory.getClientInstance();
+        client.put("shutdown", "before");
+        assertEquals(before + POOL_SIZE, awaitConnections(before + POOL_SIZE));
+
+        ExecutorsHelper.shutdownAll();
+
+        assertEquals("before", client.get("shutdown"));
+        assertEquals(before + 2 * POOL_SIZE, awaitConnections(before + 2 * POOL_SIZE));
+    }
+
+    @Test
+    public void reconnectAfterConnectionLost() throws InterruptedException {
+        SharedCacheClient client = factory.getClientInstance();
+        client.put("lost", "value");
+
+        standIn.dropConnections();
+
+        String value = null;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (value == null && System.currentTimeMillis() < deadline) {
+            try {
+                value = client.get("lost");
+            } catch (RuntimeException e) {
+                Thread.sleep(100);
+            }
+        }
+        assertEquals("value", value);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步的共享缓存客户端，回调在{@link SharedCacheClientManager#getAsyncCallbackExecutor()}中执行
+ */
+public interface AsyncSharedCacheClient {
+
+    <T extends Serializable> CompletableFuture<T> getAsync(String key);
+
+    /**
+     * 使用驱动的默认缓存时长写入
+     */
+    CompletableFuture<Void> putAsync(String key, Serializable value);
+
+    CompletableFuture<Void> putAsync(String key, Serializable value, long max_cached_time);
+
+    CompletableFuture<Void> removeAsync(String key);
+
+    /**
+     * @return 仅包含命中的key
+     */
+    <T extends Serializable> CompletableFuture<Map<String, T>> getAllAsync(Collection<String> keys);
+
+    CompletableFuture<Void> putAllAsync(Map<String, ? extends Serializable> values);
+
+    CompletableFuture<Void> putAllAsync(Map<String, ? extends Serializable> values, long max_cached_time);
+
+    CompletableFuture<Void> removeAllAsync(Collection<String> keys);
+
+    /**
+     * @return 以当前异步客户端实现的同步客户端
+     */
+    default SharedCacheClient sync() {
+        return new SyncSharedCacheClient(this);
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.util.Common;
+import org.coodex.util.Singleton;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 自动合并请求的异步客户端：请求进入队列，由一个分发任务依次取出，
+ * 将连续的同类请求合并为一次{@link SharedCacheClient#getAll(Collection)}、
+ * {@link SharedCacheClient#putAll(Map, long)}、{@link SharedCacheClient#removeAll(Collection)}，
+ * 借助驱动的批量操作(redis pipeline、memcached getMulti/noreply)减少往返。
+ * <p>
+ * 同一客户端的请求按提交顺序执行；上一批请求执行期间到达的请求组成下一批。
+ */
+public class BatchingAsyncSharedCacheClient implements AsyncSharedCacheClient {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+    private static final Singleton<ExecutorService> DISPATCHER = Singleton.with(
+            () -> ExecutorsHelper.newCachedThreadPool("sharedcache-async-dispatcher"));
+
+    private static final int GET = 0;
+    private static final int PUT = 1;
+    private static final int REMOVE = 2;
+    private static final long DEFAULT_TTL = -1;
+
+    private final SharedCacheClient client;
+    private final Executor callbackExecutor;
+    private final int maxBatchSize;
+    private final Queue<Op> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    public BatchingAsyncSharedCacheClient(SharedCacheClient client) {
+        this(client, SharedCacheClientManager.getAsyncCallbackExecutor(), DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public BatchingAsyncSharedCacheClient(SharedCacheClient client, Executor callbackExecutor, int maxBatchSize) {
+        if (client == null) throw new NullPointerException("client is null.");
+        this.client = client;
+        this.callbackExecutor = callbackExecutor;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    private <T> CompletableFuture<T> submit(Op op, CompletableFuture<T> future) {
+        queue.offer(op);
+        scheduleDrain();
+        return future;
+    }
+
+    private CompletableFuture<Void> submit(VoidOp op) {
+        return submit(op, op.future);
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                DISPATCHER.get().execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                failAll(e);
+            }
+        }
+    }
+
+    private void failAll(Throwable th) {
+        Op op;
+        while ((op = queue.poll()) != null) {
+            op.fail(th);
+        }
+    }
+
+    private void drain() {
+        try {
+            List<Op> batch = new ArrayList<>();
+            Op op;
+            while (true) {
+                while (batch.size() < maxBatchSize && (op = queue.poll()) != null) {
+                    batch.add(op);
+                }
+                if (batch.isEmpty()) break;
+                execute(batch);
+                batch.clear();
+            }
+        } finally {
+            draining.set(false);
+        }
+        // 释放标记与入队之间可能有新请求
+        if (!queue.isEmpty()) scheduleDrain();
+    }
+
+    private void execute(List<Op> batch) {
+        for (int i = 0; i < batch.size(); ) {
+            Op first = batch.get(i);
+            int j = i + 1;
+            while (j < batch.size() && batch.get(j).type == first.type && batch.get(j).ttl == first.ttl) j++;
+            List<Op> run = batch.subList(i, j);
+            try {
+                executeRun(first.type, first.ttl, run);
+            } catch (Throwable th) {
+                for (Op op : run) {
+                    op.fail(th);
+                }
+            }
+            i = j;
+        }
+    }
+
+    private void executeRun(int type, long ttl, List<Op> run) {
+        switch (type) {
+            case GET: {
+                Set<String> keys = new LinkedHashSet<>();
+                for (Op op : run) {
+                    keys.addAll(op.keys);
+                }
+                Map<String, Serializable> result = client.getAll(keys);
+                for (Op op : run) {
+                    op.complete(result);
+                }
+                break;
+            }
+            case PUT: {
+                Map<String, Serializable> values = new LinkedHashMap<>();
+                for (Op op : run) {
+                    values.putAll(op.values);
+                }
+                if (ttl == DEFAULT_TTL) {
+                    client.putAll(values);
+                } else {
+                    client.putAll(values, ttl);
+                }
+                for (Op op : run) {
+                    op.complete(null);
+                }
+                break;
+            }
+            default: {
+                Set<String> keys = new LinkedHashSet<>();
+                for (Op op : run) {
+                    keys.addAll(op.keys);
+                }
+                client.removeAll(keys);
+                for (Op op : run) {
+                    op.complete(null);
+                }
+            }
+        }
+    }
+
+    private <T> void completeAsync(CompletableFuture<T> future, T value, Throwable th) {
+        Runnable completion = th == null ? () -> future.complete(value) : () -> future.completeExceptionally(th);
+        try {
+            callbackExecutor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            completion.run();
+        }
+    }
+
+    private static void assertKey(String key) {
+        if (key == null) throw new NullPointerException("cache key is null.");
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<T> getAsync(String key) {
+        assertKey(key);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        return submit(new Op(GET, DEFAULT_TTL, Collections.singleton(key), null) {
+            @Override
+            void complete(Map<String, Serializable> result) {
+                completeAsync(future, Common.cast(result.get(key)), null);
+            }
+
+            @Override
+            void fail(Throwable th) {
+                completeAsync(future, null, th);
+            }
+        }, future);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, Serializable value) {
+        assertKey(key);
+        return putAllAsync(Collections.singletonMap(key, value));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, Serializable value, long max_cached_time) {
+        assertKey(key);
+        return putAllAsync(Collections.singletonMap(key, value), max_cached_time);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAsync(String key) {
+        assertKey(key);
+        return removeAllAsync(Collections.singleton(key));
+    }
+
+    @Override
+    public <T extends Serializable> CompletableFuture<Map<String, T>> getAllAsync(Collection<String> keys) {
+        CompletableFuture<Map<String, T>> future = new CompletableFuture<>();
+        Set<String> keySet = keys == null ? Collections.emptySet() : new LinkedHashSet<>(keys);
+        keySet.remove(null);
+        if (keySet.isEmpty()) {
+            future.complete(new HashMap<>());
+            return future;
+        }
+        return submit(new Op(GET, DEFAULT_TTL, keySet, null) {
+            @Override
+            void complete(Map<String, Serializable> result) {
+                Map<String, T> values = new HashMap<>();
+                for (String key : keySet) {
+                    Serializable value = result.get(key);
+                    if (value != null) values.put(key, Common.cast(value));
+                }
+                completeAsync(future, values, null);
+            }
+
+            @Override
+            void fail(Throwable th) {
+                completeAsync(future, null, th);
+            }
+        }, future);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAllAsync(Map<String, ? extends Serializable> values) {
+        return putAll(values, DEFAULT_TTL);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAllAsync(Map<String, ? extends Serializable> values, long max_cached_time) {
+        return putAll(values, Math.max(0, max_cached_time));
+    }
+
+    private CompletableFuture<Void> putAll(Map<String, ? extends Serializable> values, long ttl) {
+        if (values == null || values.isEmpty()) return CompletableFuture.completedFuture(null);
+        for (String key : values.keySet()) {
+            assertKey(key);
+        }
+        return submit(new VoidOp(PUT, ttl, null, new LinkedHashMap<>(values)));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAllAsync(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) return CompletableFuture.completedFuture(null);
+        Set<String> keySet = new LinkedHashSet<>(keys);
+        keySet.remove(null);
+        return submit(new VoidOp(REMOVE, DEFAULT_TTL, keySet, null));
+    }
+
+    private abstract static class Op {
+        final int type;
+        final long ttl;
+        final Collection<String> keys;
+        final Map<String, ? extends Serializable> values;
+
+        Op(int type, long ttl, Collection<String> keys, Map<String, ? extends Serializable> values) {
+            this.type = type;
+            this.ttl = ttl;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        abstract void complete(Map<String, Serializable> result);
+
+        abstract void fail(Throwable th);
+    }
+
+    private class VoidOp extends Op {
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        VoidOp(int type, long ttl, Collection<String> keys, Map<String, ? extends Serializable> values) {
+            super(type, ttl, keys, values);
+        }
+
+        @Override
+        void complete(Map<String, Serializable> result) {
+            completeAsync(future, null, null);
+        }
+
+        @Override
+        void fail(Throwable th) {
+            completeAsync(future, null, th);
+        }
+    }
+}
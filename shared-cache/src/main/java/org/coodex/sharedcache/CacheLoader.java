@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.coodex.util.Common;
+import org.coodex.util.UUIDHelper;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * getOrLoad的实现：进程内同一客户端、同一key只有一个加载者(single-flight)；
+ * 可选跨节点加载锁(仅当客户端{@link SharedCacheClient#supportsAtomic()}时)；按XFetch(Vattani et al., Optimal Probabilistic Cache Stampede Prevention)在过期前概率性提前刷新。
+ * <p>
+ * 缓存对象原样写入key，加载耗时写入同有效期的key + ":xfetch"，过期时间由剩余缓存时长得出
+ */
+final class CacheLoader {
+
+    private static final ConcurrentHashMap<FlightKey, CompletableFuture<Object>> FLIGHTS = new ConcurrentHashMap<>();
+    private static final String LOCK_SUFFIX = ".loading";
+    private static final String XFETCH_SUFFIX = ":xfetch";
+    /**
+     * 由剩余缓存时长得出的过期时间存在误差，超出此范围才认为已被其他节点刷新
+     */
+    private static final long EXPIRE_TOLERANCE = 1000;
+
+    private CacheLoader() {
+    }
+
+    static <T extends Serializable> T getOrLoad(SharedCacheClient client, String key, Supplier<T> loader,
+                                                long max_cached_time, LoadOptions options) {
+        if (key == null) throw new NullPointerException("cache key is null.");
+        if (loader == null) throw new NullPointerException("loader is null.");
+        LoadOptions loadOptions = options == null ? LoadOptions.DEFAULT : options;
+        Loaded<T> cached = read(client, key);
+        FlightKey flightKey = new FlightKey(client, key);
+        if (cached == null) {
+            return fly(flightKey, () -> load(client, key, loader, max_cached_time, loadOptions, null), true);
+        }
+        if (!shouldRefreshEarly(cached, loadOptions.getBeta())) return cached.value;
+        // 提前刷新只需要一个加载者，其他调用者继续使用当前值
+        T refreshed = fly(flightKey, () -> load(client, key, loader, max_cached_time, loadOptions, cached), false);
+        return refreshed == null ? cached.value : refreshed;
+    }
+
+    /**
+     * 一次读取缓存对象、加载耗时及剩余缓存时长
+     *
+     * @return 不存在时返回null
+     */
+    private static <T extends Serializable> Loaded<T> read(SharedCacheClient client, String key) {
+        String xfetchKey = key + XFETCH_SUFFIX;
+        Map<String, TimedValue<Serializable>> values = client.getAllWithTimeToLive(Arrays.asList(key, xfetchKey));
+        TimedValue<Serializable> value = values.get(key);
+        if (value == null) return null;
+        TimedValue<Serializable> xfetch = values.get(xfetchKey);
+        // 非getOrLoad写入的值、驱动无法提供剩余缓存时长时不提前刷新
+        if (xfetch == null || !(xfetch.getValue() instanceof Long) || value.getTimeToLive() < 0) {
+            return new Loaded<>(Common.cast(value.getValue()), 0, Long.MAX_VALUE);
+        }
+        return new Loaded<>(Common.cast(value.getValue()), (Long) xfetch.getValue(),
+                System.currentTimeMillis() + value.getTimeToLive());
+    }
+
+    private static boolean shouldRefreshEarly(Loaded<?> loaded, double beta) {
+        if (beta <= 0 || loaded.expireAt == Long.MAX_VALUE) return false;
+        double random = ThreadLocalRandom.current().nextDouble();
+        return System.currentTimeMillis() - loaded.delta * beta * Math.log(random) >= loaded.expireAt;
+    }
+
+    /**
+     * @param join 已有加载者时，是否等待其结果；否则返回null
+     */
+    private static <T> T fly(FlightKey flightKey, Supplier<T> supplier, boolean join) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = FLIGHTS.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            if (!join) return null;
+            try {
+                return Common.cast(existing.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            T value = supplier.get();
+            flight.complete(value);
+            return value;
+        } catch (Throwable th) {
+            flight.completeExceptionally(th);
+            throw th;
+        } finally {
+            FLIGHTS.remove(flightKey, flight);
+        }
+    }
+
+    private static <T extends Serializable> T load(SharedCacheClient client, String key, Supplier<T> loader,
+                                                   long max_cached_time, LoadOptions options, Loaded<T> stale) {
+        if (options.getLockTime() <= 0 || !client.supportsAtomic())
+            return loadAndPut(client, key, loader, max_cached_time);
+
+        String lockKey = key + LOCK_SUFFIX;
+        String token = UUIDHelper.getUUIDString();
+        if (client.putIfAbsent(lockKey, token, options.getLockTime())) {
+            try {
+                // 取得锁之前其他节点可能已完成加载
+                Loaded<T> cached = read(client, key);
+                if (cached != null && !isStale(cached, stale)) return cached.value;
+                return loadAndPut(client, key, loader, max_cached_time);
+            } finally {
+                // 锁可能已超时并被其他节点取得，只释放自己持有的锁
+                client.removeIfEquals(lockKey, token);
+            }
+        }
+        // 其他节点正在加载
+        if (stale != null) return stale.value;
+        long deadline = System.currentTimeMillis() + options.getLockTime();
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(options.getLockWaitInterval());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            T cached = client.get(key);
+            if (cached != null) return cached;
+        }
+        // 加载锁超时，自行加载
+        return loadAndPut(client, key, loader, max_cached_time);
+    }
+
+    private static boolean isStale(Loaded<?> cached, Loaded<?> stale) {
+        return stale != null && cached.expireAt <= stale.expireAt + EXPIRE_TOLERANCE;
+    }
+
+    private static <T extends Serializable> T loadAndPut(SharedCacheClient client, String key, Supplier<T> loader,
+                                                         long max_cached_time) {
+        long start = System.currentTimeMillis();
+        T value = loader.get();
+        if (value != null) {
+            Map<String, Serializable> values = new HashMap<>();
+            values.put(key, value);
+            values.put(key + XFETCH_SUFFIX, System.currentTimeMillis() - start);
+            client.putAll(values, max_cached_time);
+        }
+        return value;
+    }
+
+    /**
+     * 读取到的缓存对象，记录加载耗时和过期时间用于提前刷新
+     */
+    private static final class Loaded<T extends Serializable> {
+        private final T value;
+        private final long delta;
+        private final long expireAt;
+
+        Loaded(T value, long delta, long expireAt) {
+            this.value = value;
+            this.delta = delta;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static final class FlightKey {
+        private final SharedCacheClient client;
+        private final String key;
+
+        FlightKey(SharedCacheClient client, String key) {
+            this.client = client;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FlightKey)) return false;
+            FlightKey flightKey = (FlightKey) o;
+            return client == flightKey.client && key.equals(flightKey.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(client), key);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.coodex.util.SelectableService;
+
+import java.io.Serializable;
+
+/**
+ * 缓存值的编解码器，通过namespace中的codec配置选择，参见{@link CacheValueCodecManager}
+ */
+public interface CacheValueCodec extends SelectableService<String> {
+
+    /**
+     * @param value 缓存对象，非null
+     * @return 写入缓存服务端的数据
+     */
+    byte[] encode(Serializable value);
+
+    /**
+     * @param buff 缓存服务端的数据，可能是其他编解码器写入的
+     * @param <T>  缓存对象类型
+     * @return buff为null时返回null
+     */
+    <T extends Serializable> T decode(byte[] buff);
+}
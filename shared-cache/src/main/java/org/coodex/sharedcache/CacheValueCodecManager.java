@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.coodex.config.Config;
+import org.coodex.util.LazySelectableServiceLoader;
+
+/**
+ * 缓存值编解码器的选择
+ * <p>
+ * 在各驱动的namespace中配置codec，默认为compact，可选java；也可以通过SPI扩展
+ */
+public class CacheValueCodecManager {
+
+    public static final String DEFAULT_CODEC = CompactCacheValueCodec.NAME;
+
+    private static final LazySelectableServiceLoader<String, CacheValueCodec> CODEC_LOADER =
+            new LazySelectableServiceLoader<String, CacheValueCodec>(new CompactCacheValueCodec()) {
+            };
+
+    public static CacheValueCodec getCodec(String namespace) {
+        String codecName = Config.getValue("codec", DEFAULT_CODEC, namespace);
+        CacheValueCodec codec = CODEC_LOADER.select(codecName);
+        if (codec == null) throw new RuntimeException("cache value codec not found: " + codecName);
+        return codec;
+    }
+}
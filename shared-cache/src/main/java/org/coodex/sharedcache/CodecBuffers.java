@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 编解码时线程复用的缓冲区及压缩器，避免每次编码都分配流和数组
+ */
+final class CodecBuffers {
+
+    private static final int INITIAL_CAPACITY = 512;
+    /**
+     * 超过此大小的缓冲区用完后不再保留，避免个别大对象长期占用线程内存
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<CodecBuffers> BUFFERS = ThreadLocal.withInitial(CodecBuffers::new);
+
+    final Buffer body = new Buffer();
+    final Buffer output = new Buffer();
+    private Deflater deflater;
+    private Inflater inflater;
+    private boolean inUse = false;
+
+    static CodecBuffers acquire() {
+        CodecBuffers buffers = BUFFERS.get();
+        // 重入时(例如对象的writeObject中又使用了缓存)使用临时的缓冲区
+        if (buffers.inUse) return new CodecBuffers();
+        buffers.inUse = true;
+        return buffers;
+    }
+
+    void release() {
+        body.recycle();
+        output.recycle();
+        inUse = false;
+    }
+
+    Deflater deflater() {
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        } else {
+            deflater.reset();
+        }
+        return deflater;
+    }
+
+    Inflater inflater() {
+        if (inflater == null) {
+            inflater = new Inflater();
+        } else {
+            inflater.reset();
+        }
+        return inflater;
+    }
+
+    static final class Buffer extends OutputStream {
+        byte[] buf = new byte[INITIAL_CAPACITY];
+        int size = 0;
+
+        void ensureCapacity(int required) {
+            if (required > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, required));
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(size + 1);
+            buf[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(size + len);
+            System.arraycopy(b, off, buf, size, len);
+            size += len;
+        }
+
+        void writeVarLong(long l) {
+            ensureCapacity(size + 10);
+            while ((l & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((l & 0x7F) | 0x80);
+                l >>>= 7;
+            }
+            buf[size++] = (byte) l;
+        }
+
+        void writeFixed(long l, int bytes) {
+            ensureCapacity(size + bytes);
+            for (int i = bytes - 1; i >= 0; i--) {
+                buf[size++] = (byte) (l >>> (i << 3));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        private void recycle() {
+            size = 0;
+            if (buf.length > MAX_RETAINED_CAPACITY) buf = new byte[INITIAL_CAPACITY];
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.coodex.config.Config;
+import org.coodex.util.Common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑编码：常用的基础类型直接按类型标记+值编码，不写类描述；其他对象仍使用java序列化。
+ * <p>
+ * 格式：首字节为格式头
+ * <ul>
+ * <li>0xAC：旧版本写入的java序列化数据(java序列化流的魔数首字节)</li>
+ * <li>0x01：紧凑格式，之后为类型标记和值</li>
+ * <li>0x02：压缩的紧凑格式，之后为原始长度(varint)和deflate数据</li>
+ * </ul>
+ * 超过compressThreshold(sharedcache命名空间，默认4096字节，小于等于0不压缩)的数据进行deflate压缩，压缩后不变小则不压缩
+ */
+public class CompactCacheValueCodec implements CacheValueCodec {
+
+    public static final String NAME = "compact";
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 4096;
+
+    static final int HEADER_JAVA_SERIALIZATION = 0xAC;
+    static final int HEADER_COMPACT = 0x01;
+    static final int HEADER_COMPACT_DEFLATED = 0x02;
+
+    private static final int TAG_STRING = 0x10;
+    private static final int TAG_INTEGER = 0x11;
+    private static final int TAG_LONG = 0x12;
+    private static final int TAG_TRUE = 0x13;
+    private static final int TAG_FALSE = 0x14;
+    private static final int TAG_DOUBLE = 0x15;
+    private static final int TAG_FLOAT = 0x16;
+    private static final int TAG_SHORT = 0x17;
+    private static final int TAG_BYTE = 0x18;
+    private static final int TAG_CHARACTER = 0x19;
+    private static final int TAG_BYTES = 0x1A;
+    private static final int TAG_DATE = 0x1B;
+    private static final int TAG_BIG_INTEGER = 0x1C;
+    private static final int TAG_BIG_DECIMAL = 0x1D;
+    private static final int TAG_OBJECT = 0x7F;
+
+    private final int compressThreshold;
+
+    public CompactCacheValueCodec() {
+        this(Config.getValue("compressThreshold", DEFAULT_COMPRESS_THRESHOLD,
+                SharedCacheClientManager.NAMESPACE_SHARED_CACHE));
+    }
+
+    public CompactCacheValueCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    private static long zigZag(long l) {
+        return (l << 1) ^ (l >> 63);
+    }
+
+    private static long unZigZag(long l) {
+        return (l >>> 1) ^ -(l & 1);
+    }
+
+    private static void writeBytes(CodecBuffers.Buffer body, byte[] bytes) {
+        body.writeVarLong(bytes.length);
+        body.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeValue(CodecBuffers.Buffer body, Serializable value) throws IOException {
+        Class<?> c = value.getClass();
+        if (c == String.class) {
+            body.write(TAG_STRING);
+            writeBytes(body, ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (c == Integer.class) {
+            body.write(TAG_INTEGER);
+            body.writeVarLong(zigZag((Integer) value));
+        } else if (c == Long.class) {
+            body.write(TAG_LONG);
+            body.writeVarLong(zigZag((Long) value));
+        } else if (c == Boolean.class) {
+            body.write((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (c == Double.class) {
+            body.write(TAG_DOUBLE);
+            body.writeFixed(Double.doubleToRawLongBits((Double) value), 8);
+        } else if (c == Float.class) {
+            body.write(TAG_FLOAT);
+            body.writeFixed(Float.floatToRawIntBits((Float) value), 4);
+        } else if (c == Short.class) {
+            body.write(TAG_SHORT);
+            body.writeVarLong(zigZag((Short) value));
+        } else if (c == Byte.class) {
+            body.write(TAG_BYTE);
+            body.write((Byte) value);
+        } else if (c == Character.class) {
+            body.write(TAG_CHARACTER);
+            body.writeVarLong((Character) value);
+        } else if (c == byte[].class) {
+            body.write(TAG_BYTES);
+            writeBytes(body, (byte[]) value);
+        } else if (c == Date.class) {
+            body.write(TAG_DATE);
+            body.writeVarLong(zigZag(((Date) value).getTime()));
+        } else if (c == BigInteger.class) {
+            body.write(TAG_BIG_INTEGER);
+            writeBytes(body, ((BigInteger) value).toByteArray());
+        } else if (c == BigDecimal.class) {
+            body.write(TAG_BIG_DECIMAL);
+            body.writeVarLong(zigZag(((BigDecimal) value).scale()));
+            writeBytes(body, ((BigDecimal) value).unscaledValue().toByteArray());
+        } else {
+            body.write(TAG_OBJECT);
+            try (ObjectOutputStream oos = new ObjectOutputStream(body)) {
+                oos.writeObject(value);
+            }
+        }
+    }
+
+    @Override
+    public byte[] encode(Serializable value) {
+        if (value == null) throw new NullPointerException("cache value is null.");
+        CodecBuffers buffers = CodecBuffers.acquire();
+        try {
+            CodecBuffers.Buffer body = buffers.body;
+            body.write(HEADER_COMPACT);
+            writeValue(body, value);
+
+            int length = body.size - 1;
+            if (compressThreshold <= 0 || length <= compressThreshold) return body.toByteArray();
+
+            CodecBuffers.Buffer output = buffers.output;
+            output.write(HEADER_COMPACT_DEFLATED);
+            output.writeVarLong(length);
+            int start = output.size;
+            Deflater deflater = buffers.deflater();
+            deflater.setInput(body.buf, 1, length);
+            deflater.finish();
+            // 压缩后的长度只有小于原始长度才有意义
+            output.ensureCapacity(start + length);
+            while (!deflater.finished() && output.size < start + length) {
+                output.size += deflater.deflate(output.buf, output.size, start + length - output.size);
+            }
+            return deflater.finished() ? output.toByteArray() : body.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e.getLocalizedMessage(), e);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    @Override
+    public <T extends Serializable> T decode(byte[] buff) {
+        return decodeBuff(buff);
+    }
+
+    static <T extends Serializable> T decodeBuff(byte[] buff) {
+        if (buff == null || buff.length == 0) return null;
+        try {
+            switch (buff[0] & 0xFF) {
+                case HEADER_JAVA_SERIALIZATION:
+                    return readObject(buff, 0, buff.length);
+                case HEADER_COMPACT:
+                    return Common.cast(readValue(new Reader(buff, 1, buff.length)));
+                case HEADER_COMPACT_DEFLATED:
+                    return Common.cast(readValue(inflate(buff)));
+                default:
+                    throw new IllegalArgumentException("unknown cache value header: " + (buff[0] & 0xFF));
+            }
+        } catch (IOException | ClassNotFoundException | DataFormatException e) {
+            throw new RuntimeException(e.getLocalizedMessage(), e);
+        }
+    }
+
+    private static Reader inflate(byte[] buff) throws DataFormatException {
+        Reader reader = new Reader(buff, 1, buff.length);
+        byte[] raw = new byte[(int) reader.readVarLong()];
+        CodecBuffers buffers = CodecBuffers.acquire();
+        try {
+            Inflater inflater = buffers.inflater();
+            inflater.setInput(buff, reader.pos, buff.length - reader.pos);
+            int size = 0;
+            while (size < raw.length) {
+                int n = inflater.inflate(raw, size, raw.length - size);
+                if (n == 0 && (inflater.finished() || inflater.needsInput()))
+                    throw new DataFormatException("cache value truncated.");
+                size += n;
+            }
+        } finally {
+            buffers.release();
+        }
+        return new Reader(raw, 0, raw.length);
+    }
+
+    private static <T> T readObject(byte[] buff, int offset, int length) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(buff, offset, length))) {
+            return Common.cast(ois.readObject());
+        }
+    }
+
+    private static Object readValue(Reader reader) throws IOException, ClassNotFoundException {
+        int tag = reader.read();
+        switch (tag) {
+            case TAG_STRING:
+                return new String(reader.readBytes(), StandardCharsets.UTF_8);
+            case TAG_INTEGER:
+                return (int) unZigZag(reader.readVarLong());
+            case TAG_LONG:
+                return unZigZag(reader.readVarLong());
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(reader.readFixed(8));
+            case TAG_FLOAT:
+                return Float.intBitsToFloat((int) reader.readFixed(4));
+            case TAG_SHORT:
+                return (short) unZigZag(reader.readVarLong());
+            case TAG_BYTE:
+                return (byte) reader.read();
+            case TAG_CHARACTER:
+                return (char) reader.readVarLong();
+            case TAG_BYTES:
+                return reader.readBytes();
+            case TAG_DATE:
+                return new Date(unZigZag(reader.readVarLong()));
+            case TAG_BIG_INTEGER:
+                return new BigInteger(reader.readBytes());
+            case TAG_BIG_DECIMAL:
+                int scale = (int) unZigZag(reader.readVarLong());
+                return new BigDecimal(new BigInteger(reader.readBytes()), scale);
+            case TAG_OBJECT:
+                return readObject(reader.buf, reader.pos, reader.end - reader.pos);
+            default:
+                throw new IOException("unknown cache value tag: " + tag);
+        }
+    }
+
+    @Override
+    public boolean accept(String param) {
+        return param == null || NAME.equalsIgnoreCase(param);
+    }
+
+    private static class Reader {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+
+        Reader(byte[] buf, int pos, int end) {
+            this.buf = buf;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        int read() throws IOException {
+            if (pos >= end) throw new IOException("cache value truncated.");
+            return buf[pos++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long l = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buf[pos++];
+                l |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return l;
+            }
+        }
+
+        long readFixed(int bytes) throws IOException {
+            long l = 0;
+            for (int i = 0; i < bytes; i++) {
+                l = (l << 8) | read();
+            }
+            return l;
+        }
+
+        byte[] readBytes() throws IOException {
+            int length = (int) readVarLong();
+            if (length < 0 || pos + length > end) throw new IOException("cache value truncated.");
+            byte[] bytes = new byte[length];
+            System.arraycopy(buf, pos, bytes, 0, length);
+            pos += length;
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * 带虚拟节点和权重的一致性hash环，节点位置与ketama算法一致
+ * <p>
+ * 读操作无锁，增删节点时重建不可变快照
+ *
+ * @param <N> 节点类型
+ */
+public class ConsistentHashRing<N> {
+
+    /**
+     * 权重为1时每个节点的虚拟节点数
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final int virtualNodes;
+    private final Map<String, Member<N>> members = new LinkedHashMap<>();
+    private volatile Snapshot<N> snapshot = new Snapshot<>(new long[0], new Object[0], false);
+
+    public ConsistentHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes <= 0) throw new IllegalArgumentException("virtualNodes must be positive.");
+        this.virtualNodes = virtualNodes;
+    }
+
+    private static byte[] md5(String s) {
+        MessageDigest digest = MD5.get();
+        digest.reset();
+        return digest.digest(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long point(byte[] digest, int h) {
+        return ((long) (digest[3 + h * 4] & 0xFF) << 24)
+                | ((long) (digest[2 + h * 4] & 0xFF) << 16)
+                | ((long) (digest[1 + h * 4] & 0xFF) << 8)
+                | (digest[h * 4] & 0xFF);
+    }
+
+    static long hash(String key) {
+        return point(md5(key), 0);
+    }
+
+    /**
+     * 增加或替换节点
+     *
+     * @param name   节点名称，决定节点在环上的位置
+     * @param node   节点
+     * @param weight 权重，虚拟节点数与权重成正比
+     */
+    public synchronized void add(String name, N node, int weight) {
+        if (weight <= 0) throw new IllegalArgumentException("weight must be positive: " + weight);
+        members.put(Objects.requireNonNull(name), new Member<>(node, weight));
+        rebuild();
+    }
+
+    /**
+     * @param name 节点名称
+     * @return 节点是否存在
+     */
+    public synchronized boolean remove(String name) {
+        if (members.remove(name) == null) return false;
+        rebuild();
+        return true;
+    }
+
+    public synchronized boolean contains(String name) {
+        return members.containsKey(name);
+    }
+
+    public synchronized Set<String> names() {
+        return new LinkedHashSet<>(members.keySet());
+    }
+
+    public synchronized int size() {
+        return members.size();
+    }
+
+    public boolean isEmpty() {
+        return snapshot.points.length == 0;
+    }
+
+    /**
+     * @param key key
+     * @return key所在的节点，环为空时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public N get(String key) {
+        Snapshot<N> current = snapshot;
+        int length = current.points.length;
+        if (length == 0) return null;
+        // 只有一个节点时无需计算hash
+        if (current.single) return (N) current.owners[0];
+        int index = Arrays.binarySearch(current.points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+            if (index == length) index = 0;
+        }
+        return (N) current.owners[index];
+    }
+
+    private void rebuild() {
+        TreeMap<Long, N> ring = new TreeMap<>();
+        for (Map.Entry<String, Member<N>> entry : members.entrySet()) {
+            Member<N> member = entry.getValue();
+            // 每个md5摘要产生4个位置
+            int digests = Math.max(1, virtualNodes * member.weight / 4);
+            for (int i = 0; i < digests; i++) {
+                byte[] digest = md5(entry.getKey() + '-' + i);
+                for (int h = 0; h < 4; h++) {
+                    ring.putIfAbsent(point(digest, h), member.node);
+                }
+            }
+        }
+        long[] points = new long[ring.size()];
+        Object[] owners = new Object[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, N> entry : ring.entrySet()) {
+            points[i] = entry.getKey();
+            owners[i++] = entry.getValue();
+        }
+        snapshot = new Snapshot<>(points, owners, members.size() == 1);
+    }
+
+    private static class Member<N> {
+        private final N node;
+        private final int weight;
+
+        Member(N node, int weight) {
+            this.node = node;
+            this.weight = weight;
+        }
+    }
+
+    private static class Snapshot<N> {
+        private final long[] points;
+        private final Object[] owners;
+        private final boolean single;
+
+        Snapshot(long[] points, Object[] owners, boolean single) {
+            this.points = points;
+            this.owners = owners;
+            this.single = single;
+        }
+    }
+}
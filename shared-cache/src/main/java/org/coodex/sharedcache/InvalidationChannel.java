@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import java.util.Collection;
+
+/**
+ * 近端缓存的失效通知通道，用于在多个节点间保持{@link NearCacheClient}的一致
+ */
+public interface InvalidationChannel {
+
+    /**
+     * 通知其他节点这些key已失效，不会通知到本节点
+     *
+     * @param keys keys
+     */
+    void publish(Collection<String> keys);
+
+    /**
+     * @param listener 其他节点发布的失效通知
+     */
+    void subscribe(Listener listener);
+
+    void unsubscribe(Listener listener);
+
+    interface Listener {
+        /**
+         * @param keys 失效的keys
+         */
+        void onInvalidate(Collection<String> keys);
+
+        /**
+         * 通道中断或者重新建立，期间可能丢失通知，应失效全部近端缓存
+         */
+        void onReset();
+    }
+}
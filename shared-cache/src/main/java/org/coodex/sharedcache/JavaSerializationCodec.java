@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * 使用java序列化编码，与旧版本写入的数据格式一致，用于新旧版本混合部署期间；解码可识别compact格式
+ */
+public class JavaSerializationCodec implements CacheValueCodec {
+
+    public static final String NAME = "java";
+
+    @Override
+    public byte[] encode(Serializable value) {
+        CodecBuffers buffers = CodecBuffers.acquire();
+        try {
+            try (ObjectOutputStream oos = new ObjectOutputStream(buffers.body)) {
+                oos.writeObject(value);
+            }
+            return buffers.body.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e.getLocalizedMessage(), e);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    @Override
+    public <T extends Serializable> T decode(byte[] buff) {
+        return CompactCacheValueCodec.decodeBuff(buff);
+    }
+
+    @Override
+    public boolean accept(String param) {
+        return NAME.equalsIgnoreCase(param);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+/**
+ * {@link SharedCacheClient#getOrLoad(String, java.util.function.Supplier, long, LoadOptions)}的选项
+ */
+public class LoadOptions {
+
+    public static final LoadOptions DEFAULT = builder().build();
+
+    private final long lockTime;
+    private final long lockWaitInterval;
+    private final double beta;
+
+    private LoadOptions(Builder builder) {
+        this.lockTime = builder.lockTime;
+        this.lockWaitInterval = builder.lockWaitInterval;
+        this.beta = builder.beta;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public long getLockTime() {
+        return lockTime;
+    }
+
+    public long getLockWaitInterval() {
+        return lockWaitInterval;
+    }
+
+    public double getBeta() {
+        return beta;
+    }
+
+    public static class Builder {
+        private long lockTime = 0;
+        private long lockWaitInterval = 50;
+        private double beta = 1.0d;
+
+        Builder() {
+        }
+
+        /**
+         * 跨节点的加载锁：加载前以putIfAbsent占用"key.loading"，其他节点等待加载结果而不是重复加载
+         *
+         * @param lockTime 锁的时长，单位毫秒，应大于加载耗时；小于等于0时不使用，默认不使用
+         */
+        public Builder crossNodeLock(long lockTime) {
+            this.lockTime = lockTime;
+            return this;
+        }
+
+        /**
+         * @param lockWaitInterval 等待其他节点加载时检查缓存的间隔，单位毫秒，默认50
+         */
+        public Builder lockWaitInterval(long lockWaitInterval) {
+            this.lockWaitInterval = Math.max(1, lockWaitInterval);
+            return this;
+        }
+
+        /**
+         * 提前刷新(XFetch)的系数，越大越早刷新；0为不提前刷新，默认1.0
+         *
+         * @param beta beta
+         */
+        public Builder beta(double beta) {
+            this.beta = Math.max(0, beta);
+            return this;
+        }
+
+        public LoadOptions build() {
+            return new LoadOptions(this);
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.coodex.util.Common;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * 近端缓存：在{@link SharedCacheClient}前增加进程内的一级缓存，适用于读多写少的热点key。
+ * <p>
+ * 一级缓存按权重(默认每个条目权重为1)限定容量，超出时淘汰最久未访问的条目；条目的有效期不超过maxAge，
+ * 同时不超过远端条目的剩余缓存时长：通过本客户端写入的条目取写入时的缓存时长，从远端读取的条目在未命中时
+ * 同时读取剩余时长({@link SharedCacheClient#getAllWithTimeToLive(Collection)})，远端无法提供时只受maxAge限制。
+ * 本客户端的写操作会通过{@link InvalidationChannel}通知其他节点失效对应的key，没有通道时各节点的近端缓存只依赖有效期。
+ * <p>
+ * 一级缓存中的对象由所有调用者共享，取得后不应修改。计数器({@link #increment(String, long, long)})
+ * 及带版本、touch的操作直接访问远端。
+ */
+public class NearCacheClient implements SharedCacheClient, InvalidationChannel.Listener {
+
+    private static final int SEGMENTS = 16;
+
+    private final SharedCacheClient remote;
+    private final InvalidationChannel channel;
+    private final long maxAge;
+    private final ToIntBiFunction<String, Serializable> weigher;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder invalidationCount = new LongAdder();
+
+    private NearCacheClient(SharedCacheClient remote, InvalidationChannel channel,
+                            long maxWeight, long maxAge, ToIntBiFunction<String, Serializable> weigher) {
+        if (remote == null) throw new NullPointerException("remote client is null.");
+        this.remote = remote;
+        this.channel = channel;
+        this.maxAge = maxAge;
+        this.weigher = weigher == null ? (k, v) -> 1 : weigher;
+        long segmentMaxWeight = Math.max(1, maxWeight / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentMaxWeight);
+        }
+        if (channel != null) channel.subscribe(this);
+    }
+
+    public static Builder builder(SharedCacheClient remote) {
+        return new Builder(remote);
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private void assertKey(String key) {
+        if (key == null) throw new NullPointerException("cache key is null.");
+    }
+
+    private <T extends Serializable> T getLocal(String key) {
+        Serializable value = segmentFor(key).get(key, System.currentTimeMillis());
+        if (value == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return Common.cast(value);
+    }
+
+    private boolean putLocal(String key, Serializable value, long ttl, long version) {
+        long age = Math.min(maxAge, ttl);
+        if (value == null || age <= 0) return false;
+        return segmentFor(key).put(key, value, weigher.applyAsInt(key, value),
+                System.currentTimeMillis() + age, version);
+    }
+
+    /**
+     * @param ttl 远端的剩余缓存时长，取值同{@link SharedCacheClient#getTimeToLive(String)}
+     * @return 一级缓存可用的有效期，不大于0时不缓存
+     */
+    private long ageOf(Long ttl) {
+        if (ttl == null || ttl == -1) return maxAge;
+        return ttl;
+    }
+
+    private void invalidateLocal(Collection<String> keys) {
+        for (String key : keys) {
+            if (key != null) segmentFor(key).remove(key);
+        }
+    }
+
+    private void invalidate(Collection<String> keys) {
+        invalidateLocal(keys);
+        if (channel != null && !keys.isEmpty()) channel.publish(keys);
+    }
+
+    @Override
+    public <T extends Serializable> T get(String key) {
+        assertKey(key);
+        T value = getLocal(key);
+        if (value != null) return value;
+        long version = segmentFor(key).version;
+        TimedValue<T> loaded = remote.<T>getAllWithTimeToLive(Collections.singleton(key)).get(key);
+        if (loaded == null) return null;
+        putLocal(key, loaded.getValue(), ageOf(loaded.getTimeToLive()), version);
+        return loaded.getValue();
+    }
+
+    @Override
+    public void put(String key, Serializable value) {
+        assertKey(key);
+        long defaultMaxCacheTime = remote.getDefaultMaxCacheTime();
+        write(key, value, defaultMaxCacheTime > 0 ? defaultMaxCacheTime : maxAge, () -> remote.put(key, value));
+    }
+
+    @Override
+    public void put(String key, Serializable value, long max_cached_time) {
+        assertKey(key);
+        write(key, value, max_cached_time, () -> remote.put(key, value, max_cached_time));
+    }
+
+    private void write(String key, Serializable value, long ttl, Runnable remoteWrite) {
+        write(Collections.singletonMap(key, value), ttl, remoteWrite);
+    }
+
+    private void write(Map<String, ? extends Serializable> values, long ttl, Runnable remoteWrite) {
+        invalidateLocal(values.keySet());
+        Map<String, Long> versions = new HashMap<>();
+        for (String key : values.keySet()) {
+            if (key != null) versions.put(key, segmentFor(key).version);
+        }
+        remoteWrite.run();
+        if (channel != null && !versions.isEmpty()) channel.publish(versions.keySet());
+        // 写入期间有其他失效发生时不保留本地值
+        for (Map.Entry<String, Long> entry : versions.entrySet()) {
+            String key = entry.getKey();
+            if (!putLocal(key, values.get(key), ttl, entry.getValue())) segmentFor(key).remove(key);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        if (key == null) return;
+        invalidateLocal(Collections.singleton(key));
+        remote.remove(key);
+        invalidate(Collections.singleton(key));
+    }
+
+    @Override
+    public <T extends Serializable> Map<String, T> getAll(Collection<String> keys) {
+        Map<String, T> result = new HashMap<>();
+        if (keys == null || keys.isEmpty()) return result;
+        Map<String, Long> misses = new LinkedHashMap<>();
+        for (String key : keys) {
+            if (key == null || result.containsKey(key) || misses.containsKey(key)) continue;
+            T value = getLocal(key);
+            if (value != null) {
+                result.put(key, value);
+            } else {
+                misses.put(key, segmentFor(key).version);
+            }
+        }
+        if (!misses.isEmpty()) {
+            Map<String, TimedValue<T>> loaded = remote.getAllWithTimeToLive(misses.keySet());
+            for (Map.Entry<String, TimedValue<T>> entry : loaded.entrySet()) {
+                TimedValue<T> value = entry.getValue();
+                putLocal(entry.getKey(), value.getValue(), ageOf(value.getTimeToLive()), misses.get(entry.getKey()));
+                result.put(entry.getKey(), value.getValue());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values) {
+        if (values == null || values.isEmpty()) return;
+        long defaultMaxCacheTime = remote.getDefaultMaxCacheTime();
+        write(values, defaultMaxCacheTime > 0 ? defaultMaxCacheTime : maxAge, () -> remote.putAll(values));
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values, long max_cached_time) {
+        if (values == null || values.isEmpty()) return;
+        write(values, max_cached_time, () -> remote.putAll(values, max_cached_time));
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) return;
+        invalidateLocal(keys);
+        remote.removeAll(keys);
+        invalidate(keys);
+    }
+
+    @Override
+    public long getDefaultMaxCacheTime() {
+        return remote.getDefaultMaxCacheTime();
+    }
+
+    @Override
+    public long getTimeToLive(String key) {
+        return remote.getTimeToLive(key);
+    }
+
+    @Override
+    public Map<String, Long> getTimeToLive(Collection<String> keys) {
+        return remote.getTimeToLive(keys);
+    }
+
+    @Override
+    public boolean supportsAtomic() {
+        return remote.supportsAtomic();
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, Serializable value, long max_cached_time) {
+        boolean written = remote.putIfAbsent(key, value, max_cached_time);
+        if (written) invalidate(Collections.singleton(key));
+        return written;
+    }
+
+    @Override
+    public boolean removeIfEquals(String key, Serializable expected) {
+        boolean removed = remote.removeIfEquals(key, expected);
+        if (removed) invalidate(Collections.singleton(key));
+        return removed;
+    }
+
+    @Override
+    public <T extends Serializable> VersionedValue<T> getVersioned(String key) {
+        return remote.getVersioned(key);
+    }
+
+    @Override
+    public boolean compareAndSet(String key, long version, Serializable value, long max_cached_time) {
+        boolean written = remote.compareAndSet(key, version, value, max_cached_time);
+        if (written) invalidate(Collections.singleton(key));
+        return written;
+    }
+
+    @Override
+    public long increment(String key, long delta, long max_cached_time) {
+        return remote.increment(key, delta, max_cached_time);
+    }
+
+    @Override
+    public <T extends Serializable> T getAndTouch(String key, long max_cached_time) {
+        T value = remote.getAndTouch(key, max_cached_time);
+        if (max_cached_time <= 0) {
+            // 远端已删除
+            invalidate(Collections.singleton(key));
+        } else {
+            // 远端有效期已改变，本地副本的有效期不再可靠
+            invalidateLocal(Collections.singleton(key));
+        }
+        return value;
+    }
+
+    @Override
+    public void onInvalidate(Collection<String> keys) {
+        invalidationCount.add(keys.size());
+        invalidateLocal(keys);
+    }
+
+    @Override
+    public void onReset() {
+        invalidateAll();
+    }
+
+    /**
+     * 清空近端缓存
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * 停止接收失效通知并清空近端缓存
+     */
+    public void close() {
+        if (channel != null) channel.unsubscribe(this);
+        invalidateAll();
+    }
+
+    public SharedCacheClient getRemote() {
+        return remote;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public double getHitRate() {
+        long hit = getHitCount();
+        long total = hit + getMissCount();
+        return total == 0 ? 1.0d : (double) hit / total;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return 收到的其他节点失效通知中的key数量
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static class Entry {
+        private final Serializable value;
+        private final int weight;
+        private final long expireAt;
+
+        Entry(Serializable value, int weight, long expireAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private class Segment {
+        private final long maxWeight;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight = 0;
+        /**
+         * 每次失效递增，远端读取期间发生过失效时不写入一级缓存，避免写入已过期的值
+         */
+        private volatile long version = 0;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        synchronized Serializable get(String key, long now) {
+            Entry entry = entries.get(key);
+            if (entry == null) return null;
+            if (entry.expireAt <= now) {
+                entries.remove(key);
+                weight -= entry.weight;
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized boolean put(String key, Serializable value, int w, long expireAt, long expectedVersion) {
+            if (version != expectedVersion || w > maxWeight) return false;
+            Entry old = entries.put(key, new Entry(value, w, expireAt));
+            if (old != null) weight -= old.weight;
+            weight += w;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (weight > maxWeight && iterator.hasNext()) {
+                weight -= iterator.next().weight;
+                iterator.remove();
+                evictionCount.increment();
+            }
+            return true;
+        }
+
+        synchronized void remove(String key) {
+            version++;
+            Entry old = entries.remove(key);
+            if (old != null) weight -= old.weight;
+        }
+
+        synchronized void clear() {
+            version++;
+            entries.clear();
+            weight = 0;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    public static class Builder {
+        private final SharedCacheClient remote;
+        private InvalidationChannel channel;
+        private long maxWeight = 10000;
+        private long maxAge = 60000;
+        private ToIntBiFunction<String, Serializable> weigher;
+
+        Builder(SharedCacheClient remote) {
+            this.remote = remote;
+        }
+
+        public Builder channel(InvalidationChannel channel) {
+            this.channel = channel;
+            return this;
+        }
+
+        /**
+         * @param maxWeight 一级缓存的容量，默认10000
+         */
+        public Builder maxWeight(long maxWeight) {
+            this.maxWeight = maxWeight;
+            return this;
+        }
+
+        /**
+         * @param maxAge 一级缓存条目的最长有效期，单位毫秒，默认60秒
+         */
+        public Builder maxAge(long maxAge) {
+            this.maxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * @param weigher 条目权重，默认为1
+         */
+        public Builder weigher(ToIntBiFunction<String, Serializable> weigher) {
+            this.weigher = weigher;
+            return this;
+        }
+
+        public NearCacheClient build() {
+            return new NearCacheClient(remote, channel, maxWeight, maxAge, weigher);
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.util.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 客户端一致性hash分片，将key分布到多个独立的缓存节点上
+ * <p>
+ * 节点连续发生failureThreshold次连接故障(由failurePredicate判定，默认{@link #CONNECTION_FAILURE})后从环上摘除，其key暂由环上相邻节点承接；
+ * 摘除期间按retryInterval探测，恢复后重新加入。节点恢复后，摘除期间写到相邻节点的数据不会迁回，依赖过期时间淘汰。
+ * <p>
+ * 批量操作按节点分组，多个节点时并行执行。
+ */
+public class ShardedSharedCacheClient implements SharedCacheClient {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_RETRY_INTERVAL = 5000L;
+    static final String PROBE_KEY = "coodex:sharedcache:probe";
+    /**
+     * 默认的节点故障判定：异常或其cause中有IOException、TimeoutException，
+     * 或类名以ConnectionException、TimeoutException结尾(如JedisConnectionException)。
+     * 其他异常(序列化失败、不支持的操作等)说明节点可以响应，不计入故障
+     */
+    public static final Predicate<Throwable> CONNECTION_FAILURE = th -> {
+        for (Throwable t = th; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof IOException || t instanceof TimeoutException) return true;
+            String name = t.getClass().getSimpleName();
+            if (name.endsWith("ConnectionException") || name.endsWith("TimeoutException")) return true;
+        }
+        return false;
+    };
+
+    private final static Logger log = LoggerFactory.getLogger(ShardedSharedCacheClient.class);
+
+    private static final Singleton<ExecutorService> batchExecutor = Singleton.with(
+            () -> ExecutorsHelper.newCachedThreadPool("sharedcache-shard")
+    );
+    private static final Singleton<ScheduledExecutorService> probeExecutor = Singleton.with(
+            () -> ExecutorsHelper.newSingleThreadScheduledExecutor("sharedcache-shard-probe")
+    );
+
+    private final Map<String, Shard> shards;
+    /**
+     * 全部节点，所有节点均被摘除时使用
+     */
+    private final ConsistentHashRing<Shard> all;
+    /**
+     * 健康节点
+     */
+    private final ConsistentHashRing<Shard> live;
+    private final int failureThreshold;
+    private final long retryInterval;
+    private final Predicate<Throwable> failurePredicate;
+
+    private ShardedSharedCacheClient(Builder builder) {
+        if (builder.shards.isEmpty()) throw new IllegalArgumentException("no shard defined.");
+        this.all = new ConsistentHashRing<>(builder.virtualNodes);
+        this.live = new ConsistentHashRing<>(builder.virtualNodes);
+        this.failureThreshold = Math.max(1, builder.failureThreshold);
+        this.retryInterval = builder.retryInterval;
+        this.failurePredicate = builder.failurePredicate;
+        Map<String, Shard> map = new LinkedHashMap<>();
+        for (Shard shard : builder.shards) {
+            map.put(shard.name, shard);
+            all.add(shard.name, shard, shard.weight);
+            live.add(shard.name, shard, shard.weight);
+        }
+        this.shards = Collections.unmodifiableMap(map);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return 按配置顺序的节点名称
+     */
+    public List<String> getShardNames() {
+        return new ArrayList<>(shards.keySet());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <C extends SharedCacheClient> C getShard(String name) {
+        Shard shard = shards.get(name);
+        return shard == null ? null : (C) shard.client;
+    }
+
+    /**
+     * @param name 节点名称
+     * @return 节点是否在环上
+     */
+    public boolean isAvailable(String name) {
+        return live.contains(name);
+    }
+
+    private Shard route(String key) {
+        if (key == null) throw new NullPointerException("cache key is null.");
+        Shard shard = live.get(key);
+        return shard == null ? all.get(key) : shard;
+    }
+
+    private <R> R call(Shard shard, Function<SharedCacheClient, R> operation) {
+        try {
+            R result = operation.apply(shard.client);
+            shard.succeeded();
+            return result;
+        } catch (RuntimeException e) {
+            if (failurePredicate.test(e)) {
+                failed(shard, e);
+            } else {
+                shard.succeeded();
+            }
+            throw e;
+        }
+    }
+
+    private void failed(Shard shard, RuntimeException e) {
+        if (shard.failures.incrementAndGet() < failureThreshold) return;
+        synchronized (shard) {
+            if (shard.ejected) return;
+            shard.ejected = true;
+            live.remove(shard.name);
+        }
+        log.warn("shard {} ejected after {} failures.", shard.name, shard.failures.get(), e);
+        scheduleProbe(shard);
+    }
+
+    private void scheduleProbe(Shard shard) {
+        probeExecutor.get().schedule(() -> probe(shard), retryInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe(Shard shard) {
+        try {
+            shard.client.get(PROBE_KEY);
+        } catch (Throwable th) {
+            log.debug("shard {} still unavailable.", shard.name, th);
+            scheduleProbe(shard);
+            return;
+        }
+        synchronized (shard) {
+            shard.failures.set(0);
+            shard.ejected = false;
+            live.add(shard.name, shard, shard.weight);
+        }
+        log.info("shard {} recovered.", shard.name);
+    }
+
+    private <G, R> List<R> parallel(Map<Shard, G> groups, BiFunction<SharedCacheClient, G, R> operation) {
+        if (groups.size() == 1) {
+            Map.Entry<Shard, G> entry = groups.entrySet().iterator().next();
+            return Collections.singletonList(call(entry.getKey(), c -> operation.apply(c, entry.getValue())));
+        }
+        List<CompletableFuture<R>> futures = new ArrayList<>(groups.size());
+        for (Map.Entry<Shard, G> entry : groups.entrySet()) {
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> call(entry.getKey(), c -> operation.apply(c, entry.getValue())),
+                    batchExecutor.get()));
+        }
+        List<R> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<R> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+        return results;
+    }
+
+    private Map<Shard, List<String>> groupKeys(Collection<String> keys) {
+        Map<Shard, List<String>> groups = new HashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(route(key), s -> new ArrayList<>()).add(key);
+        }
+        return groups;
+    }
+
+    private <V> Map<Shard, Map<String, V>> groupValues(Map<String, V> values) {
+        Map<Shard, Map<String, V>> groups = new HashMap<>();
+        for (Map.Entry<String, V> entry : values.entrySet()) {
+            groups.computeIfAbsent(route(entry.getKey()), s -> new HashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+        return groups;
+    }
+
+    @Override
+    public <T extends Serializable> T get(String key) {
+        return call(route(key), c -> c.get(key));
+    }
+
+    @Override
+    public void put(String key, Serializable value) {
+        call(route(key), c -> {
+            c.put(key, value);
+            return null;
+        });
+    }
+
+    @Override
+    public void put(String key, Serializable value, long max_cached_time) {
+        call(route(key), c -> {
+            c.put(key, value, max_cached_time);
+            return null;
+        });
+    }
+
+    @Override
+    public void remove(String key) {
+        call(route(key), c -> {
+            c.remove(key);
+            return null;
+        });
+    }
+
+    @Override
+    public <T extends Serializable> Map<String, T> getAll(Collection<String> keys) {
+        Map<String, T> result = new HashMap<>();
+        if (keys == null || keys.isEmpty()) return result;
+        for (Map<String, T> part : parallel(groupKeys(keys), SharedCacheClient::<T>getAll)) {
+            result.putAll(part);
+        }
+        return result;
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values) {
+        if (values == null || values.isEmpty()) return;
+        parallel(groupValues(values), (c, part) -> {
+            c.putAll(part);
+            return null;
+        });
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values, long max_cached_time) {
+        if (values == null || values.isEmpty()) return;
+        parallel(groupValues(values), (c, part) -> {
+            c.putAll(part, max_cached_time);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) return;
+        parallel(groupKeys(keys), (c, part) -> {
+            c.removeAll(part);
+            return null;
+        });
+    }
+
+    @Override
+    public long getDefaultMaxCacheTime() {
+        long result = -1;
+        for (Shard shard : shards.values()) {
+            long time = shard.client.getDefaultMaxCacheTime();
+            if (time > 0 && (result < 0 || time < result)) result = time;
+        }
+        return result;
+    }
+
+    @Override
+    public long getTimeToLive(String key) {
+        return call(route(key), c -> c.getTimeToLive(key));
+    }
+
+    @Override
+    public Map<String, Long> getTimeToLive(Collection<String> keys) {
+        Map<String, Long> result = new HashMap<>();
+        if (keys == null || keys.isEmpty()) return result;
+        for (Map<String, Long> part : parallel(groupKeys(keys), SharedCacheClient::getTimeToLive)) {
+            result.putAll(part);
+        }
+        return result;
+    }
+
+    @Override
+    public <T extends Serializable> Map<String, TimedValue<T>> getAllWithTimeToLive(Collection<String> keys) {
+        Map<String, TimedValue<T>> result = new HashMap<>();
+        if (keys == null || keys.isEmpty()) return result;
+        for (Map<String, TimedValue<T>> part : parallel(groupKeys(keys), SharedCacheClient::<T>getAllWithTimeToLive)) {
+            result.putAll(part);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supportsAtomic() {
+        for (Shard shard : shards.values()) {
+            if (!shard.client.supportsAtomic()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, Serializable value, long max_cached_time) {
+        return call(route(key), c -> c.putIfAbsent(key, value, max_cached_time));
+    }
+
+    @Override
+    public boolean removeIfEquals(String key, Serializable expected) {
+        return call(route(key), c -> c.removeIfEquals(key, expected));
+    }
+
+    @Override
+    public <T extends Serializable> VersionedValue<T> getVersioned(String key) {
+        return call(route(key), c -> c.getVersioned(key));
+    }
+
+    @Override
+    public boolean compareAndSet(String key, long version, Serializable value, long max_cached_time) {
+        return call(route(key), c -> c.compareAndSet(key, version, value, max_cached_time));
+    }
+
+    @Override
+    public long increment(String key, long delta, long max_cached_time) {
+        return call(route(key), c -> c.increment(key, delta, max_cached_time));
+    }
+
+    @Override
+    public <T extends Serializable> T getAndTouch(String key, long max_cached_time) {
+        return call(route(key), c -> c.getAndTouch(key, max_cached_time));
+    }
+
+    private static class Shard {
+        private final String name;
+        private final SharedCacheClient client;
+        private final int weight;
+        private final AtomicInteger failures = new AtomicInteger(0);
+        private boolean ejected = false;
+
+        Shard(String name, SharedCacheClient client, int weight) {
+            this.name = name;
+            this.client = client;
+            this.weight = weight;
+        }
+
+        void succeeded() {
+            if (failures.get() != 0) failures.set(0);
+        }
+    }
+
+    public static class Builder {
+        private final List<Shard> shards = new ArrayList<>();
+        private int virtualNodes = ConsistentHashRing.DEFAULT_VIRTUAL_NODES;
+        private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+        private long retryInterval = DEFAULT_RETRY_INTERVAL;
+        private Predicate<Throwable> failurePredicate = CONNECTION_FAILURE;
+
+        Builder() {
+        }
+
+        public Builder shard(String name, SharedCacheClient client) {
+            return shard(name, client, 1);
+        }
+
+        /**
+         * @param name   节点名称，决定节点在环上的位置，调整节点顺序不影响分布
+         * @param client 节点客户端
+         * @param weight 权重
+         */
+        public Builder shard(String name, SharedCacheClient client, int weight) {
+            shards.add(new Shard(Objects.requireNonNull(name), Objects.requireNonNull(client), weight));
+            return this;
+        }
+
+        /**
+         * @param virtualNodes 权重为1时的虚拟节点数，默认160
+         */
+        public Builder virtualNodes(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        /**
+         * @param failureThreshold 连续失败多少次后摘除节点，默认3
+         */
+        public Builder failureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * @param retryInterval 摘除后的探测间隔，单位毫秒，默认5秒
+         */
+        public Builder retryInterval(long retryInterval) {
+            this.retryInterval = retryInterval;
+            return this;
+        }
+
+        /**
+         * @param failurePredicate 判定异常是否为节点故障，只有节点故障计入failureThreshold，默认{@link #CONNECTION_FAILURE}
+         */
+        public Builder failurePredicate(Predicate<Throwable> failurePredicate) {
+            this.failurePredicate = Objects.requireNonNull(failurePredicate);
+            return this;
+        }
+
+        public ShardedSharedCacheClient build() {
+            return new ShardedSharedCacheClient(this);
+        }
+    }
+}
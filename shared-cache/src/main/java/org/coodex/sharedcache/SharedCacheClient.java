@@ -17,6 +17,11 @@
 package org.coodex.sharedcache;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Created by davidoff shen on 2016-11-23.
@@ -31,5 +36,227 @@ public interface SharedCacheClient {
 
     void remove(String key);
 
+    /**
+     * 批量获取。默认实现逐个获取，驱动应使用一次(或少量)网络往返完成
+     *
+     * @param keys 要获取的keys
+     * @param <T>  缓存对象类型
+     * @return 命中的key-value，未命中的key不在结果中
+     */
+    default <T extends Serializable> Map<String, T> getAll(Collection<String> keys) {
+        Map<String, T> result = new HashMap<>();
+        if (keys == null) return result;
+        for (String key : new LinkedHashSet<>(keys)) {
+            if (key == null) continue;
+            T value = get(key);
+            if (value != null) result.put(key, value);
+        }
+        return result;
+    }
+
+    /**
+     * 使用默认缓存时长批量写入
+     *
+     * @param values 要写入的key-value
+     */
+    default void putAll(Map<String, ? extends Serializable> values) {
+        if (values == null) return;
+        for (Map.Entry<String, ? extends Serializable> entry : values.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 批量写入。默认实现逐个写入，驱动应使用一次(或少量)网络往返完成
+     *
+     * @param values          要写入的key-value
+     * @param max_cached_time 缓存时长，单位毫秒
+     */
+    default void putAll(Map<String, ? extends Serializable> values, long max_cached_time) {
+        if (values == null) return;
+        for (Map.Entry<String, ? extends Serializable> entry : values.entrySet()) {
+            put(entry.getKey(), entry.getValue(), max_cached_time);
+        }
+    }
+
+    /**
+     * 批量删除
+     *
+     * @param keys 要删除的keys
+     */
+    default void removeAll(Collection<String> keys) {
+        if (keys == null) return;
+        for (String key : keys) {
+            remove(key);
+        }
+    }
+
+    /**
+     * @return {@link #put(String, Serializable)}使用的默认缓存时长，单位毫秒；未知时返回-1
+     */
+    default long getDefaultMaxCacheTime() {
+        return -1;
+    }
+
+    /**
+     * 获取缓存对象的剩余缓存时长
+     *
+     * @param key key
+     * @return 剩余毫秒数；不存在时返回-2，没有过期时间或驱动无法获取时返回-1
+     */
+    default long getTimeToLive(String key) {
+        return -1;
+    }
+
+    /**
+     * 批量获取剩余缓存时长。默认实现逐个获取，驱动应使用一次(或少量)网络往返完成
+     *
+     * @param keys keys
+     * @return 各key的剩余缓存时长，取值同{@link #getTimeToLive(String)}
+     */
+    default Map<String, Long> getTimeToLive(Collection<String> keys) {
+        Map<String, Long> result = new HashMap<>();
+        if (keys == null) return result;
+        for (String key : new LinkedHashSet<>(keys)) {
+            if (key != null) result.put(key, getTimeToLive(key));
+        }
+        return result;
+    }
+
+    /**
+     * 批量获取缓存对象及其剩余缓存时长。默认实现先{@link #getAll(Collection)}再{@link #getTimeToLive(Collection)}，
+     * 驱动应在一次网络往返中完成
+     *
+     * @param keys keys
+     * @param <T>  缓存对象类型
+     * @return 命中的key及其缓存对象、剩余缓存时长
+     */
+    default <T extends Serializable> Map<String, TimedValue<T>> getAllWithTimeToLive(Collection<String> keys) {
+        Map<String, TimedValue<T>> result = new HashMap<>();
+        Map<String, T> values = getAll(keys);
+        if (values.isEmpty()) return result;
+        Map<String, Long> ttls = getTimeToLive(values.keySet());
+        for (Map.Entry<String, T> entry : values.entrySet()) {
+            Long ttl = ttls.get(entry.getKey());
+            result.put(entry.getKey(), new TimedValue<>(entry.getValue(), ttl == null ? -1 : ttl));
+        }
+        return result;
+    }
+
+    /**
+     * 是否支持服务端原子操作：{@link #putIfAbsent(String, Serializable, long)}、
+     * {@link #getVersioned(String)}、{@link #compareAndSet(String, long, Serializable, long)}、
+     * {@link #increment(String, long, long)}、{@link #removeIfEquals(String, Serializable)}及原子的{@link #getAndTouch(String, long)}。
+     * 依赖原子性的调用者(如跨节点锁)须先检查本方法。
+     *
+     * @return 是否支持
+     */
+    default boolean supportsAtomic() {
+        return false;
+    }
+
+    /**
+     * 仅当key不存在时写入，服务端单次原子操作完成。仅当{@link #supportsAtomic()}为true时可用
+     *
+     * @param key             key
+     * @param value           value
+     * @param max_cached_time 缓存时长，单位毫秒
+     * @return 是否写入
+     */
+    default boolean putIfAbsent(String key, Serializable value, long max_cached_time) {
+        throw new UnsupportedOperationException(getClass().getName() + " not support putIfAbsent.");
+    }
+
+    /**
+     * 获取缓存对象及其版本。仅当{@link #supportsAtomic()}为true时可用
+     *
+     * @param key key
+     * @param <T> 缓存对象类型
+     * @return 不存在时返回null
+     */
+    default <T extends Serializable> VersionedValue<T> getVersioned(String key) {
+        throw new UnsupportedOperationException(getClass().getName() + " not support getVersioned.");
+    }
+
+    /**
+     * 仅当服务端的版本与version一致时写入，服务端单次原子操作完成。仅当{@link #supportsAtomic()}为true时可用
+     *
+     * @param key             key
+     * @param version         {@link #getVersioned(String)}获取到的版本
+     * @param value           新的value
+     * @param max_cached_time 缓存时长，单位毫秒
+     * @return 是否写入
+     */
+    default boolean compareAndSet(String key, long version, Serializable value, long max_cached_time) {
+        throw new UnsupportedOperationException(getClass().getName() + " not support compareAndSet.");
+    }
+
+    /**
+     * 仅当缓存对象与expected相等时删除，服务端单次原子操作完成，可用于释放以唯一值标识持有者的锁。
+     * 仅当{@link #supportsAtomic()}为true时可用
+     *
+     * @param key      key
+     * @param expected 期望的缓存对象
+     * @return 是否删除
+     */
+    default boolean removeIfEquals(String key, Serializable expected) {
+        throw new UnsupportedOperationException(getClass().getName() + " not support removeIfEquals.");
+    }
+
+    /**
+     * 原子增减计数器。计数器不存在时以0为初值创建，并设置缓存时长；已存在的计数器不改变其缓存时长。
+     * <p>
+     * 计数器以服务端原生的数值形式存储，只能通过increment(key, 0, ...)读取，不能用{@link #get(String)}获取。
+     * memcached的计数器不能小于0。仅当{@link #supportsAtomic()}为true时可用
+     *
+     * @param key             key
+     * @param delta           增量，可以为负数
+     * @param max_cached_time 计数器创建时的缓存时长，单位毫秒
+     * @return 增减后的值
+     */
+    default long increment(String key, long delta, long max_cached_time) {
+        throw new UnsupportedOperationException(getClass().getName() + " not support increment.");
+    }
+
+    /**
+     * 获取缓存对象并重置其缓存时长。{@link #supportsAtomic()}为true时服务端单次原子操作完成，
+     * 否则以get和put(缓存时长不大于0时remove)两步完成，期间其他节点的写入可能被覆盖
+     *
+     * @param key             key
+     * @param max_cached_time 新的缓存时长，单位毫秒
+     * @param <T>             缓存对象类型
+     * @return 不存在时返回null
+     */
+    default <T extends Serializable> T getAndTouch(String key, long max_cached_time) {
+        T value = get(key);
+        if (value != null) {
+            if (max_cached_time > 0) {
+                put(key, value, max_cached_time);
+            } else {
+                remove(key);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 获取缓存对象，不存在时加载并写入缓存。同一进程中同一key同时只有一个加载者，其他调用者等待其结果。
+     * <p>
+     * 缓存对象原样写入，可通过{@link #get(String)}等方法读取；加载耗时以同样的缓存时长写入key + ":xfetch"，
+     * 临近过期时按XFetch概率性地提前刷新，参见{@link LoadOptions}。驱动无法提供剩余缓存时长时不提前刷新。
+     *
+     * @param key             key
+     * @param loader          加载者，返回null时不缓存
+     * @param max_cached_time 缓存时长，单位毫秒
+     * @param <T>             缓存对象类型
+     * @return 缓存对象
+     */
+    default <T extends Serializable> T getOrLoad(String key, Supplier<T> loader, long max_cached_time) {
+        return getOrLoad(key, loader, max_cached_time, LoadOptions.DEFAULT);
+    }
+
+    default <T extends Serializable> T getOrLoad(String key, Supplier<T> loader, long max_cached_time, LoadOptions options) {
+        return CacheLoader.getOrLoad(this, key, loader, max_cached_time, options);
+    }
 
 }
@@ -16,6 +16,7 @@
 
 package org.coodex.sharedcache;
 
+import org.coodex.config.Config;
 import org.coodex.util.SelectableService;
 
 /**
@@ -29,4 +30,31 @@ public interface SharedCacheClientFactory extends SelectableService<String> {
 
     SharedCacheClient getClientInstance();
 
+    /**
+     * @return 驱动提供的失效通知通道，不支持时返回null，此时近端缓存仅依赖过期时间
+     */
+    default InvalidationChannel getInvalidationChannel() {
+        return null;
+    }
+
+    /**
+     * @return 驱动配置的命名空间，没有时返回null
+     */
+    default String getNamespace() {
+        return null;
+    }
+
+    /**
+     * @return 新的异步客户端，默认合并请求后使用同步客户端的批量操作执行，
+     * 单批最大请求数取驱动命名空间中的async.maxBatchSize
+     */
+    default AsyncSharedCacheClient newAsyncClient() {
+        String namespace = getNamespace();
+        int maxBatchSize = namespace == null ?
+                Config.getValue("async.maxBatchSize", BatchingAsyncSharedCacheClient.DEFAULT_MAX_BATCH_SIZE) :
+                Config.getValue("async.maxBatchSize", BatchingAsyncSharedCacheClient.DEFAULT_MAX_BATCH_SIZE, namespace);
+        return new BatchingAsyncSharedCacheClient(getClientInstance(),
+                SharedCacheClientManager.getAsyncCallbackExecutor(), maxBatchSize);
+    }
+
 }
@@ -16,13 +16,21 @@
 
 package org.coodex.sharedcache;
 
+import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.config.Config;
 import org.coodex.util.LazySelectableServiceLoader;
+import org.coodex.util.Singleton;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by davidoff shen on 2016-11-23.
  */
 public class SharedCacheClientManager {
 
+    public static final String NAMESPACE_SHARED_CACHE = "sharedcache";
 
     //    private static ServiceLoader<SharedCacheClientFactory> factoryProviders;
     private static LazySelectableServiceLoader<String, SharedCacheClientFactory> factoryProviders =
@@ -45,6 +53,63 @@ public class SharedCacheClientManager {
 //        }
     }
 
+    private static final Map<String, NearCacheClient> nearCacheClients = new ConcurrentHashMap<>();
+    private static final Map<String, AsyncSharedCacheClient> asyncClients = new ConcurrentHashMap<>();
+
+    private static final Singleton<ExecutorService> asyncCallbackExecutor = Singleton.with(
+            () -> ExecutorsHelper.newFixedThreadPool(
+                    Config.getValue("async.poolSize", Runtime.getRuntime().availableProcessors(), NAMESPACE_SHARED_CACHE),
+                    "sharedcache-async-callback")
+    );
+
+    /**
+     * 异步客户端执行回调的线程池，大小由sharedcache命名空间的async.poolSize配置，默认为cpu核数
+     *
+     * @return 回调线程池
+     */
+    public static ExecutorService getAsyncCallbackExecutor() {
+        return asyncCallbackExecutor.get();
+    }
+
+    private static SharedCacheClientFactory getFactory(String driverName) {
+        SharedCacheClientFactory factory = factoryProviders.select(driverName);
+        if (factory == null) throw new SharedCacheClientFactoryProviderNotFoundException(driverName);
+        return factory;
+    }
+
+    /**
+     * 获取异步客户端，同一驱动共享一个实例
+     *
+     * @param driverName 驱动名
+     * @return 异步客户端
+     */
+    public static AsyncSharedCacheClient getAsyncClient(String driverName) {
+        if (driverName == null) throw new NullPointerException("distributed cache driverName must not be NULL.");
+        return asyncClients.computeIfAbsent(driverName, name -> getFactory(name).newAsyncClient());
+    }
+
+    private static NearCacheClient newNearCacheClient(String driverName) {
+        SharedCacheClientFactory factory = getFactory(driverName);
+        return NearCacheClient.builder(factory.getClientInstance())
+                .channel(factory.getInvalidationChannel())
+                .maxWeight(Config.getValue("nearCache.maxWeight", 10000L, NAMESPACE_SHARED_CACHE, driverName))
+                .maxAge(Config.getValue("nearCache.maxAge", 60000L, NAMESPACE_SHARED_CACHE, driverName))
+                .build();
+    }
+
+    /**
+     * 获取带近端缓存的客户端，同一驱动共享一个实例
+     * <p>
+     * 配置(sharedcache命名空间，可按驱动名细分)：nearCache.maxWeight，默认10000；nearCache.maxAge，单位毫秒，默认60000
+     *
+     * @param driverName 驱动名
+     * @return 近端缓存客户端
+     */
+    public static NearCacheClient getNearCacheClient(String driverName) {
+        if (driverName == null) throw new NullPointerException("distributed cache driverName must not be NULL.");
+        return nearCacheClients.computeIfAbsent(driverName, SharedCacheClientManager::newNearCacheClient);
+    }
+
     public static SharedCacheClient getClient(String driverName) {
         if (driverName == null) throw new NullPointerException("distributed cache driverName must not be NULL.");
 
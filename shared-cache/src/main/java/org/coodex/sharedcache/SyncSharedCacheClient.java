@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 以{@link AsyncSharedCacheClient}实现的同步客户端
+ */
+public class SyncSharedCacheClient implements SharedCacheClient {
+
+    private final AsyncSharedCacheClient async;
+
+    public SyncSharedCacheClient(AsyncSharedCacheClient async) {
+        this.async = async;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    @Override
+    public <T extends Serializable> T get(String key) {
+        return join(async.getAsync(key));
+    }
+
+    @Override
+    public void put(String key, Serializable value) {
+        join(async.putAsync(key, value));
+    }
+
+    @Override
+    public void put(String key, Serializable value, long max_cached_time) {
+        join(async.putAsync(key, value, max_cached_time));
+    }
+
+    @Override
+    public void remove(String key) {
+        join(async.removeAsync(key));
+    }
+
+    @Override
+    public <T extends Serializable> Map<String, T> getAll(Collection<String> keys) {
+        return join(async.getAllAsync(keys));
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values) {
+        join(async.putAllAsync(values));
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values, long max_cached_time) {
+        join(async.putAllAsync(values, max_cached_time));
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        join(async.removeAllAsync(keys));
+    }
+}
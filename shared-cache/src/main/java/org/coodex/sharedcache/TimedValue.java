@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.coodex.sharedcache;
+
+import java.io.Serializable;
+
+/**
+ * 缓存对象及其读取时的剩余缓存时长，见{@link SharedCacheClient#getAllWithTimeToLive(java.util.Collection)}
+ *
+ * @param <T> 缓存对象类型
+ */
+public class TimedValue<T extends Serializable> {
+    private final T value;
+    private final long timeToLive;
+
+    public TimedValue(T value, long timeToLive) {
+        this.value = value;
+        this.timeToLive = timeToLive;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return 剩余毫秒数，取值同{@link SharedCacheClient#getTimeToLive(String)}
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.coodex.sharedcache;
+
+import java.io.Serializable;
+
+/**
+ * 带版本的缓存对象，版本用于{@link SharedCacheClient#compareAndSet(String, long, Serializable, long)}
+ *
+ * @param <T> 缓存对象类型
+ */
+public class VersionedValue<T extends Serializable> {
+    private final T value;
+    private final long version;
+
+    public VersionedValue(T value, long version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return 服务端的版本标识，只能用于相等比较
+     */
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache.local;
+
+/**
+ * 堆内存储
+ */
+class HeapValueStore implements ValueStore {
+
+    @Override
+    public Object store(byte[] bytes) {
+        return bytes;
+    }
+
+    @Override
+    public byte[] load(Object handle) {
+        return (byte[]) handle;
+    }
+
+    @Override
+    public void release(Object handle) {
+    }
+
+    @Override
+    public int sizeOf(Object handle) {
+        return ((byte[]) handle).length;
+    }
+
+    @Override
+    public boolean reclaims(Object handle, int length) {
+        return true;
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache.local;
+
+import org.coodex.concurrent.ExecutorsHelper;
+import org.coodex.sharedcache.CacheValueCodec;
+import org.coodex.sharedcache.CacheValueCodecManager;
+import org.coodex.sharedcache.SharedCacheClient;
+import org.coodex.sharedcache.SharedCacheClientFactory;
+import org.coodex.sharedcache.VersionedValue;
+import org.coodex.util.Singleton;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内的缓存客户端，用于单节点部署和测试。
+ * <p>
+ * 值以codec编码后的字节存放(堆内或堆外slab)，与远端缓存一样每次get得到新的对象；
+ * 容量按字节数限定，超出时淘汰最久未访问的条目；过期条目在访问时移除，
+ * 并由所有本地客户端共用的一个清理线程定期清除。
+ */
+public class LocalCacheClient implements SharedCacheClient {
+
+    private static final Singleton<ScheduledExecutorService> SWEEPER = Singleton.with(
+            () -> ExecutorsHelper.newSingleThreadScheduledExecutor("sharedcache-local-sweeper"));
+
+    private static final int SEGMENTS = 16;
+    /**
+     * 每个条目的key、索引等堆内开销的估计值
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final CacheValueCodec codec;
+    private final ValueStore store;
+    private final long defaultMaxCacheTime;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicLong versions = new AtomicLong();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder droppedWriteCount = new LongAdder();
+    private final ScheduledFuture<?> sweeping;
+
+    private LocalCacheClient(Builder builder) {
+        this.codec = builder.codec == null ? CacheValueCodecManager.getCodec(LocalCacheClientFactory.NAMESPACE_LOCAL) : builder.codec;
+        this.store = builder.offHeap ? new OffHeapValueStore(builder.slabSize, builder.maxWeight) : new HeapValueStore();
+        this.defaultMaxCacheTime = builder.defaultMaxCacheTime;
+        long segmentMaxWeight = Math.max(1, builder.maxWeight / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentMaxWeight);
+        }
+        this.sweeping = SWEEPER.get().scheduleWithFixedDelay(this::sweep,
+                builder.sweepInterval, builder.sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private void assertKey(String key) {
+        if (key == null) throw new NullPointerException("cache key is null.");
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    private <T extends Serializable> T decode(byte[] bytes) {
+        return bytes == null ? null : codec.decode(bytes);
+    }
+
+    @Override
+    public <T extends Serializable> T get(String key) {
+        assertKey(key);
+        Segment segment = segmentFor(key);
+        byte[] bytes;
+        synchronized (segment) {
+            Entry entry = segment.get(key, now());
+            bytes = entry == null ? null : store.load(entry.handle);
+        }
+        return decode(bytes);
+    }
+
+    @Override
+    public long getDefaultMaxCacheTime() {
+        return defaultMaxCacheTime;
+    }
+
+    @Override
+    public long getTimeToLive(String key) {
+        assertKey(key);
+        Segment segment = segmentFor(key);
+        long now = now();
+        synchronized (segment) {
+            Entry entry = segment.get(key, now);
+            return entry == null ? -2 : entry.expireAt - now;
+        }
+    }
+
+    @Override
+    public void put(String key, Serializable value) {
+        put(key, value, defaultMaxCacheTime);
+    }
+
+    @Override
+    public void put(String key, Serializable value, long max_cached_time) {
+        assertKey(key);
+        if (value == null || max_cached_time <= 0) {
+            remove(key);
+            return;
+        }
+        byte[] bytes = codec.encode(value);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, bytes, now() + max_cached_time);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        if (key == null) return;
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    @Override
+    public boolean supportsAtomic() {
+        return true;
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, Serializable value, long max_cached_time) {
+        assertKey(key);
+        if (value == null) throw new NullPointerException("cache value is null.");
+        if (max_cached_time <= 0) return false;
+        byte[] bytes = codec.encode(value);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            long now = now();
+            return segment.get(key, now) == null && segment.put(key, bytes, now + max_cached_time);
+        }
+    }
+
+    @Override
+    public <T extends Serializable> VersionedValue<T> getVersioned(String key) {
+        assertKey(key);
+        Segment segment = segmentFor(key);
+        byte[] bytes;
+        long version;
+        synchronized (segment) {
+            Entry entry = segment.get(key, now());
+            if (entry == null) return null;
+            bytes = store.load(entry.handle);
+            version = entry.version;
+        }
+        return new VersionedValue<>(decode(bytes), version);
+    }
+
+    @Override
+    public boolean compareAndSet(String key, long version, Serializable value, long max_cached_time) {
+        assertKey(key);
+        if (value == null) throw new NullPointerException("cache value is null.");
+        if (max_cached_time <= 0) return false;
+        byte[] bytes = codec.encode(value);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            long now = now();
+            Entry entry = segment.get(key, now);
+            return entry != null && entry.version == version && segment.put(key, bytes, now + max_cached_time);
+        }
+    }
+
+    @Override
+    public boolean removeIfEquals(String key, Serializable expected) {
+        assertKey(key);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Entry entry = segment.get(key, now());
+            if (entry == null || !Objects.equals(decode(store.load(entry.handle)), expected)) return false;
+            segment.remove(key);
+            return true;
+        }
+    }
+
+    @Override
+    public long increment(String key, long delta, long max_cached_time) {
+        assertKey(key);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            long now = now();
+            Entry entry = segment.get(key, now);
+            long value = delta;
+            long expireAt = now + max_cached_time;
+            if (entry != null) {
+                Serializable current = codec.decode(store.load(entry.handle));
+                if (!(current instanceof Long))
+                    throw new IllegalStateException("value is not a counter: " + key);
+                value = (Long) current + delta;
+                expireAt = entry.expireAt;
+            }
+            if (!segment.put(key, codec.encode(value), expireAt))
+                throw new IllegalStateException("no space for counter: " + key);
+            return value;
+        }
+    }
+
+    @Override
+    public <T extends Serializable> T getAndTouch(String key, long max_cached_time) {
+        assertKey(key);
+        Segment segment = segmentFor(key);
+        byte[] bytes;
+        synchronized (segment) {
+            Entry entry = segment.get(key, now());
+            if (entry == null) return null;
+            bytes = store.load(entry.handle);
+            if (max_cached_time <= 0) {
+                segment.remove(key);
+            } else {
+                entry.expireAt = now() + max_cached_time;
+            }
+        }
+        return decode(bytes);
+    }
+
+    private void sweep() {
+        long now = now();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.sweep(now);
+            }
+        }
+    }
+
+    /**
+     * 停止清理并释放全部条目
+     */
+    public void close() {
+        sweeping.cancel(false);
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return 当前占用的容量，单位字节
+     */
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return 因存储空间不足而放弃的写入次数
+     */
+    public long getDroppedWriteCount() {
+        return droppedWriteCount.sum();
+    }
+
+    private static class Entry {
+        private final Object handle;
+        private final int weight;
+        private final long version;
+        private long expireAt;
+
+        Entry(Object handle, int weight, long version, long expireAt) {
+            this.handle = handle;
+            this.weight = weight;
+            this.version = version;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 调用方持有segment的锁
+     */
+    private class Segment {
+        private final long maxWeight;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight = 0;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        Entry get(String key, long now) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expireAt <= now) {
+                remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        boolean put(String key, byte[] bytes, long expireAt) {
+            remove(key);
+            Object handle = store.store(bytes);
+            // 存储空间不足时按最久未访问的顺序淘汰本段中能腾出空间的条目，没有时放弃写入
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (handle == null && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                if (!store.reclaims(eldest.handle, bytes.length)) continue;
+                iterator.remove();
+                release(eldest);
+                evictionCount.increment();
+                handle = store.store(bytes);
+            }
+            if (handle == null) {
+                droppedWriteCount.increment();
+                return false;
+            }
+            Entry entry = new Entry(handle, store.sizeOf(handle) + key.length() * 2 + ENTRY_OVERHEAD,
+                    versions.incrementAndGet(), expireAt);
+            entries.put(key, entry);
+            weight += entry.weight;
+            while (weight > maxWeight && entries.size() > 1) {
+                evictEldest();
+            }
+            return true;
+        }
+
+        private void evictEldest() {
+            Iterator<Entry> iterator = entries.values().iterator();
+            Entry eldest = iterator.next();
+            iterator.remove();
+            release(eldest);
+            evictionCount.increment();
+        }
+
+        private void release(Entry entry) {
+            weight -= entry.weight;
+            store.release(entry.handle);
+        }
+
+        void remove(String key) {
+            Entry entry = entries.remove(key);
+            if (entry != null) release(entry);
+        }
+
+        void sweep(long now) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                if (entry.expireAt <= now) {
+                    iterator.remove();
+                    release(entry);
+                }
+            }
+        }
+
+        void clear() {
+            for (Entry entry : entries.values()) {
+                release(entry);
+            }
+            entries.clear();
+        }
+    }
+
+    public static class Builder {
+        private long defaultMaxCacheTime = SharedCacheClientFactory.DEFAULT_MAX_CACHED_SECONDS * 1000;
+        private long maxWeight = 64L * 1024 * 1024;
+        private boolean offHeap = false;
+        private int slabSize = 1024 * 1024;
+        private long sweepInterval = 1000;
+        private CacheValueCodec codec;
+
+        Builder() {
+        }
+
+        /**
+         * @param defaultMaxCacheTime 默认缓存时长，单位毫秒
+         */
+        public Builder defaultMaxCacheTime(long defaultMaxCacheTime) {
+            this.defaultMaxCacheTime = defaultMaxCacheTime;
+            return this;
+        }
+
+        /**
+         * @param maxWeight 容量，单位字节，默认64M
+         */
+        public Builder maxWeight(long maxWeight) {
+            this.maxWeight = maxWeight;
+            return this;
+        }
+
+        /**
+         * @param offHeap 是否将值存放在堆外，默认否。堆外空间按大小级别分配，空间不足且无法腾出时放弃写入，
+         *                见{@link LocalCacheClient#getDroppedWriteCount()}
+         */
+        public Builder offHeap(boolean offHeap) {
+            this.offHeap = offHeap;
+            return this;
+        }
+
+        /**
+         * @param slabSize 堆外存储每个slab的大小，单位字节，默认1M
+         */
+        public Builder slabSize(int slabSize) {
+            this.slabSize = slabSize;
+            return this;
+        }
+
+        /**
+         * @param sweepInterval 清理过期条目的间隔，单位毫秒，默认1000
+         */
+        public Builder sweepInterval(long sweepInterval) {
+            this.sweepInterval = Math.max(1, sweepInterval);
+            return this;
+        }
+
+        public Builder codec(CacheValueCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        public LocalCacheClient build() {
+            return new LocalCacheClient(this);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache.local;
+
+import org.coodex.config.Config;
+import org.coodex.sharedcache.SharedCacheClient;
+import org.coodex.sharedcache.SharedCacheClientFactory;
+import org.coodex.util.Singleton;
+
+/**
+ * 进程内缓存驱动，驱动名local
+ * <p>
+ * 配置(sharedcache-local命名空间)：
+ * <ul>
+ * <li>defaultMaxCacheTime：默认缓存时长，单位秒</li>
+ * <li>maxWeight：容量，单位字节，默认64M</li>
+ * <li>offHeap：是否堆外存储，默认false</li>
+ * <li>slabSize：堆外slab大小，单位字节，默认1M</li>
+ * <li>sweepInterval：清理过期条目的间隔，单位毫秒，默认1000</li>
+ * </ul>
+ */
+public class LocalCacheClientFactory implements SharedCacheClientFactory {
+    public static final String LOCAL_DRIVER_NAME = "local";
+    public static final String NAMESPACE_LOCAL = "sharedcache-local";
+
+    private static final Singleton<LocalCacheClient> client = Singleton.with(
+            () -> LocalCacheClient.builder()
+                    .defaultMaxCacheTime(Config.getValue("defaultMaxCacheTime", DEFAULT_MAX_CACHED_SECONDS, NAMESPACE_LOCAL) * 1000)
+                    .maxWeight(Config.getValue("maxWeight", 64L * 1024 * 1024, NAMESPACE_LOCAL))
+                    .offHeap(Config.getValue("offHeap", false, NAMESPACE_LOCAL))
+                    .slabSize(Config.getValue("slabSize", 1024 * 1024, NAMESPACE_LOCAL))
+                    .sweepInterval(Config.getValue("sweepInterval", 1000L, NAMESPACE_LOCAL))
+                    .build()
+    );
+
+    @Override
+    public boolean isAccepted(String driverName) {
+        if (driverName == null) return false;
+        return LOCAL_DRIVER_NAME.equalsIgnoreCase(driverName.trim());
+    }
+
+    @Override
+    public SharedCacheClient getClientInstance() {
+        return client.get();
+    }
+
+    @Override
+    public String getNamespace() {
+        return NAMESPACE_LOCAL;
+    }
+
+    @Override
+    public boolean accept(String param) {
+        return isAccepted(param);
+    }
+}
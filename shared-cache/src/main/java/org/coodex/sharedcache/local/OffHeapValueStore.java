@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache.local;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 堆外存储：以固定大小的direct ByteBuffer作为slab，slab按大小级别切分为等长的块，
+ * 值存放在能容纳它的最小级别的块中。全部块释放后的slab归还，可分配给其他级别。
+ * <p>
+ * 超过slab大小的值存放在堆内。
+ */
+class OffHeapValueStore implements ValueStore {
+
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double GROWTH_FACTOR = 1.25d;
+
+    private final int slabSize;
+    private final long maxSlabs;
+    private final int[] chunkSizes;
+    private final List<ArrayDeque<Slab>> partialSlabs;
+    private final ArrayDeque<Slab> freeSlabs = new ArrayDeque<>();
+    private long slabCount = 0;
+
+    @SuppressWarnings("unchecked")
+    OffHeapValueStore(int slabSize, long maxBytes) {
+        this.slabSize = Math.max(slabSize, MIN_CHUNK_SIZE);
+        this.maxSlabs = Math.max(1, maxBytes / this.slabSize);
+        int count = 1;
+        for (int size = MIN_CHUNK_SIZE; size < this.slabSize; size = nextChunkSize(size)) {
+            count++;
+        }
+        chunkSizes = new int[count];
+        int size = MIN_CHUNK_SIZE;
+        for (int i = 0; i < count - 1; i++) {
+            chunkSizes[i] = size;
+            size = nextChunkSize(size);
+        }
+        chunkSizes[count - 1] = this.slabSize;
+        partialSlabs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            partialSlabs.add(new ArrayDeque<>());
+        }
+    }
+
+    private static int nextChunkSize(int size) {
+        return Math.max(size + 8, ((int) (size * GROWTH_FACTOR) + 7) & ~7);
+    }
+
+    private int classOf(int length) {
+        int low = 0, high = chunkSizes.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunkSizes[mid] < length) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public Object store(byte[] bytes) {
+        if (bytes.length > slabSize) return bytes;
+        Chunk chunk = allocate(bytes.length);
+        if (chunk == null) return null;
+        ByteBuffer buffer = chunk.slab.buffer.duplicate();
+        buffer.position(chunk.offset);
+        buffer.put(bytes);
+        return chunk;
+    }
+
+    private synchronized Chunk allocate(int length) {
+        int sizeClass = classOf(length);
+        ArrayDeque<Slab> partial = partialSlabs.get(sizeClass);
+        Slab slab = partial.peekFirst();
+        if (slab == null) {
+            slab = freeSlabs.pollFirst();
+            if (slab == null) {
+                if (slabCount >= maxSlabs) return null;
+                slab = new Slab(ByteBuffer.allocateDirect(slabSize));
+                slabCount++;
+            }
+            slab.assign(sizeClass, chunkSizes[sizeClass], slabSize);
+            partial.addFirst(slab);
+        }
+        Chunk chunk = new Chunk(slab, slab.take(), length);
+        if (slab.freeTop == 0) partial.pollFirst();
+        return chunk;
+    }
+
+    @Override
+    public byte[] load(Object handle) {
+        if (handle instanceof byte[]) return (byte[]) handle;
+        Chunk chunk = (Chunk) handle;
+        byte[] bytes = new byte[chunk.length];
+        ByteBuffer buffer = chunk.slab.buffer.duplicate();
+        buffer.position(chunk.offset);
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public synchronized void release(Object handle) {
+        if (!(handle instanceof Chunk)) return;
+        Chunk chunk = (Chunk) handle;
+        Slab slab = chunk.slab;
+        ArrayDeque<Slab> partial = partialSlabs.get(slab.sizeClass);
+        if (slab.freeTop == 0) partial.addLast(slab);
+        slab.give(chunk.offset);
+        if (slab.freeTop == slab.free.length) {
+            partial.remove(slab);
+            freeSlabs.addLast(slab);
+        }
+    }
+
+    @Override
+    public int sizeOf(Object handle) {
+        return handle instanceof Chunk ? ((Chunk) handle).slab.chunkSize : ((byte[]) handle).length;
+    }
+
+    /**
+     * 同级别的块可直接复用；其他级别的块仅在它是所在slab中最后一个在用的块时，释放后slab可分配给任意级别
+     */
+    @Override
+    public synchronized boolean reclaims(Object handle, int length) {
+        if (!(handle instanceof Chunk)) return false;
+        Slab slab = ((Chunk) handle).slab;
+        return slab.sizeClass == classOf(length) || slab.freeTop == slab.free.length - 1;
+    }
+
+    /**
+     * @return 已分配的堆外内存，单位字节
+     */
+    synchronized long allocatedBytes() {
+        return slabCount * slabSize;
+    }
+
+    private static class Slab {
+        private final ByteBuffer buffer;
+        private int sizeClass;
+        private int chunkSize;
+        private int[] free;
+        private int freeTop;
+
+        Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void assign(int sizeClass, int chunkSize, int slabSize) {
+            this.sizeClass = sizeClass;
+            this.chunkSize = chunkSize;
+            int count = slabSize / chunkSize;
+            if (free == null || free.length != count) free = new int[count];
+            for (int i = 0; i < count; i++) {
+                free[i] = (count - 1 - i) * chunkSize;
+            }
+            freeTop = count;
+        }
+
+        int take() {
+            return free[--freeTop];
+        }
+
+        void give(int offset) {
+            free[freeTop++] = offset;
+        }
+    }
+
+    private static class Chunk {
+        private final Slab slab;
+        private final int offset;
+        private final int length;
+
+        Chunk(Slab slab, int offset, int length) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
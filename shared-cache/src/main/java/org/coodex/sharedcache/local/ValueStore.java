@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache.local;
+
+/**
+ * 本地缓存值的存储，值为编码后的字节
+ */
+interface ValueStore {
+
+    /**
+     * @param bytes 编码后的值
+     * @return 存储句柄，空间不足时返回null
+     */
+    Object store(byte[] bytes);
+
+    byte[] load(Object handle);
+
+    void release(Object handle);
+
+    /**
+     * @return 句柄占用的存储空间，单位字节
+     */
+    int sizeOf(Object handle);
+
+    /**
+     * @param handle 存储句柄
+     * @param length 待存储值的长度
+     * @return 释放handle后能否为该长度的值腾出空间
+     */
+    boolean reclaims(Object handle, int length);
+}
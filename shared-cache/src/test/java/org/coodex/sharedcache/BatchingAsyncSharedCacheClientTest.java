@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BatchingAsyncSharedCacheClientTest {
+
+    @Test
+    public void batchesAndKeepsOrder() throws ExecutionException, InterruptedException {
+        SlowClient remote = new SlowClient();
+        AsyncSharedCacheClient async = new BatchingAsyncSharedCacheClient(remote, ForkJoinPool.commonPool(), 64);
+
+        List<CompletableFuture<Void>> puts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            puts.add(async.putAsync("k" + i, i, 1000));
+        }
+        List<CompletableFuture<Integer>> gets = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            gets.add(async.getAsync("k" + i));
+        }
+        CompletableFuture<Void> remove = async.removeAsync("k0");
+        CompletableFuture<Map<String, Integer>> all = async.getAllAsync(Arrays.asList("k0", "k1", "k2"));
+
+        for (int i = 0; i < 100; i++) {
+            puts.get(i).get();
+            assertEquals(Integer.valueOf(i), gets.get(i).get());
+        }
+        remove.get();
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("k1", 1);
+        expected.put("k2", 2);
+        assertEquals(expected, all.get());
+        assertTrue("round trips: " + remote.roundTrips.get(), remote.roundTrips.get() < 20);
+    }
+
+    @Test
+    public void syncView() {
+        SlowClient remote = new SlowClient();
+        SharedCacheClient sync = new BatchingAsyncSharedCacheClient(remote, ForkJoinPool.commonPool(), 64).sync();
+        sync.put("k", "v");
+        assertEquals("v", sync.get("k"));
+        sync.remove("k");
+        assertNull(sync.get("k"));
+        remote.failing = true;
+        try {
+            sync.get("k");
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    static class SlowClient implements SharedCacheClient {
+        private final Map<String, Serializable> map = new HashMap<>();
+        private final AtomicInteger roundTrips = new AtomicInteger();
+        private volatile boolean failing = false;
+
+        private void roundTrip() {
+            if (failing) throw new IllegalStateException("server down.");
+            roundTrips.incrementAndGet();
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public <T extends Serializable> T get(String key) {
+            return this.<T>getAll(Collections.singleton(key)).get(key);
+        }
+
+        @Override
+        public void put(String key, Serializable value) {
+            putAll(Collections.singletonMap(key, value));
+        }
+
+        @Override
+        public void put(String key, Serializable value, long max_cached_time) {
+            putAll(Collections.singletonMap(key, value), max_cached_time);
+        }
+
+        @Override
+        public void remove(String key) {
+            removeAll(Collections.singleton(key));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T extends Serializable> Map<String, T> getAll(Collection<String> keys) {
+            roundTrip();
+            Map<String, T> result = new HashMap<>();
+            for (String key : keys) {
+                if (map.containsKey(key)) result.put(key, (T) map.get(key));
+            }
+            return result;
+        }
+
+        @Override
+        public void putAll(Map<String, ? extends Serializable> values) {
+            putAll(values, 1000);
+        }
+
+        @Override
+        public synchronized void putAll(Map<String, ? extends Serializable> values, long max_cached_time) {
+            roundTrip();
+            map.putAll(values);
+        }
+
+        @Override
+        public synchronized void removeAll(Collection<String> keys) {
+            roundTrip();
+            map.keySet().removeAll(keys);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.coodex.util.Common;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompactCacheValueCodecTest {
+
+    private final CacheValueCodec codec = new CompactCacheValueCodec(256);
+
+    @Test
+    public void roundTrip() {
+        List<Serializable> values = Arrays.asList(
+                "中文 string", 0, -1, Integer.MAX_VALUE, Long.MIN_VALUE, true, false,
+                3.14d, -0.5f, (short) -7, (byte) 0x7F, 'c', new Date(),
+                new BigInteger("-123456789012345678901234567890"), new BigDecimal("-1234.5678"),
+                new ArrayList<>(Arrays.asList("a", 1, 2L)));
+        for (Serializable value : values) {
+            byte[] buff = codec.encode(value);
+            assertEquals(CompactCacheValueCodec.HEADER_COMPACT, buff[0]);
+            assertEquals(value, codec.decode(buff));
+        }
+        assertArrayEquals(new byte[]{1, 2, 3}, codec.decode(codec.encode(new byte[]{1, 2, 3})));
+        assertEquals(2 + 1, codec.encode(1).length);
+        assertNull(codec.decode(null));
+    }
+
+    @Test
+    public void compressAboveThreshold() {
+        char[] chars = new char[10000];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        byte[] buff = codec.encode(value);
+        assertEquals(CompactCacheValueCodec.HEADER_COMPACT_DEFLATED, buff[0] & 0xFF);
+        assertTrue(buff.length < 1000);
+        assertEquals(value, codec.decode(buff));
+        assertEquals(CompactCacheValueCodec.HEADER_COMPACT, new CompactCacheValueCodec(0).encode(value)[0]);
+    }
+
+    @Test
+    public void readsJavaSerialization() throws Exception {
+        ArrayList<String> value = new ArrayList<>(Arrays.asList("legacy", "value"));
+        byte[] legacy = Common.serialize(value);
+        assertEquals(CompactCacheValueCodec.HEADER_JAVA_SERIALIZATION, legacy[0] & 0xFF);
+        assertEquals(value, codec.decode(legacy));
+        assertArrayEquals(legacy, new JavaSerializationCodec().encode(value));
+        assertEquals(value, new JavaSerializationCodec().decode(codec.encode(value)));
+    }
+
+    @Test
+    public void selectByName() {
+        assertTrue(CacheValueCodecManager.getCodec("codec-test") instanceof CompactCacheValueCodec);
+        System.setProperty("codec", JavaSerializationCodec.NAME);
+        try {
+            assertTrue(CacheValueCodecManager.getCodec("codec-test") instanceof JavaSerializationCodec);
+        } finally {
+            System.clearProperty("codec");
+        }
+    }
+}
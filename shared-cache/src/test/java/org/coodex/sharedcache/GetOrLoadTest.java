@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.coodex.sharedcache.local.LocalCacheClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class GetOrLoadTest {
+
+    private LocalCacheClient client;
+
+    @Before
+    public void setUp() {
+        client = LocalCacheClient.builder().build();
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+    }
+
+    @Test
+    public void singleFlight() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            futures.add(executorService.submit(() -> {
+                start.await();
+                return client.getOrLoad("hot", () -> {
+                    loads.incrementAndGet();
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return "value";
+                }, 60000);
+            }));
+        }
+        start.countDown();
+        for (Future<String> future : futures) {
+            assertEquals("value", future.get());
+        }
+        executorService.shutdown();
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void loaderFailure() {
+        try {
+            client.getOrLoad("failure", () -> {
+                throw new IllegalStateException("db down");
+            }, 60000);
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+        assertNull(client.getOrLoad("null", () -> null, 60000));
+        assertNull(client.get("null"));
+    }
+
+    @Test
+    public void earlyRefresh() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        LoadOptions options = LoadOptions.builder().beta(1000000).build();
+        client.getOrLoad("early", () -> {
+            loads.incrementAndGet();
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return "v" + loads.get();
+        }, 1000, options);
+        // 加载耗时约5ms，beta足够大时有效期内几乎必然提前刷新
+        String value = client.getOrLoad("early", () -> "v" + loads.incrementAndGet(), 1000, options);
+        assertEquals(2, loads.get());
+        assertEquals("v2", value);
+
+        assertEquals("v2", client.getOrLoad("early", () -> "v" + loads.incrementAndGet(), 1000));
+        // 缓存对象原样存放，加载耗时存放在独立的key中
+        assertEquals("v2", client.get("early"));
+        assertTrue(client.get("early:xfetch") instanceof Long);
+    }
+
+    @Test
+    public void crossNodeLock() throws Exception {
+        LoadOptions options = LoadOptions.builder().crossNodeLock(2000).lockWaitInterval(10).build();
+        // 模拟其他节点持有加载锁
+        assertTrue(client.putIfAbsent("remote.loading", "other-node", 2000));
+        ScheduledExecutorService otherNode = Executors.newSingleThreadScheduledExecutor();
+        otherNode.schedule(() -> client.put("remote", "from-other-node", 60000), 100, TimeUnit.MILLISECONDS);
+
+        assertEquals("from-other-node", client.getOrLoad("remote", () -> "local", 60000, options));
+        otherNode.shutdown();
+
+        assertEquals("mine", client.getOrLoad("lock", () -> "mine", 60000, options));
+        assertNull(client.get("lock.loading"));
+    }
+
+    @Test
+    public void lockReleaseKeepsOtherOwner() {
+        LoadOptions options = LoadOptions.builder().crossNodeLock(2000).lockWaitInterval(10).build();
+        assertEquals("mine", client.getOrLoad("expired", () -> {
+            // 模拟加载超过锁时长，锁过期后被其他节点取得
+            client.put("expired.loading", "other-node", 2000);
+            return "mine";
+        }, 60000, options));
+        assertEquals("other-node", client.get("expired.loading"));
+    }
+}
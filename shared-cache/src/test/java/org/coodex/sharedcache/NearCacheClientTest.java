@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.coodex.sharedcache.local.LocalCacheClient;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class NearCacheClientTest {
+
+    @Test
+    public void hitAndMiss() {
+        MapClient remote = new MapClient();
+        NearCacheClient client = NearCacheClient.builder(remote).build();
+        remote.put("k", "v");
+        assertEquals("v", client.get("k"));
+        assertEquals("v", client.get("k"));
+        assertEquals(1, remote.reads);
+        assertEquals(1, client.getHitCount());
+        assertEquals(1, client.getMissCount());
+
+        Map<String, String> all = client.getAll(Arrays.asList("k", "missing"));
+        assertEquals(Collections.singletonMap("k", "v"), all);
+        assertEquals(2, client.getHitCount());
+    }
+
+    @Test
+    public void invalidateAcrossNodes() {
+        MapClient remote = new MapClient();
+        LocalChannel bus = new LocalChannel();
+        NearCacheClient node1 = NearCacheClient.builder(remote).channel(bus.join()).build();
+        NearCacheClient node2 = NearCacheClient.builder(remote).channel(bus.join()).build();
+
+        node1.put("k", "v1");
+        assertEquals("v1", node2.get("k"));
+        node1.put("k", "v2");
+        assertEquals("v2", node1.get("k"));
+        assertEquals("v2", node2.get("k"));
+        node1.remove("k");
+        assertNull(node2.get("k"));
+        assertEquals(3, node2.getInvalidationCount());
+
+        node2.put("k", "v3");
+        bus.reset();
+        assertEquals(0, node2.size());
+        node1.close();
+        node2.close();
+    }
+
+    @Test
+    public void boundedByWeightAndAge() throws InterruptedException {
+        MapClient remote = new MapClient();
+        NearCacheClient client = NearCacheClient.builder(remote).maxWeight(16 * 4).build();
+        for (int i = 0; i < 1000; i++) {
+            client.put("k" + i, i);
+        }
+        assertTrue(client.size() <= 64);
+        assertTrue(client.getEvictionCount() >= 1000 - 64);
+
+        client.put("short", "v", 50);
+        long reads = remote.reads;
+        assertEquals("v", client.get("short"));
+        assertEquals(reads, remote.reads);
+        Thread.sleep(100);
+        client.get("short");
+        assertEquals(reads + 1, remote.reads);
+    }
+
+    @Test
+    public void cappedByRemoteTimeToLive() throws InterruptedException {
+        LocalCacheClient remote = LocalCacheClient.builder().build();
+        try {
+            NearCacheClient client = NearCacheClient.builder(remote).build();
+            remote.put("short", "v", 50);
+            remote.put("long", "v", 60000);
+            assertEquals("v", client.get("short"));
+            assertEquals(2, client.getAll(Arrays.asList("short", "long")).size());
+            Thread.sleep(100);
+            assertNull(client.get("short"));
+            assertEquals(Collections.singleton("long"), client.getAll(Arrays.asList("short", "long")).keySet());
+        } finally {
+            remote.close();
+        }
+    }
+
+    @Test
+    public void putAllUsesRemoteDefaultTime() {
+        LocalCacheClient remote = LocalCacheClient.builder().defaultMaxCacheTime(300000).build();
+        try {
+            NearCacheClient client = NearCacheClient.builder(remote).build();
+            Map<String, String> values = new HashMap<>();
+            values.put("a", "1");
+            values.put("b", "2");
+            client.putAll(values);
+            assertTrue(remote.getTimeToLive("a") > 60000);
+            assertTrue(remote.getTimeToLive("b") > 60000);
+            assertEquals("1", client.get("a"));
+            assertEquals(1, client.getHitCount());
+        } finally {
+            remote.close();
+        }
+    }
+
+    @Test
+    public void getAndTouchInvalidates() {
+        LocalCacheClient remote = LocalCacheClient.builder().build();
+        LocalChannel bus = new LocalChannel();
+        try {
+            NearCacheClient node1 = NearCacheClient.builder(remote).channel(bus.join()).build();
+            NearCacheClient node2 = NearCacheClient.builder(remote).channel(bus.join()).build();
+            node1.put("k", "v");
+            assertEquals("v", node2.get("k"));
+            assertEquals("v", node1.getAndTouch("k", 60000));
+            assertEquals(0, node1.size());
+            assertEquals("v", node1.getAndTouch("k", 0));
+            assertNull(node2.get("k"));
+            assertNull(node1.get("k"));
+        } finally {
+            remote.close();
+        }
+    }
+
+    static class MapClient implements SharedCacheClient {
+        private final Map<String, Serializable> map = new ConcurrentHashMap<>();
+        private volatile long reads = 0;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends Serializable> T get(String key) {
+            reads++;
+            return (T) map.get(key);
+        }
+
+        @Override
+        public void put(String key, Serializable value) {
+            map.put(key, value);
+        }
+
+        @Override
+        public void put(String key, Serializable value, long max_cached_time) {
+            map.put(key, value);
+        }
+
+        @Override
+        public void remove(String key) {
+            map.remove(key);
+        }
+    }
+
+    static class LocalChannel {
+        private final List<InvalidationChannel.Listener> all = new CopyOnWriteArrayList<>();
+
+        InvalidationChannel join() {
+            return new InvalidationChannel() {
+                private InvalidationChannel.Listener self;
+
+                @Override
+                public void publish(Collection<String> keys) {
+                    for (Listener listener : all) {
+                        if (listener != self) listener.onInvalidate(keys);
+                    }
+                }
+
+                @Override
+                public void subscribe(Listener listener) {
+                    self = listener;
+                    all.add(listener);
+                }
+
+                @Override
+                public void unsubscribe(Listener listener) {
+                    all.remove(listener);
+                }
+            };
+        }
+
+        void reset() {
+            for (InvalidationChannel.Listener listener : all) {
+                listener.onReset();
+            }
+        }
+    }
+}
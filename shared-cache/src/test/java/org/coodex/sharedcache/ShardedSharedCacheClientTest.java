@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache;
+
+import org.coodex.sharedcache.local.LocalCacheClient;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ShardedSharedCacheClientTest {
+
+    @Test
+    public void ringDistribution() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>();
+        ring.add("a", "a", 1);
+        ring.add("b", "b", 1);
+        ring.add("c", "c", 2);
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, String> before = new HashMap<>();
+        for (int i = 0; i < 40000; i++) {
+            String key = "key" + i;
+            String node = ring.get(key);
+            before.put(key, node);
+            counts.merge(node, 1, Integer::sum);
+        }
+        // 权重2的节点约占一半
+        assertEquals(0.5, counts.get("c") / 40000.0, 0.06);
+        assertEquals(0.25, counts.get("a") / 40000.0, 0.06);
+
+        // 摘除节点只影响该节点上的key
+        ring.remove("a");
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            if (!entry.getValue().equals("a")) {
+                assertEquals(entry.getValue(), ring.get(entry.getKey()));
+            }
+        }
+        ring.remove("b");
+        ring.remove("c");
+        assertNull(ring.get("key"));
+    }
+
+    @Test
+    public void routeAndBatch() {
+        FlakyClient a = new FlakyClient();
+        FlakyClient b = new FlakyClient();
+        ShardedSharedCacheClient client = ShardedSharedCacheClient.builder()
+                .shard("a", a).shard("b", b).build();
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put("k" + i, "v" + i);
+        }
+        client.putAll(values, 60000);
+        assertTrue(a.store.size() > 0);
+        assertTrue(b.store.size() > 0);
+        assertEquals(100, a.store.size() + b.store.size());
+        assertEquals(values, client.getAll(values.keySet()));
+        assertEquals("v1", client.get("k1"));
+
+        client.removeAll(Arrays.asList("k1", "k2", "k3"));
+        assertNull(client.get("k1"));
+        assertEquals(97, a.store.size() + b.store.size());
+        assertEquals(5, client.increment("counter", 5, 60000));
+    }
+
+    @Test
+    public void ejectAndRecover() throws InterruptedException {
+        FlakyClient a = new FlakyClient();
+        FlakyClient b = new FlakyClient();
+        ShardedSharedCacheClient client = ShardedSharedCacheClient.builder()
+                .shard("a", a).shard("b", b)
+                .failureThreshold(2).retryInterval(20).build();
+        String keyOfA = null;
+        for (int i = 0; keyOfA == null; i++) {
+            client.put("k" + i, "v");
+            if (a.store.get("k" + i) != null) keyOfA = "k" + i;
+        }
+
+        // 节点可以响应的异常不计入故障
+        a.broken = true;
+        for (int i = 0; i < 3; i++) {
+            try {
+                client.get(keyOfA);
+                fail();
+            } catch (IllegalStateException ignored) {
+            }
+        }
+        assertTrue(client.isAvailable("a"));
+        a.broken = false;
+
+        a.down = true;
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.get(keyOfA);
+                fail();
+            } catch (UncheckedIOException ignored) {
+            }
+        }
+        assertFalse(client.isAvailable("a"));
+        // 摘除后由b承接
+        client.put(keyOfA, "v2");
+        assertEquals("v2", client.get(keyOfA));
+        assertEquals("v2", b.store.get(keyOfA));
+
+        a.down = false;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!client.isAvailable("a") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(client.isAvailable("a"));
+        assertEquals("v", client.get(keyOfA));
+    }
+
+    static class FlakyClient implements SharedCacheClient {
+        private final LocalCacheClient store = LocalCacheClient.builder().build();
+        private volatile boolean down = false;
+        private volatile boolean broken = false;
+
+        private void check() {
+            if (down) throw new UncheckedIOException(new ConnectException("down"));
+            if (broken) throw new IllegalStateException("broken");
+        }
+
+        @Override
+        public <T extends Serializable> T get(String key) {
+            check();
+            return store.get(key);
+        }
+
+        @Override
+        public void put(String key, Serializable value) {
+            check();
+            store.put(key, value);
+        }
+
+        @Override
+        public void put(String key, Serializable value, long max_cached_time) {
+            check();
+            store.put(key, value, max_cached_time);
+        }
+
+        @Override
+        public void remove(String key) {
+            check();
+            store.remove(key);
+        }
+
+        @Override
+        public long increment(String key, long delta, long max_cached_time) {
+            check();
+            return store.increment(key, delta, max_cached_time);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2020 coodex.org (jujus.shen@126.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.coodex.sharedcache.local;
+
+import org.coodex.sharedcache.SharedCacheClient;
+import org.coodex.sharedcache.SharedCacheClientManager;
+import org.coodex.sharedcache.VersionedValue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LocalCacheClientTest {
+
+    private static void operations(LocalCacheClient client) {
+        ArrayList<String> list = new ArrayList<>(Arrays.asList("a", "b"));
+        client.put("list", list, 10000);
+        ArrayList<String> got = client.get("list");
+        assertEquals(list, got);
+        got.add("c");
+        assertEquals(list, client.get("list"));
+
+        assertFalse(client.putIfAbsent("list", "x", 10000));
+        assertTrue(client.putIfAbsent("absent", "x", 10000));
+        VersionedValue<String> versioned = client.getVersioned("absent");
+        assertTrue(client.compareAndSet("absent", versioned.getVersion(), "y", 10000));
+        assertFalse(client.compareAndSet("absent", versioned.getVersion(), "z", 10000));
+        assertEquals("y", client.getAndTouch("absent", 10000));
+
+        assertEquals(3, client.increment("counter", 3, 10000));
+        assertEquals(1, client.increment("counter", -2, 10000));
+        try {
+            client.increment("absent", 1, 10000);
+            fail("increment on a non counter value");
+        } catch (IllegalStateException ignored) {
+        }
+
+        client.remove("list");
+        assertNull(client.get("list"));
+    }
+
+    @Test
+    public void heap() {
+        LocalCacheClient client = LocalCacheClient.builder().build();
+        operations(client);
+        client.close();
+    }
+
+    @Test
+    public void offHeap() {
+        LocalCacheClient client = LocalCacheClient.builder().offHeap(true).slabSize(64 * 1024).build();
+        operations(client);
+        byte[] large = new byte[128 * 1024];
+        Arrays.fill(large, (byte) 1);
+        client.put("large", large, 10000);
+        assertArrayEquals(large, client.get("large"));
+        client.close();
+    }
+
+    @Test
+    public void boundedAndExpired() throws InterruptedException {
+        LocalCacheClient client = LocalCacheClient.builder()
+                .offHeap(true).slabSize(16 * 1024).maxWeight(256 * 1024).sweepInterval(20).build();
+        for (int i = 0; i < 10000; i++) {
+            client.put("key-" + i, "value-" + i, 60000);
+        }
+        assertTrue(client.weight() <= 256 * 1024);
+        assertTrue(client.getEvictionCount() > 0);
+        assertEquals("value-9999", client.get("key-9999"));
+
+        client.put("short", "value", 30);
+        Thread.sleep(100);
+        int size = client.size();
+        assertNull(client.get("short"));
+        assertEquals(size, client.size());
+        client.close();
+        assertEquals(0, client.weight());
+    }
+
+    @Test
+    public void offHeapMixedSizes() {
+        LocalCacheClient client = LocalCacheClient.builder()
+                .offHeap(true).slabSize(4 * 1024).maxWeight(256 * 1024).build();
+        Random random = new Random(1);
+        int dropped = 0;
+        for (int i = 0; i < 5000; i++) {
+            client.put("key-" + i, new byte[16 + random.nextInt(2000)], 60000);
+            if (client.get("key-" + i) == null) dropped++;
+        }
+        // 各大小级别争用slab，放弃的写入须计数
+        assertTrue(dropped > 0);
+        assertEquals(dropped, client.getDroppedWriteCount());
+        assertTrue(client.weight() <= 256 * 1024);
+        assertTrue(client.size() > 0);
+        client.close();
+    }
+
+    @Test
+    public void driver() {
+        SharedCacheClient client = SharedCacheClientManager.getClient(LocalCacheClientFactory.LOCAL_DRIVER_NAME);
+        assertTrue(client instanceof LocalCacheClient);
+        client.put("driver", "local");
+        assertEquals("local", client.get("driver"));
+    }
+}